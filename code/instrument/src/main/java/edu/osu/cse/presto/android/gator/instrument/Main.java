@@ -115,6 +115,21 @@ public class Main {
     Scene.v().loadClass(Timer.class.getName(), SootClass.HIERARCHY).setApplicationClass();
     Scene.v().loadClass(ActivityLifecycleCallbacks.class.getName(), SootClass.HIERARCHY).setApplicationClass();
     Scene.v().loadClass(Randomizer.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(ViewCounterCache.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(CheckpointJob.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(PendingHit.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(IngestJob.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(SpillJob.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(LatencyHistogram.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(RandomizedResponseSampler.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(TokenBucket.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(HitCodec.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(ScreenNameDictionary.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(ScreenNameDictionary.NameIterator.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(DispatchLane.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(DispatchLane.SpilledHit.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(OverflowPolicy.class.getName(), SootClass.HIERARCHY).setApplicationClass();
+    Scene.v().loadClass(Metrics.class.getName(), SootClass.HIERARCHY).setApplicationClass();
   }
 
 }
@@ -14,12 +14,14 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.util.Log;
 import com.google.android.gms.analytics.Tracker;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.util.*;
 
 public class DatabaseController implements Closeable {
@@ -28,6 +30,13 @@ public class DatabaseController implements Closeable {
   static final String DB_NAME = "presto_ga_stat.db";
   private final Context mAppContext;
   private Proxy proxy;
+  static final int ACTUAL_VIEWS = 0;
+  static final int RANDOM_VIEWS = 1;
+  private SQLiteDatabase mCompiledFor;
+  private SQLiteStatement mUpdateViewsStmt;
+  private SQLiteStatement mInsertViewsStmt;
+  // rows of hits up to this id were stored by earlier processes
+  private volatile long mJournalEnd;
 
   DatabaseController(Proxy proxy, Context context) {
     this.sqLiteOpenHelperWrapper = new SQLiteOpenHelperWrapper(this, context, DB_NAME);
@@ -42,6 +51,7 @@ public class DatabaseController implements Closeable {
   @Override
   public void close() {
     try {
+      closeHistogramStatements();
       this.sqLiteOpenHelperWrapper.close();
     } catch (SQLiteException sQLiteException) {
       Log.e(TAG, "Sql error closing database: " + sQLiteException);
@@ -95,68 +105,52 @@ public class DatabaseController implements Closeable {
   }
 
   public void incrementRandomViews(String screenName, double epsilon, int user) {
-    SQLiteDatabase sQLiteDatabase = this.getWritableDatabase();
-    String histogramText = null, totalViewsText = null;
-    try (Cursor cursor = sQLiteDatabase.query("stats", new String[]{"random_histogram", "total_random_views"},
-            null, null, null, null, null)) {
-      if (cursor.moveToFirst()) {
-        histogramText = cursor.getString(0);
-        totalViewsText = cursor.getString(1);
-      }
-      String epsilonName = "e-" + epsilon;
-      String userName = "u-" + user;
-      try {
-        JSONObject jsonObject = new JSONObject(totalViewsText);
-        JSONObject user2views = jsonObject.has(userName) ? jsonObject.getJSONObject(userName) : new JSONObject();
-        long totalViews = user2views.has(epsilonName) ? user2views.getLong(epsilonName) : 0;
-        user2views.put(epsilonName, totalViews + 1);
-        jsonObject.put(userName, user2views);
-
-        ContentValues contentValues = new ContentValues();
-        contentValues.put("total_random_views", jsonObject.toString());
-
-        jsonObject = new JSONObject(histogramText);
-        JSONObject user2hist = jsonObject.has(userName) ? jsonObject.getJSONObject(userName) : new JSONObject();
-        JSONObject histogram = user2hist.has(epsilonName) ? user2hist.getJSONObject(epsilonName) : new JSONObject();
-        long num = histogram.has(screenName) ? histogram.getLong(screenName) : 0;
-        histogram.put(screenName, num + 1);
-        user2hist.put(epsilonName, histogram);
-        jsonObject.put(userName, user2hist);
-
-        contentValues.put("random_histogram", jsonObject.toString());
-        int i = sQLiteDatabase.update("stats", contentValues, null, null);
-        if (i < 1)
-          Log.e(TAG, "Failed to update, return " + i);
-      } catch (JSONException e) {
-        Log.e(TAG, "Failed to read from JSON: " + e);
-      }
-    } catch (SQLiteException sQLiteException) {
-      Log.e(TAG, "Error updating " + sQLiteException);
-      throw sQLiteException;
-    }
+    incrementRandomViews(screenName, epsilon, user, 1);
+  }
+
+  public void incrementRandomViews(String screenName, double epsilon, int user, long views) {
+    incrementViews(RANDOM_VIEWS, screenName, epsilon, user, views);
   }
 
   public void incrementActualViews(String screenName) {
-    executeRawQuery("UPDATE stats SET total_actual_views = total_actual_views + 1", null);
+    incrementTotalActualViews(1);
+    incrementActualViews(screenName, 1);
+  }
+
+  public void incrementActualViews(String screenName, long views) {
+    incrementViews(ACTUAL_VIEWS, screenName, 0, 0, views);
+  }
+
+  public void incrementTotalActualViews(long views) {
+    executeRawQuery("UPDATE stats SET total_actual_views = total_actual_views + " + views, null);
+  }
+
+  /**
+   * Adds delta to a single histogram counter. The statements are compiled once
+   * per database handle so that a hit costs one indexed UPDATE (plus one INSERT
+   * the first time a counter is seen) regardless of the number of screen names.
+   */
+  private synchronized void incrementViews(int kind, String screenName, double epsilon, int user, long delta) {
     SQLiteDatabase sQLiteDatabase = this.getWritableDatabase();
-    String text = null;
-    try (Cursor cursor = sQLiteDatabase.query("stats", new String[]{"actual_histogram"},
-            null, null, null, null, null)) {
-      if (cursor.moveToFirst()) {
-        text = cursor.getString(0);
+    try {
+      if (sQLiteDatabase != mCompiledFor) {
+        compileHistogramStatements(sQLiteDatabase);
       }
-      try {
-        JSONObject jsonObject = new JSONObject(text);
-        long num = jsonObject.has(screenName) ? jsonObject.getLong(screenName) : 0;
-        jsonObject.put(screenName, num + 1);
-
-        ContentValues contentValues = new ContentValues();
-        contentValues.put("actual_histogram", jsonObject.toString());
-        int i = sQLiteDatabase.update("stats", contentValues, null, null);
-        if (i < 1)
-          Log.e(TAG, "Failed to update histogram, return " + i);
-      } catch (JSONException e) {
-        Log.e(TAG, "Failed to read histogram from JSON: " + e);
+      mUpdateViewsStmt.bindLong(1, delta);
+      mUpdateViewsStmt.bindLong(2, kind);
+      mUpdateViewsStmt.bindLong(3, user);
+      mUpdateViewsStmt.bindDouble(4, epsilon);
+      mUpdateViewsStmt.bindString(5, screenName);
+      if (mUpdateViewsStmt.executeUpdateDelete() > 0) {
+        return;
+      }
+      mInsertViewsStmt.bindLong(1, kind);
+      mInsertViewsStmt.bindLong(2, user);
+      mInsertViewsStmt.bindDouble(3, epsilon);
+      mInsertViewsStmt.bindString(4, screenName);
+      mInsertViewsStmt.bindLong(5, delta);
+      if (mInsertViewsStmt.executeInsert() == -1L) {
+        Log.e(TAG, "Failed to insert histogram counter for " + screenName);
       }
     } catch (SQLiteException sQLiteException) {
       Log.e(TAG, "Error updating histogram " + sQLiteException);
@@ -164,18 +158,39 @@ public class DatabaseController implements Closeable {
     }
   }
 
+  private void compileHistogramStatements(SQLiteDatabase sQLiteDatabase) {
+    closeHistogramStatements();
+    mUpdateViewsStmt = sQLiteDatabase.compileStatement(
+            "UPDATE histograms SET views = views + ? WHERE kind = ? AND user = ? AND epsilon = ? AND name = ?");
+    mInsertViewsStmt = sQLiteDatabase.compileStatement(
+            "INSERT INTO histograms (kind, user, epsilon, name, views) VALUES (?, ?, ?, ?, ?)");
+    mCompiledFor = sQLiteDatabase;
+  }
+
+  private synchronized void closeHistogramStatements() {
+    if (mUpdateViewsStmt != null) {
+      mUpdateViewsStmt.close();
+      mUpdateViewsStmt = null;
+    }
+    if (mInsertViewsStmt != null) {
+      mInsertViewsStmt.close();
+      mInsertViewsStmt = null;
+    }
+    mCompiledFor = null;
+  }
+
   public long actualViewsSoFar() {
     return this.executeRawQuery("SELECT total_actual_views FROM stats", null);
   }
 
-  public final List<String> readScreenNames() {
+  public final Map<Integer, String> readScreenNameIds() {
     SQLiteDatabase sQLiteDatabase = this.getWritableDatabase();
-    try (Cursor cursor = sQLiteDatabase.query("screen_names", new String[]{"name"},
+    try (Cursor cursor = sQLiteDatabase.query("screen_names", new String[]{"name_id", "name"},
             null, null, null, null, null)) {
-      List<String> names = new ArrayList<>();
+      Map<Integer, String> names = new HashMap<>();
       if (cursor.moveToFirst()) {
         do {
-          names.add(cursor.getString(0));
+          names.put(cursor.getInt(0), cursor.getString(1));
         } while (cursor.moveToNext());
       }
       return names;
@@ -185,44 +200,61 @@ public class DatabaseController implements Closeable {
     }
   }
 
-  public final long storeNewScreenName(String name) {
+  /**
+   * Writes the names added to the dictionary since the last call, with their ids.
+   * These include the names added to Proxy.V at init, so screen_names holds the
+   * whole universe, not only the names met at runtime.
+   */
+  public final synchronized void storeNewScreenNames(ScreenNameDictionary dictionary) {
+    Dispatcher.checkIfInWorkerThread();
     SQLiteDatabase sQLiteDatabase = this.getWritableDatabase();
-    ContentValues contentValues = new ContentValues();
-    contentValues.put("name", name);
-    try {
-      long id = sQLiteDatabase.insert("screen_names", null, contentValues);
-      if (id == -1L) {
-        Log.e(TAG, "Failed to insert new screen name (got -1)");
-        return -1;
+    Integer id;
+    while ((id = dictionary.pollUnpersisted()) != null) {
+      String name = dictionary.name(id);
+      ContentValues contentValues = new ContentValues();
+      contentValues.put("name_id", id);
+      contentValues.put("name", name);
+      try {
+        if (sQLiteDatabase.insertWithOnConflict("screen_names", null, contentValues,
+                SQLiteDatabase.CONFLICT_IGNORE) == -1L) {
+          Log.e(TAG, "Failed to insert new screen name (got -1)");
+        } else {
+          Log.d(TAG, "New screen name saved to database: " + id + "=" + name);
+        }
+      } catch (SQLiteException sQLiteException) {
+        dictionary.markUnpersisted(id);
+        Log.e(TAG, "Error storing a screen name " + sQLiteException);
+        throw sQLiteException;
       }
-      Log.d(TAG, "New screen name saved to database: " + name);
-      return id;
-    } catch (SQLiteException sQLiteException) {
-      Log.e(TAG, "Error storing a hit " + sQLiteException);
-      throw sQLiteException;
     }
   }
 
-  public final void deleteHit(long id) {
-    deleteHit(id, "hits");
+  /**
+   * @return false if the row was deleted already
+   */
+  public final boolean deleteHit(long id) {
+    return deleteHit(id, "hits") == 1;
   }
 
   public final void deleteRandomizedHit(long id) {
     deleteHit(id, "random_hits");
   }
 
-  private void deleteHit(long id, String tbl) {
+  private int deleteHit(long id, String tbl) {
     Dispatcher.checkIfInWorkerThread();
     List<Long> arrayList = new ArrayList<>(1);
     arrayList.add(id);
-    Log.i(TAG, "Deleting hit in " + tbl + ", id=" + id);
-    this.deleteHits(arrayList, tbl);
+    return this.deleteHits(arrayList, tbl);
   }
 
-  private void deleteHits(List<Long> idList, String tbl) {
+  public final void deleteRandomizedHits(List<Long> idList) {
+    deleteHits(idList, "random_hits");
+  }
+
+  private int deleteHits(List<Long> idList, String tbl) {
     Dispatcher.checkIfInWorkerThread();
     if (idList.isEmpty()) {
-      return;
+      return 0;
     }
     StringBuilder stringBuilder = new StringBuilder("hit_id");
     stringBuilder.append(" in (");
@@ -244,6 +276,7 @@ public class DatabaseController implements Closeable {
       if (n != idList.size()) {
         Log.d(TAG, "Deleted fewer hits then expected from " + tbl + " " + idList.size() + " " + n + " " + string);
       }
+      return n;
     } catch (SQLiteException sQLiteException) {
       Log.e(TAG, "Error deleting hits in " + tbl + " " + sQLiteException);
       throw sQLiteException;
@@ -251,19 +284,41 @@ public class DatabaseController implements Closeable {
   }
 
   private List<HitInfo> readHits(long limit, String tbl) {
+    return readHits(0, Long.MAX_VALUE, limit, tbl);
+  }
+
+  private List<HitInfo> readHits(long afterId, long toId, long limit, String tbl) {
     Dispatcher.checkIfInWorkerThread();
     SQLiteDatabase sQLiteDatabase = this.getWritableDatabase();
-    try (Cursor cursor = sQLiteDatabase.query(tbl, new String[]{"hit_id", "hit_map"},
-            null, null, null, null,
+    boolean compact = tbl.equals("random_hits");
+    String[] columns = compact ? new String[]{"hit_id", "hit_map", "base_id"} : new String[]{"hit_id", "hit_map"};
+    try (Cursor cursor = sQLiteDatabase.query(tbl, columns,
+            "hit_id > ? AND hit_id <= ?", new String[]{Long.toString(afterId), Long.toString(toId)}, null, null,
             String.format("%s ASC", "hit_id"), Long.toString(limit))) {
       List<HitInfo> hits = new ArrayList<>();
+      // base maps are shared by the randomized hits of one actual hit
+      Map<Long, Map<String, String>> bases = new HashMap<>();
+      int withoutTracker = 0;
       if (cursor.moveToFirst()) {
         do {
           long id = cursor.getLong(0);
-          String map = cursor.getString(1);
-          hits.add(decodeHit(id, map));
+          HitInfo hit;
+          if (compact && !cursor.isNull(2)) {
+            hit = decodeCompactHit(id, cursor.getBlob(1), cursor.getLong(2), bases);
+          } else {
+            hit = decodeHit(id, cursor.getString(1));
+          }
+          if (hit.tracker == null) {
+            withoutTracker++;
+          }
+          hits.add(hit);
         } while (cursor.moveToNext());
       }
+      if (withoutTracker > 0) {
+        // their trackers are not created yet in this process; callers skip them
+        Metrics.add(Metrics.HITS_WITHOUT_TRACKER, withoutTracker);
+        Log.w(TAG, "Hits read from " + tbl + " without a tracker: " + withoutTracker);
+      }
       Log.d(TAG, "Hits read from " + tbl + ": " + hits.size());
       return hits;
     } catch (SQLiteException sQLiteException) {
@@ -276,10 +331,34 @@ public class DatabaseController implements Closeable {
     return readHits(limit, "hits");
   }
 
+  /**
+   * Reads a page of the actual hits stored by earlier processes with ids
+   * greater than afterId, in id order.
+   */
+  public final List<HitInfo> readJournaledHits(long afterId, long limit) {
+    return readHits(afterId, mJournalEnd, limit, "hits");
+  }
+
+  /**
+   * Called when the database is opened, before this process stores any hit.
+   *
+   * @param journalEnd the largest id in hits
+   */
+  void setJournalEnd(long journalEnd) {
+    mJournalEnd = journalEnd;
+  }
+
   public final List<HitInfo> readRandomizedHits(long limit) {
     return readHits(limit, "random_hits");
   }
 
+  /**
+   * Reads a page of randomized hits with ids greater than afterId, in id order.
+   */
+  public final List<HitInfo> readRandomizedHits(long afterId, long limit) {
+    return readHits(afterId, Long.MAX_VALUE, limit, "random_hits");
+  }
+
   private long storeHit(Tracker tracker, Map<String, String> map, String tbl) {
     Dispatcher.checkIfInWorkerThread();
     SQLiteDatabase sQLiteDatabase = this.getWritableDatabase();
@@ -292,7 +371,6 @@ public class DatabaseController implements Closeable {
         Log.e(TAG, "Failed to insert a hit (got -1) to " + tbl);
         return -1;
       }
-      Log.d(TAG, "Hit saved to " + tbl + ". db-id=" + id + ", hit=" + hitInfo);
       return id;
     } catch (SQLiteException sQLiteException) {
       Log.e(TAG, "Error storing a hit to " + tbl + " " + sQLiteException);
@@ -309,6 +387,126 @@ public class DatabaseController implements Closeable {
     return storeHit(tracker, map, "random_hits");
   }
 
+  /**
+   * Stores what the randomized hits of one actual hit have in common: its
+   * parameters except the screen name and hit time, and its tracker.
+   */
+  public final long storeHitBase(Tracker tracker, Map<String, String> map) {
+    Dispatcher.checkIfInWorkerThread();
+    Map<String, String> base = new HashMap<>(map);
+    base.remove("&cd");
+    base.remove("&ht");
+    base.put("tracking_id", proxy.getTrackingId(tracker));
+    ContentValues contentValues = new ContentValues();
+    contentValues.put("hit_map", HitCodec.encodeMap(base));
+    try {
+      long id = this.getWritableDatabase().insert("hit_bases", null, contentValues);
+      if (id == -1L) {
+        Log.e(TAG, "Failed to insert a hit base (got -1)");
+      }
+      return id;
+    } catch (SQLiteException sQLiteException) {
+      Log.e(TAG, "Error storing a hit base " + sQLiteException);
+      throw sQLiteException;
+    }
+  }
+
+  public final long storeRandomizedHit(long baseId, int screenNameId, long hitTime) {
+    Dispatcher.checkIfInWorkerThread();
+    ContentValues contentValues = new ContentValues();
+    contentValues.put("hit_map", HitCodec.encodeDelta(screenNameId, hitTime));
+    contentValues.put("base_id", baseId);
+    try {
+      long id = this.getWritableDatabase().insert("random_hits", null, contentValues);
+      if (id == -1L) {
+        Log.e(TAG, "Failed to insert a hit (got -1) to random_hits");
+      }
+      return id;
+    } catch (SQLiteException sQLiteException) {
+      Log.e(TAG, "Error storing a hit to random_hits " + sQLiteException);
+      throw sQLiteException;
+    }
+  }
+
+  /**
+   * Replaces the stored metrics with the given snapshot, see {@link Metrics#snapshot()}.
+   */
+  public final void storeMetrics(Map<String, Long> metrics) {
+    Dispatcher.checkIfInWorkerThread();
+    SQLiteDatabase sQLiteDatabase = this.getWritableDatabase();
+    try {
+      sQLiteDatabase.beginTransaction();
+      try {
+        for (Map.Entry<String, Long> entry : metrics.entrySet()) {
+          ContentValues contentValues = new ContentValues();
+          contentValues.put("name", entry.getKey());
+          contentValues.put("value", entry.getValue());
+          sQLiteDatabase.insertWithOnConflict("metrics", null, contentValues, SQLiteDatabase.CONFLICT_REPLACE);
+        }
+        sQLiteDatabase.setTransactionSuccessful();
+      } finally {
+        sQLiteDatabase.endTransaction();
+      }
+    } catch (SQLiteException sQLiteException) {
+      Log.e(TAG, "Error storing metrics " + sQLiteException);
+      throw sQLiteException;
+    }
+  }
+
+  /**
+   * Drops the base maps no randomized hit refers to any more.
+   */
+  public final void deleteUnreferencedHitBases() {
+    Dispatcher.checkIfInWorkerThread();
+    try {
+      int n = this.getWritableDatabase().delete("hit_bases",
+              "base_id NOT IN (SELECT base_id FROM random_hits WHERE base_id IS NOT NULL)", null);
+      if (n > 0) {
+        Log.d(TAG, "Deleted " + n + " hit bases");
+      }
+    } catch (SQLiteException sQLiteException) {
+      Log.e(TAG, "Error deleting hit bases " + sQLiteException);
+      throw sQLiteException;
+    }
+  }
+
+  private Map<String, String> readHitBase(long baseId) {
+    try (Cursor cursor = this.getWritableDatabase().query("hit_bases", new String[]{"hit_map"},
+            "base_id = ?", new String[]{Long.toString(baseId)}, null, null, null)) {
+      if (cursor.moveToFirst()) {
+        return HitCodec.decodeMap(cursor.getBlob(0));
+      }
+      Log.e(TAG, "Missing hit base " + baseId);
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to decode hit base " + baseId + ": " + e);
+    }
+    return null;
+  }
+
+  private HitInfo decodeCompactHit(long id, byte[] delta, long baseId, Map<Long, Map<String, String>> bases) {
+    Map<String, String> base = bases.get(baseId);
+    if (base == null && !bases.containsKey(baseId)) {
+      base = readHitBase(baseId);
+      bases.put(baseId, base);
+    }
+    Map<String, String> map = new HashMap<>();
+    Tracker tracker = null;
+    if (base != null) {
+      map.putAll(base);
+      String trackingId = map.remove("tracking_id");
+      tracker = trackingId == null ? null : proxy.getTracker(trackingId);
+    }
+    try {
+      long[] fields = HitCodec.decodeDelta(delta);
+      String name = proxy.getScreenNames().name((int) fields[0]);
+      map.put("&cd", Proxy.experimentMode ? Proxy.PREFIX + "_" + name : name);
+      map.put("&ht", String.valueOf(fields[1]));
+    } catch (IOException e) {
+      Log.e(TAG, "Failed to decode hit " + id + ": " + e);
+    }
+    return new HitInfo(id, tracker, map);
+  }
+
   private String encodeHit(Tracker tracker, Map<String, String> map) {
     JSONObject jsonObject = new JSONObject();
     try {
@@ -332,9 +530,6 @@ public class DatabaseController implements Closeable {
         String k = it.next();
         if (k.equals("tracking_id")) {
           tracker = proxy.getTracker(jsonObject.getString(k));
-          if (tracker == null) {
-            Log.e(TAG, "Tracker is set to null");
-          }
         } else {
           map.put(k, jsonObject.getString(k));
         }
@@ -0,0 +1,148 @@
+/*
+ * DispatchLane.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+import com.google.android.gms.analytics.Tracker;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The pending actual hits of one tracker. At most one IngestJob per lane is
+ * queued or running, so the hits of a tracker are randomized in order while
+ * the lanes of different trackers can be drained by different threads.
+ * <p>
+ * Hits that did not fit are spilled: a SpillJob stores them in hits and hands
+ * their rows back to the lane, whose IngestJob randomizes them after the hits
+ * queued before them. While a tracker has spilled hits that are not randomized
+ * yet, its later hits are spilled as well.
+ */
+public class DispatchLane {
+  /**
+   * A spilled hit as stored in its row of hits.
+   */
+  public static final class SpilledHit {
+    final long id;
+    final Tracker tracker;
+    final Map<String, String> map;
+
+    SpilledHit(long id, Tracker tracker, Map<String, String> map) {
+      this.id = id;
+      this.tracker = tracker;
+      this.map = map;
+    }
+  }
+
+  final Tracker tracker;
+  private final Queue<PendingHit> mHits = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger mSize = new AtomicInteger();
+  private final AtomicBoolean mScheduled = new AtomicBoolean();
+  // stored by the SpillJob, in the order they were spilled
+  private final Queue<SpilledHit> mSpilledHits = new ConcurrentLinkedQueue<>();
+  // spilled hits not randomized yet, including the ones not stored yet
+  private final AtomicInteger mSpilling = new AtomicInteger();
+
+  DispatchLane(Tracker tracker) {
+    this.tracker = tracker;
+  }
+
+  /**
+   * @return false if the lane already holds {@code capacity} hits
+   */
+  boolean offer(PendingHit hit, int capacity) {
+    if (mSize.incrementAndGet() > capacity) {
+      mSize.decrementAndGet();
+      return false;
+    }
+    mHits.offer(hit);
+    return true;
+  }
+
+  PendingHit poll() {
+    PendingHit hit = mHits.poll();
+    if (hit != null) {
+      mSize.decrementAndGet();
+    }
+    return hit;
+  }
+
+  /**
+   * Linear in the lane size; only used when the lane overflows.
+   */
+  boolean hasPendingView(String screenName, boolean randomize) {
+    for (PendingHit hit : mHits) {
+      if (hit.randomize == randomize && hit.screenName.equals(screenName)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  int size() {
+    return mSize.get();
+  }
+
+  boolean isEmpty() {
+    return mHits.isEmpty();
+  }
+
+  boolean isSpilling() {
+    return mSpilling.get() > 0;
+  }
+
+  /**
+   * Called before a hit of this lane is handed to the SpillJob.
+   */
+  void startSpill() {
+    mSpilling.incrementAndGet();
+  }
+
+  /**
+   * Called once a spilled hit is randomized, or lost.
+   */
+  void endSpill() {
+    mSpilling.decrementAndGet();
+  }
+
+  void addSpilled(long id, Tracker tracker, Map<String, String> map) {
+    mSpilledHits.offer(new SpilledHit(id, tracker, map));
+  }
+
+  SpilledHit pollSpilled() {
+    return mSpilledHits.poll();
+  }
+
+  boolean hasSpilled() {
+    return !mSpilledHits.isEmpty();
+  }
+
+  /**
+   * @return true if the caller has to submit the IngestJob of this lane
+   */
+  boolean trySchedule() {
+    return mScheduled.compareAndSet(false, true);
+  }
+
+  /**
+   * Called by the IngestJob after its last poll; it then checks the lane again,
+   * as a hit offered in between did not schedule a new job.
+   */
+  void unschedule() {
+    mScheduled.set(false);
+  }
+
+  @Override
+  public String toString() {
+    return "[lane " + tracker + ", #=" + mSize.get() + ", spilled#=" + mSpilling.get() + "]";
+  }
+}
@@ -9,18 +9,36 @@
 
 package edu.osu.cse.presto.android.gator.instrument.runtime;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Runs the runtime jobs on DispatchThreads. A positive capacity bounds the job
+ * queue; a job that does not fit is rejected with RejectedExecutionException
+ * and the submitter decides what to drop.
+ */
 public class DispatchThreadPoolExecutor extends ThreadPoolExecutor {
   DispatchThreadPoolExecutor() {
-    super(1, 1, 2, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+    this(1, 0);
+  }
+
+  DispatchThreadPoolExecutor(int threads, int capacity) {
+    super(threads, threads, 2, TimeUnit.MINUTES, newQueue(capacity));
     this.setThreadFactory(new DispatchThreadFactory());
     this.allowCoreThreadTimeOut(true);
   }
 
+  private static BlockingQueue<Runnable> newQueue(int capacity) {
+    if (capacity > 0) {
+      return new ArrayBlockingQueue<>(capacity);
+    }
+    return new LinkedBlockingQueue<>();
+  }
+
   @Override
   protected final <T> RunnableFuture<T> newTaskFor(Runnable runnable, T t) {
     return new DispatchFutureTask<>(runnable, t);
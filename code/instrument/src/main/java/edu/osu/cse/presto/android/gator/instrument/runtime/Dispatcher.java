@@ -12,34 +12,294 @@ package edu.osu.cse.presto.android.gator.instrument.runtime;
 import android.util.Log;
 import com.google.android.gms.analytics.Tracker;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Dispatcher {
   private final String TAG = "presto.ga.rt." + Dispatcher.class.getSimpleName();
+  // delivery is paced, so it keeps a single thread of its own
   private final DispatchThreadPoolExecutor mDeliverExecutor = new DispatchThreadPoolExecutor();
-  private final DispatchThreadPoolExecutor mDispatchExecutor = new DispatchThreadPoolExecutor();
+  private final DispatchThreadPoolExecutor mDispatchExecutor =
+          new DispatchThreadPoolExecutor(Proxy.dispatchThreads, Proxy.dispatchQueueCapacity);
   private final Queue<HitInfo> mPendingRandomizedHitQueue = new ConcurrentLinkedQueue<>();
+  // actual hits handed over by Proxy.hit, one lane per tracker
+  private final Map<Tracker, DispatchLane> mLanes = new ConcurrentHashMap<>();
+  // actual hits that did not fit in their lane, waiting for a SpillJob to store them
+  private final DispatchLane mSpillLane = new DispatchLane(null);
+  // rows journaled by an earlier process are replayed by the first delivery
+  private final AtomicBoolean mJournalReplayed = new AtomicBoolean();
   private final DatabaseController mDbController;
   private final Randomizer mRandomizer;
+  private final ViewCounterCache mCounterCache;
+  private final ScreenNameDictionary mScreenNames;
+  private final Scheduler mScheduler;
   private final long INTERVAL_BETWEEN_SENDS = 2000; // 2 seconds
   private final long MAX_HITS_PER_DISPATCH = 20;
+  // batch delivery: up to MAX_BURST_SENDS at once, then one send per INTERVAL_BETWEEN_SENDS
+  private final long MAX_BURST_SENDS = 30;
+  private final long HITS_PER_PAGE = 50;
+  private final TokenBucket mSendPacer = new TokenBucket(MAX_BURST_SENDS, INTERVAL_BETWEEN_SENDS);
 
-  Dispatcher(DatabaseController databaseController, Randomizer randomizer) {
+  Dispatcher(DatabaseController databaseController, Randomizer randomizer, ViewCounterCache counterCache,
+             ScreenNameDictionary screenNames, Scheduler scheduler) {
     this.mDbController = databaseController;
     this.mRandomizer = randomizer;
+    this.mCounterCache = counterCache;
+    this.mScreenNames = screenNames;
+    this.mScheduler = scheduler;
   }
 
-  public void dispatch(Tracker tracker, Map<String, String> map) {
-    mDispatchExecutor.submit(new DispatchJob(this, tracker, map));
+  /**
+   * Hands an actual hit over to the lane of its tracker. Never blocks; an
+   * IngestJob is only submitted when none is pending for the lane. A full lane
+   * applies Proxy.hitOverflowPolicy; SPILL hands the hit to a SpillJob, so the
+   * database is never written on the calling thread.
+   *
+   * @return false if the hit was dropped
+   */
+  public boolean dispatch(PendingHit hit) {
+    DispatchLane lane = lane(hit.tracker);
+    if (hit.randomize && lane.isSpilling()) {
+      // earlier hits of the tracker are spilled; this one follows them
+      return spill(lane, hit);
+    }
+    if (!lane.offer(hit, Proxy.maxPendingHits)) {
+      if (Proxy.hitOverflowPolicy == OverflowPolicy.SPILL && hit.randomize) {
+        return spill(lane, hit);
+      }
+      if (!overflow(lane, hit)) {
+        return false;
+      }
+    }
+    Metrics.queueDepth(lane.size());
+    schedule(lane);
+    return true;
+  }
+
+  private DispatchLane lane(Tracker tracker) {
+    DispatchLane lane = mLanes.get(tracker);
+    if (lane == null) {
+      DispatchLane newLane = new DispatchLane(tracker);
+      lane = mLanes.putIfAbsent(tracker, newLane);
+      if (lane == null) {
+        lane = newLane;
+      }
+    }
+    return lane;
+  }
+
+  /**
+   * @return true if the hit was put in the lane in place of a dropped one
+   */
+  private boolean overflow(DispatchLane lane, PendingHit hit) {
+    if (Proxy.hitOverflowPolicy == OverflowPolicy.COALESCE && lane.hasPendingView(hit.screenName, hit.randomize)) {
+      Metrics.increment(Metrics.HITS_DROPPED);
+      return false;
+    }
+    if (lane.poll() != null) {
+      Metrics.increment(Metrics.HITS_DROPPED);
+    }
+    return lane.offer(hit, Integer.MAX_VALUE);
+  }
+
+  private void schedule(DispatchLane lane) {
+    if (!lane.trySchedule()) {
+      return;
+    }
+    try {
+      mDispatchExecutor.submit(new IngestJob(this, lane));
+    } catch (RejectedExecutionException e) {
+      // the hits stay in the lane until the next dispatch or checkpoint
+      lane.unschedule();
+      Log.w(TAG, "Dispatch queue full, deferring " + lane);
+    }
+  }
+
+  /**
+   * Queues a hit of the lane for the SpillJob; the hit is dropped if the spill
+   * lane is full as well.
+   *
+   * @return false if the hit was dropped
+   */
+  private boolean spill(DispatchLane lane, PendingHit hit) {
+    lane.startSpill();
+    if (!mSpillLane.offer(hit, Proxy.maxPendingHits)) {
+      lane.endSpill();
+      Metrics.increment(Metrics.HITS_DROPPED);
+      return false;
+    }
+    Metrics.increment(Metrics.HITS_SPILLED);
+    scheduleSpill();
+    return true;
+  }
+
+  private void scheduleSpill() {
+    if (!mSpillLane.trySchedule()) {
+      return;
+    }
+    try {
+      mDispatchExecutor.submit(new SpillJob(this));
+    } catch (RejectedExecutionException e) {
+      // the hits stay in the spill lane until the next spill or checkpoint
+      mSpillLane.unschedule();
+      Log.w(TAG, "Dispatch queue full, deferring " + mSpillLane);
+    }
+  }
+
+  void drainPendingHits(DispatchLane lane) {
+    boolean randomized = false;
+    PendingHit hit;
+    while ((hit = lane.poll()) != null) {
+      Map<String, String> map = addScreenName(hit);
+      countView(hit);
+      if (hit.randomize) {
+        // randomized hits refer to names by id, so ids are persisted first
+        mDbController.storeNewScreenNames(mScreenNames);
+        enqueueHit(hit.tracker, map);
+        randomized = true;
+      } else {
+        hit.tracker.send(map);
+        Metrics.increment(Metrics.HITS_NOT_RANDOMIZED);
+      }
+    }
+    // spilled hits come after the ones that fitted in the lane
+    DispatchLane.SpilledHit spilled;
+    while ((spilled = lane.pollSpilled()) != null) {
+      mDbController.storeNewScreenNames(mScreenNames);
+      randomizeStoredHit(spilled.id, spilled.tracker, spilled.map, !Proxy.experimentMode);
+      lane.endSpill();
+      randomized = true;
+    }
+    // a hit offered after the last poll may have seen the lane still scheduled
+    lane.unschedule();
+    if (!lane.isEmpty() || lane.hasSpilled()) {
+      schedule(lane);
+    }
+    if (randomized) {
+      mScheduler.schedule();
+    }
+  }
+
+  /**
+   * Stores the spilled hits in hits and hands their rows to the IngestJobs of
+   * their lanes.
+   */
+  void drainSpilledHits() {
+    PendingHit hit;
+    while ((hit = mSpillLane.poll()) != null) {
+      DispatchLane lane = lane(hit.tracker);
+      Map<String, String> map = addScreenName(hit);
+      long id = mDbController.storeHit(hit.tracker, map);
+      if (id == -1L) {
+        lane.endSpill();
+        Metrics.increment(Metrics.HITS_DROPPED);
+        continue;
+      }
+      countView(hit);
+      lane.addSpilled(id, hit.tracker, map);
+      schedule(lane);
+    }
+    mSpillLane.unschedule();
+    if (!mSpillLane.isEmpty()) {
+      scheduleSpill();
+    }
+  }
+
+  /**
+   * Adds the screen name of a hit that is kept to the universe V.
+   *
+   * @return the map to store or send; a randomized hit tells whether its name
+   * is new in presto_new_name
+   */
+  private Map<String, String> addScreenName(PendingHit hit) {
+    boolean newName = mScreenNames.id(hit.screenName) < 0 && mScreenNames.add(hit.screenName);
+    if (!hit.randomize) {
+      return hit.map;
+    }
+    if (newName) {
+      Metrics.increment(Metrics.NEW_SCREEN_NAMES);
+      Log.i(TAG, "\tnew screen name, add " + hit.screenName + " to universe");
+    }
+    Map<String, String> map = new HashMap<>(hit.map);
+    map.put("presto_new_name", String.valueOf(newName));
+    return map;
+  }
+
+  // counts the view of a hit that is sent, stored or spilled
+  private void countView(PendingHit hit) {
+    mCounterCache.incrementActualViews(mScreenNames.id(hit.screenName));
+    if (mCounterCache.shouldFlush()) {
+      mCounterCache.flush();
+    }
   }
 
   void enqueueHit(Tracker tracker, Map<String, String> map) {
+    long dbWriteStart = Metrics.start();
     long id = mDbController.storeHit(tracker, map);
-    mRandomizer.randomize(mPendingRandomizedHitQueue, tracker, map);
-    if (!Proxy.experimentMode)
-      mDbController.deleteHit(id);
+    randomizeStoredHit(id, tracker, map, !Proxy.experimentMode);
+    Metrics.stop(Metrics.DB_WRITE, dbWriteStart);
+  }
+
+  /**
+   * Randomizes the actual hit stored in row {@code id} of hits. The randomized
+   * rows, their counters and the removal of the row commit together; with
+   * {@code delete}, the hit is only randomized if this transaction removed its
+   * row, so a row replayed twice is randomized once.
+   */
+  private void randomizeStoredHit(long id, Tracker tracker, Map<String, String> map, boolean delete) {
+    List<HitInfo> randomizedHits = null;
+    mDbController.beginTransaction();
+    try {
+      if (!delete || mDbController.deleteHit(id)) {
+        long randomizeStart = Metrics.start();
+        randomizedHits = mRandomizer.randomize(tracker, map);
+        Metrics.stop(Metrics.RANDOMIZE, randomizeStart);
+      }
+      mDbController.setTransactionSuccessful();
+    } finally {
+      mDbController.endTransaction();
+    }
+    if (randomizedHits == null) {
+      Log.w(TAG, "Hit " + id + " was randomized already");
+      return;
+    }
+    Metrics.add(Metrics.RANDOMIZED_HITS, randomizedHits.size());
+    if (!Proxy.batchDelivery) {
+      // otherwise delivered straight from random_hits
+      mPendingRandomizedHitQueue.addAll(randomizedHits);
+    }
+  }
+
+  public void checkpoint() {
+    try {
+      mDispatchExecutor.submit(new CheckpointJob(this));
+    } catch (RejectedExecutionException e) {
+      Log.w(TAG, "Dispatch queue full, skipping checkpoint");
+    }
+  }
+
+  void saveState() {
+    mDbController.storeNewScreenNames(mScreenNames);
+    mCounterCache.flush();
+    if (Proxy.enableMetrics) {
+      mDbController.storeMetrics(Metrics.snapshot());
+    }
+    // lanes whose IngestJob or SpillJob was rejected
+    for (DispatchLane lane : mLanes.values()) {
+      if (!lane.isEmpty() || lane.hasSpilled()) {
+        schedule(lane);
+      }
+    }
+    if (!mSpillLane.isEmpty()) {
+      scheduleSpill();
+    }
   }
 
   public void deliver() {
@@ -47,24 +307,65 @@ public class Dispatcher {
       mDeliverExecutor.submit(new DispatchJob(this));
   }
 
+  private static void recordSent(HitInfo hitInfo) {
+    if (!Proxy.enableMetrics) {
+      return;
+    }
+    Metrics.increment(Metrics.SENT_HITS);
+    String hitTime = hitInfo.map.get("&ht");
+    if (hitTime != null) {
+      Metrics.record(Metrics.DELIVERY_LAG, (System.currentTimeMillis() - Long.parseLong(hitTime)) * 1000000);
+    }
+  }
+
   public static void checkIfInWorkerThread() {
     if (!(Thread.currentThread() instanceof DispatchThread)) {
       throw new IllegalStateException("Call expected from DispatchThread");
     }
   }
 
-  boolean enqueueSavedRandomizedHits() {
-    if (mDbController.numberOfStoredHits() > 0L) {
-      for (HitInfo hit : mDbController.readHits(MAX_HITS_PER_DISPATCH)) {
-        enqueueHit(hit.tracker, hit.map);
+  /**
+   * Randomizes the actual hits left in hits by an earlier process, each in the
+   * transaction that deletes its row. Rows of this process belong to their
+   * lanes and are not read; rows whose tracker is not created yet in this
+   * process are kept for the next process. Raw hits are kept on purpose in
+   * experiment mode, so nothing is replayed then.
+   *
+   * @return true if any row was replayed
+   */
+  private boolean replayJournal() {
+    if (Proxy.experimentMode) {
+      return false;
+    }
+    boolean replayed = false;
+    long cursor = 0;
+    List<HitInfo> page;
+    while (!(page = mDbController.readJournaledHits(cursor, MAX_HITS_PER_DISPATCH)).isEmpty()) {
+      for (HitInfo hit : page) {
+        cursor = hit.dbId;
+        if (hit.tracker == null) {
+          continue;
+        }
+        randomizeStoredHit(hit.dbId, hit.tracker, hit.map, true);
+        replayed = true;
       }
+    }
+    return replayed;
+  }
+
+  // the journal left by an earlier process, once per process
+  private boolean replayJournalOnce() {
+    return !mJournalReplayed.getAndSet(true) && mDbController.numberOfStoredHits() > 0L && replayJournal();
+  }
+
+  boolean enqueueSavedRandomizedHits() {
+    if (replayJournalOnce()) {
       return true;
     }
     if (mDbController.numberOfStoredRandomizedHits() > 0L) {
       Log.i(TAG, "Enqueue randomized hits (db#=" + mDbController.numberOfStoredRandomizedHits() + ")");
       for (HitInfo hit : mDbController.readRandomizedHits(MAX_HITS_PER_DISPATCH)) {
         mPendingRandomizedHitQueue.offer(hit);
-        Log.i(TAG, "\t" + hit + " (q#=" + mPendingRandomizedHitQueue.size() + ")");
       }
       return true;
     }
@@ -72,6 +373,10 @@ public class Dispatcher {
   }
 
   public void deliverLocalRandomizedHits() {
+    if (Proxy.batchDelivery) {
+      deliverRandomizedHitPages();
+      return;
+    }
     if (mPendingRandomizedHitQueue.isEmpty() && !enqueueSavedRandomizedHits())
       return;
     while (!mPendingRandomizedHitQueue.isEmpty()) {
@@ -83,10 +388,52 @@ public class Dispatcher {
       HitInfo hitInfo = mPendingRandomizedHitQueue.poll();
       if (hitInfo != null && hitInfo.tracker != null) {
         hitInfo.tracker.send(hitInfo.map);
+        recordSent(hitInfo);
         mDbController.deleteRandomizedHit(hitInfo.dbId);
-        Log.i(TAG, "Send hit: " + hitInfo + " (q#=" + mPendingRandomizedHitQueue.size() + ")");
       }
     }
+    mDbController.deleteUnreferencedHitBases();
     deliver();
   }
+
+  /**
+   * Batch delivery: pages through random_hits in id order, sends as long as the
+   * pacer has tokens and deletes the delivered hits of a page in one statement.
+   * Whatever is left when the tokens run out waits for the next Scheduler tick
+   * instead of holding this thread asleep.
+   */
+  private void deliverRandomizedHitPages() {
+    // turn actual hits journaled by an earlier process into randomized ones first
+    replayJournalOnce();
+    long cursor = 0;
+    long sent = 0;
+    while (mSendPacer.available() > 0) {
+      List<HitInfo> page = mDbController.readRandomizedHits(cursor, HITS_PER_PAGE);
+      if (page.isEmpty()) {
+        mDbController.deleteUnreferencedHitBases();
+        Log.i(TAG, "Delivered " + sent + " randomized hits, none left");
+        return;
+      }
+      List<Long> delivered = new ArrayList<>(page.size());
+      for (HitInfo hitInfo : page) {
+        if (!mSendPacer.tryAcquire()) {
+          break;
+        }
+        cursor = hitInfo.dbId;
+        if (hitInfo.tracker == null) {
+          // its tracker is not created yet in this process, keep it for later
+          mSendPacer.refund();
+          continue;
+        }
+        hitInfo.tracker.send(hitInfo.map);
+        recordSent(hitInfo);
+        delivered.add(hitInfo.dbId);
+      }
+      mDbController.deleteRandomizedHits(delivered);
+      sent += delivered.size();
+    }
+    mDbController.deleteUnreferencedHitBases();
+    Log.i(TAG, "Delivered " + sent + " randomized hits, pacing the rest");
+    mScheduler.schedule();
+  }
 }
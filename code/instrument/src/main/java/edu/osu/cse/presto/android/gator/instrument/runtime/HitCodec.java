@@ -0,0 +1,132 @@
+/*
+ * HitCodec.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of stored hits. A randomized hit is stored as a
+ * reference to the base map of its actual hit plus a delta holding the id of the
+ * reported screen name and the hit time; the base map itself uses one byte for
+ * the common GA parameter keys.
+ */
+public class HitCodec {
+  private static final int VERSION = 1;
+  // key codes are index + 1; 0 marks a key written out in full
+  private static final String[] KEYS = {
+          "&t", "&cd", "&tid", "&cid", "&ht", "&a", "&an", "&aid", "&av", "&aiid", "&sr", "&ul", "&v", "&_v",
+          "&ds", "&sf", "&dm", "&de", "&vp", "&sd", "&ate", "&adid", "&aip", "&_s", "&_u", "&qt", "&z", "&uid",
+          "&ec", "&ea", "&el", "&ev", "&ni", "&exd", "&exf", "&utc", "&utv", "&utt", "&utl", "&sn", "&sa", "&st",
+          "presto_new_name", "tracking_id"};
+  private static final Map<String, Integer> KEY_CODES = new HashMap<>();
+
+  static {
+    for (int i = 0; i < KEYS.length; i++) {
+      KEY_CODES.put(KEYS[i], i + 1);
+    }
+  }
+
+  private HitCodec() {
+  }
+
+  public static byte[] encodeMap(Map<String, String> map) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * map.size());
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(VERSION);
+      writeVarLong(out, map.size());
+      for (Map.Entry<String, String> entry : map.entrySet()) {
+        Integer code = KEY_CODES.get(entry.getKey());
+        if (code == null) {
+          out.writeByte(0);
+          out.writeUTF(entry.getKey());
+        } else {
+          out.writeByte(code);
+        }
+        out.writeUTF(entry.getValue() == null ? "" : entry.getValue());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  public static Map<String, String> decodeMap(byte[] data) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+      int version = in.readUnsignedByte();
+      if (version != VERSION) {
+        throw new IOException("Unknown hit encoding version " + version);
+      }
+      int size = (int) readVarLong(in);
+      Map<String, String> map = new HashMap<>(size * 2);
+      for (int i = 0; i < size; i++) {
+        int code = in.readUnsignedByte();
+        String key;
+        if (code == 0) {
+          key = in.readUTF();
+        } else if (code <= KEYS.length) {
+          key = KEYS[code - 1];
+        } else {
+          throw new IOException("Unknown key code " + code);
+        }
+        map.put(key, in.readUTF());
+      }
+      return map;
+    }
+  }
+
+  /**
+   * Encodes the part of a randomized hit that differs from its base map.
+   */
+  public static byte[] encodeDelta(long screenNameId, long hitTime) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(12);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      writeVarLong(out, screenNameId);
+      writeVarLong(out, hitTime);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @return {screen name id, hit time}
+   */
+  public static long[] decodeDelta(byte[] data) throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+      return new long[]{readVarLong(in), readVarLong(in)};
+    }
+  }
+
+  private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+}
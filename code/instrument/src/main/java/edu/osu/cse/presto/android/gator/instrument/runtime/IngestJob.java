@@ -0,0 +1,26 @@
+/*
+ * IngestJob.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+public class IngestJob implements Runnable {
+  private final Dispatcher dispatcher;
+  private final DispatchLane lane;
+
+  IngestJob(Dispatcher dispatcher, DispatchLane lane) {
+    this.dispatcher = dispatcher;
+    this.lane = lane;
+  }
+
+  @Override
+  public void run() {
+    Dispatcher.checkIfInWorkerThread();
+    dispatcher.drainPendingHits(lane);
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * LatencyHistogram.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds with power-of-two buckets:
+ * bucket i counts samples in [2^i, 2^(i+1)). Recording is a couple of atomic
+ * increments, so it can sit on the app's calling thread.
+ */
+public class LatencyHistogram {
+  private static final int BUCKETS = 64;
+  private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong mCount = new AtomicLong();
+  private final AtomicLong mMax = new AtomicLong();
+
+  public void record(long nanos) {
+    if (nanos < 1) {
+      nanos = 1;
+    }
+    mBuckets.incrementAndGet(BUCKETS - 1 - Long.numberOfLeadingZeros(nanos));
+    mCount.incrementAndGet();
+    long max = mMax.get();
+    while (nanos > max && !mMax.compareAndSet(max, nanos)) {
+      max = mMax.get();
+    }
+  }
+
+  public long count() {
+    return mCount.get();
+  }
+
+  public long max() {
+    return mMax.get();
+  }
+
+  /**
+   * @return an upper bound in nanoseconds for the given percentile (0-100)
+   */
+  public long percentile(double percentile) {
+    long count = mCount.get();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(count * percentile / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += mBuckets.get(i);
+      if (seen >= rank) {
+        return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+      }
+    }
+    return mMax.get();
+  }
+
+  @Override
+  public String toString() {
+    return "n=" + count() + " p50<=" + percentile(50) / 1000 + "us p99<=" + percentile(99) / 1000
+            + "us max=" + max() / 1000 + "us";
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Metrics.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the runtime, in place of per-hit log
+ * lines. Everything is a fixed slot of an atomic array, so recording allocates
+ * nothing, and while Proxy.enableMetrics is false a call is a single field read.
+ * {@link #dump()} writes a snapshot to logcat; checkpoints also store it in the
+ * metrics table.
+ */
+public class Metrics {
+  private static final String TAG = "presto.ga.rt." + Metrics.class.getSimpleName();
+
+  // counters
+  public static final int HITS = 0;                // screenviews reported to Proxy.hit
+  public static final int HITS_NOT_RANDOMIZED = 1; // sent as they are
+  public static final int HITS_DROPPED = 2;        // lost to a full lane
+  public static final int HITS_SPILLED = 3;        // stored because of a full lane
+  public static final int NEW_SCREEN_NAMES = 4;
+  public static final int RANDOMIZED_HITS = 5;     // randomized hits stored
+  public static final int SENT_HITS = 6;           // randomized hits sent
+  public static final int HITS_WITHOUT_TRACKER = 7; // stored hits read before their tracker exists
+  private static final String[] COUNTERS = {
+          "hits", "hits_not_randomized", "hits_dropped", "hits_spilled", "new_screen_names",
+          "randomized_hits", "sent_hits", "hits_without_tracker"};
+
+  // histograms, in nanoseconds
+  public static final int INGEST = 0;        // Proxy.hit on the app thread
+  public static final int RANDOMIZE = 1;     // randomizing one actual hit
+  public static final int DB_WRITE = 2;      // the transaction storing one actual hit
+  public static final int DELIVERY_LAG = 3;  // from the hit time to the send
+  private static final String[] HISTOGRAMS = {"ingest", "randomize", "db_write", "delivery_lag"};
+
+  private static final AtomicLongArray sCounters = new AtomicLongArray(COUNTERS.length);
+  private static final LatencyHistogram[] sHistograms = new LatencyHistogram[HISTOGRAMS.length];
+  // the deepest a dispatch lane got
+  private static final AtomicLong sMaxQueueDepth = new AtomicLong();
+
+  static {
+    for (int i = 0; i < sHistograms.length; i++) {
+      sHistograms[i] = new LatencyHistogram();
+    }
+  }
+
+  private Metrics() {
+  }
+
+  public static void increment(int counter) {
+    if (Proxy.enableMetrics) {
+      sCounters.incrementAndGet(counter);
+    }
+  }
+
+  public static void add(int counter, long n) {
+    if (Proxy.enableMetrics) {
+      sCounters.addAndGet(counter, n);
+    }
+  }
+
+  /**
+   * @return a start time for {@link #stop}, or 0 when metrics are disabled
+   */
+  public static long start() {
+    return Proxy.enableMetrics ? System.nanoTime() : 0;
+  }
+
+  public static void stop(int histogram, long start) {
+    if (Proxy.enableMetrics && start != 0) {
+      sHistograms[histogram].record(System.nanoTime() - start);
+    }
+  }
+
+  public static void record(int histogram, long nanos) {
+    if (Proxy.enableMetrics) {
+      sHistograms[histogram].record(nanos);
+    }
+  }
+
+  public static void queueDepth(long depth) {
+    if (Proxy.enableMetrics) {
+      long max = sMaxQueueDepth.get();
+      while (depth > max && !sMaxQueueDepth.compareAndSet(max, depth)) {
+        max = sMaxQueueDepth.get();
+      }
+    }
+  }
+
+  /**
+   * @return name/value pairs; a histogram contributes its count, p50, p99 and max
+   */
+  public static Map<String, Long> snapshot() {
+    Map<String, Long> snapshot = new LinkedHashMap<>();
+    for (int i = 0; i < COUNTERS.length; i++) {
+      snapshot.put(COUNTERS[i], sCounters.get(i));
+    }
+    snapshot.put("max_queue_depth", sMaxQueueDepth.get());
+    for (int i = 0; i < HISTOGRAMS.length; i++) {
+      LatencyHistogram histogram = sHistograms[i];
+      snapshot.put(HISTOGRAMS[i] + ".count", histogram.count());
+      snapshot.put(HISTOGRAMS[i] + ".p50_ns", histogram.percentile(50));
+      snapshot.put(HISTOGRAMS[i] + ".p99_ns", histogram.percentile(99));
+      snapshot.put(HISTOGRAMS[i] + ".max_ns", histogram.max());
+    }
+    return snapshot;
+  }
+
+  public static void dump() {
+    if (!Proxy.enableMetrics) {
+      return;
+    }
+    for (int i = 0; i < COUNTERS.length; i++) {
+      Log.i(TAG, "\t" + COUNTERS[i] + ": " + sCounters.get(i));
+    }
+    Log.i(TAG, "\tmax_queue_depth: " + sMaxQueueDepth.get());
+    for (int i = 0; i < HISTOGRAMS.length; i++) {
+      Log.i(TAG, "\t" + HISTOGRAMS[i] + ": " + sHistograms[i]);
+    }
+  }
+}
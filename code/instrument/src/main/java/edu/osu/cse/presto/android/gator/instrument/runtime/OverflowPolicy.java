@@ -0,0 +1,33 @@
+/*
+ * OverflowPolicy.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+/**
+ * What {@link Dispatcher#dispatch} does with an actual hit when the lane of its
+ * tracker already holds Proxy.maxPendingHits hits.
+ */
+public enum OverflowPolicy {
+  /**
+   * Drop the hit if a view of the same screen is still pending in the lane,
+   * otherwise drop the oldest pending hit.
+   */
+  COALESCE,
+  /**
+   * Drop the oldest pending hit of the lane.
+   */
+  DROP_OLDEST,
+  /**
+   * Store the hit in the hits table on a dispatch thread; the lane randomizes
+   * it after the hits queued before it, and spills the later hits of the
+   * tracker until it caught up. If the spill queue is full as well, the hit is
+   * dropped. Hits that are not randomized drop the oldest pending hit instead.
+   */
+  SPILL
+}
@@ -0,0 +1,38 @@
+/*
+ * PendingHit.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+import com.google.android.gms.analytics.Tracker;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * An actual screenview handed over by {@link Proxy#hit} to the dispatch thread.
+ * Immutable, so it can be published through the ingest queue without locking.
+ */
+public final class PendingHit {
+  final Tracker tracker;
+  final Map<String, String> map;
+  final String screenName;
+  final boolean randomize;
+
+  PendingHit(Tracker tracker, Map<String, String> map, String screenName, boolean randomize) {
+    this.tracker = tracker;
+    this.map = Collections.unmodifiableMap(map);
+    this.screenName = screenName;
+    this.randomize = randomize;
+  }
+
+  @Override
+  public String toString() {
+    return "[" + screenName + ": " + map + "]";
+  }
+}
@@ -31,6 +31,14 @@ public class Proxy {
   public static Set<String> V;
   public static double EPSILON;
   public static boolean experimentMode = false;
+  public static boolean batchDelivery = true;
+  public static boolean compactHitEncoding = true;
+  // actual hits are randomized on dispatchThreads threads, in order per tracker
+  public static int dispatchThreads = 1;
+  public static int dispatchQueueCapacity = 64;
+  public static int maxPendingHits = 1024;
+  public static OverflowPolicy hitOverflowPolicy = OverflowPolicy.SPILL;
+  public static boolean enableMetrics = false;
 //  public static int simulateUserNum = 1;
 //  public static int scaleEvents = 1;
 
@@ -41,6 +49,8 @@ public class Proxy {
   private Scheduler mScheduler;
   private Dispatcher mDispatcher;
   private DatabaseController mDatabaseController;
+  private ViewCounterCache mViewCounterCache;
+  private ScreenNameDictionary mScreenNames;
   private Randomizer mRandomizer;
   private Map<String, Tracker> trackers = new ConcurrentHashMap<>();
   private Map<Tracker, String> trackersInv = new ConcurrentHashMap<>();
@@ -54,10 +64,12 @@ public class Proxy {
     mDatabaseController = new DatabaseController(this, context.getApplicationContext());
     mAppContext = context.getApplicationContext();
     PREFIX = PRESTO_PREFIX + context.getPackageName() + PRESTO_POSTFIX;
-    V = new HashSet<>(mDatabaseController.readScreenNames());
+    mScreenNames = new ScreenNameDictionary(mDatabaseController.readScreenNameIds());
+    V = mScreenNames;
     act2name = new HashMap<>();
-    mRandomizer = new Randomizer(mDatabaseController);
-    mDispatcher = new Dispatcher(mDatabaseController, mRandomizer);
+    mViewCounterCache = new ViewCounterCache(mDatabaseController, mScreenNames, mDatabaseController.actualViewsSoFar());
+    mRandomizer = new Randomizer(mDatabaseController, mViewCounterCache, mScreenNames);
+    mDispatcher = new Dispatcher(mDatabaseController, mRandomizer, mViewCounterCache, mScreenNames, mScheduler);
   }
 
   public static synchronized Proxy getInstance() {
@@ -72,6 +84,10 @@ public class Proxy {
     return mDispatcher;
   }
 
+  public ScreenNameDictionary getScreenNames() {
+    return mScreenNames;
+  }
+
   public static synchronized void init(Context context, GoogleAnalytics googleAnalytics) {
     if (instance != null) {
       return;
@@ -85,6 +101,8 @@ public class Proxy {
       V.addAll(instance.act2name.values());
     }
     printStatus();
+    // persist the ids given to the names added above
+    instance.mDispatcher.checkpoint();
     instance.mScheduler.schedule();
   }
 
@@ -92,7 +110,7 @@ public class Proxy {
     Log.i(TAG, "\tRandomized: " + instance.enableRandomization);
     if (instance.enableRandomization) Log.i(TAG, "\tEpsilon: " + EPSILON);
     Log.i(TAG, "\tAuto-tracking: " + instance.enableAutoTracking);
-    Log.i(TAG, "\tActual Views: " + instance.mDatabaseController.actualViewsSoFar());
+    Log.i(TAG, "\tActual Views: " + instance.mViewCounterCache.actualViewsSoFar());
     Log.i(TAG, "\tUniverse: #=" + V.size() + " " + V);
 //    if (experimentMode) {
 //      Log.i(TAG, "\tExperiment Mode: #users=" + simulateUserNum + ", scale=1/" + scaleEvents);
@@ -167,12 +185,36 @@ public class Proxy {
     return trackers.get(id);
   }
 
+  /**
+   * Logs the runtime metrics and stores them with the next checkpoint.
+   */
+  public static void dumpMetrics() {
+    if (instance == null) {
+      Log.e(TAG, "dumpMetrics: Not initialized.");
+      return;
+    }
+    Metrics.dump();
+    instance.mDispatcher.checkpoint();
+  }
+
+  /**
+   * Called in place of Tracker.send. Only in-memory work happens here; storing
+   * the hit, randomizing and sending run on the dispatch thread.
+   */
   public static void hit(final Map<String, String> map, final Tracker tracker) {
     if (instance == null) {
       Log.e(TAG, "hit: Not initialized.");
       return;
     }
-    Log.i(TAG, "Hit: " + map);
+    long start = Metrics.start();
+    try {
+      instance.ingest(map, tracker);
+    } finally {
+      Metrics.stop(Metrics.INGEST, start);
+    }
+  }
+
+  private void ingest(final Map<String, String> map, final Tracker tracker) {
     String type = map.get("&t");
     if (type.equals("screenview")) {
       String currentName = map.getOrDefault("&cd", tracker.get("&cd")); // content description
@@ -182,36 +224,19 @@ public class Proxy {
         return;
       }
 
-      instance.mDatabaseController.incrementActualViews(currentName);
-
-      if (!instance.enableRandomization) {
-        if (!V.contains(currentName)) {
-          V.add(currentName);
-          instance.mDatabaseController.storeNewScreenName(currentName);
-        }
-        tracker.send(map);
-        List<String> screenNames = instance.mDatabaseController.readScreenNames();
-        Log.i(TAG, "\trandomization disabled, names: #=" + screenNames.size() + " " + screenNames);
+      Metrics.increment(Metrics.HITS);
+      // the view is counted, and a new name added to V, once the hit is
+      // stored, spilled or sent; a dropped hit is not counted
+      if (!enableRandomization) {
+        mDispatcher.dispatch(new PendingHit(tracker, map, currentName, false));
         return;
       }
 
       Map<String, String> newMap = new HashMap<>(map);
       newMap.put("&cd", currentName);
-
-      if (!V.contains(currentName)) {
-        Log.i(TAG, "\tnew screen name, add " + currentName + " to universe");
-        instance.mDatabaseController.storeNewScreenName(currentName);
-        V.add(currentName);
-        newMap.put("presto_new_name", "true");
-      } else {
-        newMap.put("presto_new_name", "false");
-      }
-
-      instance.mDispatcher.dispatch(tracker, newMap);
-      instance.mScheduler.schedule();
+      mDispatcher.dispatch(new PendingHit(tracker, newMap, currentName, true));
     } else {
       tracker.send(map);
     }
   }
 }
-
@@ -0,0 +1,88 @@
+/*
+ * RandomizedResponseSampler.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+import java.util.Random;
+
+/**
+ * Randomized response draws for one epsilon. Reporting the actual name happens
+ * with probability e^(eps/2) / (1 + e^(eps/2)), every other name with probability
+ * 1 / (1 + e^(eps/2)). Instead of one draw per name, the gap to the next reported
+ * name is drawn from the geometric distribution, so the number of random draws is
+ * proportional to the number of reports rather than to the size of the universe.
+ */
+public class RandomizedResponseSampler {
+  private final double mEpsilon;
+  private final double mHitProbability;
+  private final double mNotHitProbability;
+  // ln(1 - NOT_HIT_PROBABILITY), the denominator of the inverse geometric CDF
+  private final double mLogNotHitComplement;
+  private final Random mRand;
+
+  public RandomizedResponseSampler(double epsilon, Random rand) {
+    double e = Math.exp(epsilon / 2);
+    this.mEpsilon = epsilon;
+    this.mHitProbability = e / (1 + e);
+    this.mNotHitProbability = 1 / (1 + e);
+    this.mLogNotHitComplement = Math.log1p(-mNotHitProbability);
+    this.mRand = rand;
+  }
+
+  public double getEpsilon() {
+    return mEpsilon;
+  }
+
+  public double getHitProbability() {
+    return mHitProbability;
+  }
+
+  public double getNotHitProbability() {
+    return mNotHitProbability;
+  }
+
+  /**
+   * @return whether the actual screen name is reported
+   */
+  public boolean reportActual() {
+    return mRand.nextDouble() < mHitProbability;
+  }
+
+  /**
+   * Runs independent trials from index {@code from} (inclusive) that each succeed
+   * with the not-hit probability and returns the index of the first success, or
+   * {@code end} if there is none before {@code end}.
+   */
+  public long nextReported(long from, long end) {
+    if (from >= end || mNotHitProbability <= 0) {
+      return end;
+    }
+    if (mNotHitProbability >= 1) {
+      return from;
+    }
+    // number of failures before the first success, via the inverse CDF
+    double skip = Math.floor(Math.log1p(-mRand.nextDouble()) / mLogNotHitComplement);
+    if (skip >= end - from) {
+      return end;
+    }
+    return from + (long) skip;
+  }
+
+  /**
+   * @return the number of successes in {@code trials} trials with the not-hit
+   * probability, drawn in time proportional to the result
+   */
+  public long notHitCount(long trials) {
+    long count = 0;
+    for (long i = nextReported(0, trials); i < trials; i = nextReported(i + 1, trials)) {
+      count++;
+    }
+    return count;
+  }
+}
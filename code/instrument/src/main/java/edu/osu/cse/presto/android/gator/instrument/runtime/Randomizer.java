@@ -12,9 +12,11 @@ package edu.osu.cse.presto.android.gator.instrument.runtime;
 import android.util.Log;
 import com.google.android.gms.analytics.Tracker;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -22,76 +24,126 @@ public class Randomizer {
   private final String TAG = "presto.ga.rt." + Randomizer.class.getSimpleName();
 
   private final DatabaseController mDatabaseController;
+  private final ViewCounterCache mCounterCache;
+  private final ScreenNameDictionary mScreenNames;
 
   private final Random mRand = new Random();
+  private RandomizedResponseSampler mSampler;
 
   private static int HIT_TIME_ADJUSTMENT_MILLISEC = 6000 * 2; // 6 sec
 
-  public Randomizer(DatabaseController dbController) {
+  public Randomizer(DatabaseController dbController, ViewCounterCache counterCache,
+                    ScreenNameDictionary screenNames) {
     this.mDatabaseController = dbController;
+    this.mCounterCache = counterCache;
+    this.mScreenNames = screenNames;
   }
 
 //  Map<Double, Map<String, Integer>> epsilon2map = new ConcurrentHashMap<>();
 
-  private void storeAndEnqueueHit(Queue<HitInfo> pendingRandomizedHitQueue, Tracker tracker,
-                                  String name, Map<String, String> actualHitMap, double epsilon, int user) {
-//    if (Proxy.experimentMode) {
-//      Map<String, Integer> name2num = epsilon2map.getOrDefault(epsilon, new ConcurrentHashMap<>());
-//      int num = name2num.getOrDefault(name, 0) % Proxy.scaleEvents;
-//      name2num.put(name, num + 1);
-//      epsilon2map.put(epsilon, name2num);
-//      if (num != 0) return;
-//    }
-
-    Log.i(TAG, "\trandomized hit: " + name);
-    mDatabaseController.incrementRandomViews(name, epsilon, user);
+  private HitInfo storeHit(Tracker tracker, long baseId, int nameId, Map<String, String> actualHitMap) {
+    String name = mScreenNames.name(nameId);
 
+    long hitTime = System.currentTimeMillis() + mRand.nextInt(HIT_TIME_ADJUSTMENT_MILLISEC) - 6000;
     Map<String, String> newMap = new HashMap<>(actualHitMap);
     newMap.put("&cd", Proxy.experimentMode ? Proxy.PREFIX + "_" + name : name);
-    newMap.put("&ht", String.valueOf(System.currentTimeMillis() + mRand.nextInt(HIT_TIME_ADJUSTMENT_MILLISEC) - 6000));
+    newMap.put("&ht", String.valueOf(hitTime));
 
-    long id = mDatabaseController.storeRandomizedHit(tracker, newMap);
-    HitInfo hit = new HitInfo(id, tracker, newMap);
-    pendingRandomizedHitQueue.add(hit);
-    Log.i(TAG, "\tEnqueue " + hit + " (q#=" + pendingRandomizedHitQueue.size() + ")");
+    long id = baseId == -1 ? mDatabaseController.storeRandomizedHit(tracker, newMap)
+            : mDatabaseController.storeRandomizedHit(baseId, nameId, hitTime);
+    return new HitInfo(id, tracker, newMap);
   }
 
-  private double NOT_HIT_PROBABILITY(double epsilon) {
-    return 1 / (1 + Math.exp(epsilon / 2));
+  /**
+   * Writes the randomized hits for the given name ids. Must run inside a transaction
+   * so that one actual hit costs one commit no matter how many names are reported;
+   * the random view counters are updated once per distinct name.
+   */
+  private List<HitInfo> storeHits(Tracker tracker, int[] nameIds, int count, Map<String, String> actualHitMap,
+                                  double epsilon, int user) {
+    List<HitInfo> hits = new ArrayList<>(count);
+    long baseId = Proxy.compactHitEncoding && count > 0
+            ? mDatabaseController.storeHitBase(tracker, actualHitMap) : -1;
+    for (int i = 0; i < count; i++) {
+//      if (Proxy.experimentMode) {
+//        Map<String, Integer> name2num = epsilon2map.getOrDefault(epsilon, new ConcurrentHashMap<>());
+//        int num = name2num.getOrDefault(name, 0) % Proxy.scaleEvents;
+//        name2num.put(name, num + 1);
+//        epsilon2map.put(epsilon, name2num);
+//        if (num != 0) continue;
+//      }
+      hits.add(storeHit(tracker, baseId, nameIds[i], actualHitMap));
+    }
+    // equal ids are adjacent once sorted, one counter update per run
+    int[] sorted = Arrays.copyOf(nameIds, count);
+    Arrays.sort(sorted);
+    for (int i = 0, j; i < count; i = j) {
+      for (j = i + 1; j < count && sorted[j] == sorted[i]; j++) {
+      }
+      mDatabaseController.incrementRandomViews(mScreenNames.name(sorted[i]), epsilon, user, j - i);
+    }
+    return hits;
   }
 
-  private double HIT_PROBABILITY(double epsilon) {
-    return Math.exp(epsilon / 2) / (1 + Math.exp(epsilon / 2));
+  private synchronized RandomizedResponseSampler sampler(double epsilon) {
+    if (mSampler == null || mSampler.getEpsilon() != epsilon) {
+      mSampler = new RandomizedResponseSampler(epsilon, mRand);
+    }
+    return mSampler;
   }
 
-  public void randomize(Queue<HitInfo> pendingRandomizedHitQueue, Tracker tracker, Map<String, String> actualHitMap) {
+  private static int[] append(int[] ids, int count, int id) {
+    if (count == ids.length) {
+      ids = Arrays.copyOf(ids, Math.max(16, ids.length * 2));
+    }
+    ids[count] = id;
+    return ids;
+  }
+
+  /**
+   * Applies randomized response to an actual hit and stores the reports to send.
+   * The caller is expected to hold a database transaction.
+   *
+   * @return the stored randomized hits, in the order they should be delivered
+   */
+  public List<HitInfo> randomize(Tracker tracker, Map<String, String> actualHitMap) {
     String currentName = actualHitMap.get("&cd");
-    long actualViewsSoFar = mDatabaseController.actualViewsSoFar();
-    Log.i(TAG, "screenview#" + actualViewsSoFar + ": " + currentName + " " + actualHitMap);
+    long actualViewsSoFar = mCounterCache.actualViewsSoFar();
 
 //    for (int user = 0; user < Proxy.simulateUserNum; user++) {
 //      double epsilon = Proxy.experimentMode ? 0.25 : Proxy.EPSILON;
 //      while (epsilon <= Proxy.EPSILON) {
     double epsilon = Proxy.EPSILON;
     int user = 0;
-    if (actualHitMap.get("presto_new_name").equals("true")) {
-      for (int j = 1; j < actualViewsSoFar; j++) {
-        if (mRand.nextDouble() <= NOT_HIT_PROBABILITY(epsilon)) {
-          storeAndEnqueueHit(pendingRandomizedHitQueue, tracker, currentName, actualHitMap, epsilon, user);
-        }
+    RandomizedResponseSampler sampler = sampler(epsilon);
+    int current = mScreenNames.id(currentName);
+    int[] ids = new int[16];
+    int count = 0;
+    if (actualHitMap.get("presto_new_name").equals("true") && actualViewsSoFar > 1 && current > 0) {
+      // the new name was not reported for any of the previous views
+      for (long j = sampler.notHitCount(actualViewsSoFar - 1); j > 0; j--) {
+        ids = append(ids, count++, current);
       }
     }
-    for (String name : Proxy.V) {
-      if (name.equals(currentName)) {
-        if (mRand.nextDouble() <= HIT_PROBABILITY(epsilon)) {
-          storeAndEnqueueHit(pendingRandomizedHitQueue, tracker, name, actualHitMap, epsilon, user);
-        }
-      } else if (mRand.nextDouble() <= NOT_HIT_PROBABILITY(epsilon)) {
-        storeAndEnqueueHit(pendingRandomizedHitQueue, tracker, name, actualHitMap, epsilon, user);
+    // ids are dense, so the universe is [1, maxId]; only the reported ids are
+    // visited, and ids left without a name are skipped
+    long end = mScreenNames.maxId() + 1L;
+    boolean reportCurrent = current > 0 && sampler.reportActual();
+    for (long i = sampler.nextReported(1, end); ; i = sampler.nextReported(i + 1, end)) {
+      if (reportCurrent && current < i) {
+        ids = append(ids, count++, current);
+        reportCurrent = false;
+      }
+      if (i >= end) {
+        break;
+      }
+      if (i != current && mScreenNames.name((int) i) != null) {
+        ids = append(ids, count++, (int) i);
       }
 //        }
 //        epsilon *= 2;
     }
 //    }
+    return storeHits(tracker, ids, count, actualHitMap, epsilon, user);
   }
 }
@@ -17,10 +17,15 @@ import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Build;
 import android.util.Log;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
 public class SQLiteOpenHelperWrapper extends SQLiteOpenHelper {
@@ -31,10 +36,16 @@ public class SQLiteOpenHelperWrapper extends SQLiteOpenHelper {
           "CREATE TABLE IF NOT EXISTS %s ( " +
                   "'%s' INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
                   "'%s' TEXT NOT NULL);", "hits", "hit_id", "hit_map");
+  // hit_map holds JSON text, or a HitCodec delta blob when base_id is set
   private static final String CREATE_RANDOM_HITS_TABLE_SQL = String.format(
           "CREATE TABLE IF NOT EXISTS %s ( " +
                   "'%s' INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
-                  "'%s' TEXT NOT NULL);", "random_hits", "hit_id", "hit_map");
+                  "'%s' TEXT NOT NULL, " +
+                  "'%s' INTEGER);", "random_hits", "hit_id", "hit_map", "base_id");
+  private static final String CREATE_HIT_BASES_TABLE_SQL = String.format(
+          "CREATE TABLE IF NOT EXISTS %s ( " +
+                  "'%s' INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                  "'%s' BLOB NOT NULL);", "hit_bases", "base_id", "hit_map");
   private static final String CREATE_STATS_TABLE_SQL = String.format(
           "CREATE TABLE IF NOT EXISTS %s ( " +
                   "'%s' TEXT NOT NULL," +
@@ -43,7 +54,23 @@ public class SQLiteOpenHelperWrapper extends SQLiteOpenHelper {
                   "'%s' TEXT NOT NULL);", "stats", "actual_histogram", "random_histogram", "total_actual_views", "total_random_views");
   private static final String CREATE_SCREEN_NAMES_TABLE_SQL = String.format(
           "CREATE TABLE IF NOT EXISTS %s ( " +
-                  "'%s' TEXT NOT NULL);", "screen_names", "name");
+                  "'%s' INTEGER PRIMARY KEY NOT NULL, " +
+                  "'%s' TEXT NOT NULL);", "screen_names", "name_id", "name");
+  // latest Metrics snapshot, one row per counter or histogram statistic
+  private static final String CREATE_METRICS_TABLE_SQL = String.format(
+          "CREATE TABLE IF NOT EXISTS %s ( " +
+                  "'%s' TEXT PRIMARY KEY NOT NULL, " +
+                  "'%s' INTEGER NOT NULL);", "metrics", "name", "value");
+  // one row per (kind, user, epsilon, name) counter; replaces the JSON blobs in stats
+  private static final String CREATE_HISTOGRAMS_TABLE_SQL = String.format(
+          "CREATE TABLE IF NOT EXISTS %s ( " +
+                  "'%s' INTEGER NOT NULL, " +
+                  "'%s' INTEGER NOT NULL, " +
+                  "'%s' REAL NOT NULL, " +
+                  "'%s' TEXT NOT NULL, " +
+                  "'%s' INTEGER NOT NULL, " +
+                  "PRIMARY KEY (%s, %s, %s, %s));", "histograms", "kind", "user", "epsilon", "name", "views",
+          "kind", "user", "epsilon", "name");
 
   public SQLiteOpenHelperWrapper(DatabaseController dbController, Context context, String name) {
     super(context, name, null, 1);
@@ -117,6 +144,18 @@ public class SQLiteOpenHelperWrapper extends SQLiteOpenHelper {
       }
     }
 
+    if (!this.checkIfExistTable(sQLiteDatabase, "histograms")) {
+      migrateLegacyHistograms(sQLiteDatabase);
+    } else {
+      Set<String> columnNames = SQLiteOpenHelperWrapper.getColumnNamesOfTable(sQLiteDatabase, "histograms");
+      String[] COLUMN_NAMES = new String[]{"kind", "user", "epsilon", "name", "views"};
+      for (int i = 0; i < 5; ++i) {
+        String name = COLUMN_NAMES[i];
+        if (columnNames.remove(name)) continue;
+        throw new SQLiteException("Database histograms is missing required column: " + name);
+      }
+    }
+
     if (!this.checkIfExistTable(sQLiteDatabase, "screen_names")) {
       sQLiteDatabase.execSQL(CREATE_SCREEN_NAMES_TABLE_SQL);
     } else {
@@ -127,6 +166,9 @@ public class SQLiteOpenHelperWrapper extends SQLiteOpenHelper {
         if (columnNames.remove(name)) continue;
         throw new SQLiteException("Database screen_names is missing required column: " + name);
       }
+      if (!columnNames.contains("name_id")) {
+        migrateScreenNames(sQLiteDatabase);
+      }
     }
 
     if (!this.checkIfExistTable(sQLiteDatabase, "hits")) {
@@ -140,6 +182,10 @@ public class SQLiteOpenHelperWrapper extends SQLiteOpenHelper {
         throw new SQLiteException("Database hits is missing required column: " + name);
       }
     }
+    // the hits of earlier processes; the ones of this process get larger ids
+    try (Cursor cursor = sQLiteDatabase.rawQuery("SELECT MAX(hit_id) FROM hits", null)) {
+      dbController.setJournalEnd(cursor.moveToFirst() ? cursor.getLong(0) : 0);
+    }
 
     if (!this.checkIfExistTable(sQLiteDatabase, "random_hits")) {
       sQLiteDatabase.execSQL(CREATE_RANDOM_HITS_TABLE_SQL);
@@ -151,7 +197,126 @@ public class SQLiteOpenHelperWrapper extends SQLiteOpenHelper {
         if (columnNames.remove(name)) continue;
         throw new SQLiteException("Database random_hits is missing required column: " + name);
       }
+      if (!columnNames.contains("base_id")) {
+        // created before compact hit encoding; existing rows keep their JSON
+        sQLiteDatabase.execSQL("ALTER TABLE random_hits ADD COLUMN base_id INTEGER");
+      }
+    }
+
+    if (!this.checkIfExistTable(sQLiteDatabase, "hit_bases")) {
+      sQLiteDatabase.execSQL(CREATE_HIT_BASES_TABLE_SQL);
+    } else {
+      Set<String> columnNames = SQLiteOpenHelperWrapper.getColumnNamesOfTable(sQLiteDatabase, "hit_bases");
+      String[] COLUMN_NAMES = new String[]{"base_id", "hit_map"};
+      for (int i = 0; i < 2; ++i) {
+        String name = COLUMN_NAMES[i];
+        if (columnNames.remove(name)) continue;
+        throw new SQLiteException("Database hit_bases is missing required column: " + name);
+      }
+    }
+
+    if (!this.checkIfExistTable(sQLiteDatabase, "metrics")) {
+      sQLiteDatabase.execSQL(CREATE_METRICS_TABLE_SQL);
+    }
+  }
+
+  /**
+   * Creates the histograms table and moves the counters kept as JSON in
+   * stats.actual_histogram/random_histogram by earlier versions into it, then
+   * empties the JSON columns. All of it commits together, so the table never
+   * exists without the migrated counters. JSON that cannot be read is left in
+   * stats.
+   */
+  private void migrateLegacyHistograms(SQLiteDatabase sQLiteDatabase) {
+    String actualText = null, randomText = null;
+    try (Cursor cursor = sQLiteDatabase.query("stats", new String[]{"actual_histogram", "random_histogram"},
+            null, null, null, null, null)) {
+      if (cursor.moveToFirst()) {
+        actualText = cursor.getString(0);
+        randomText = cursor.getString(1);
+      }
     }
+    List<ContentValues> rows = new ArrayList<>();
+    boolean parsed = false;
+    try {
+      if (actualText != null) {
+        JSONObject histogram = new JSONObject(actualText);
+        for (Iterator<String> it = histogram.keys(); it.hasNext(); ) {
+          String name = it.next();
+          rows.add(histogramRow(DatabaseController.ACTUAL_VIEWS, 0, 0, name, histogram.getLong(name)));
+        }
+      }
+      if (randomText != null) {
+        JSONObject user2hist = new JSONObject(randomText);
+        for (Iterator<String> uit = user2hist.keys(); uit.hasNext(); ) {
+          String userName = uit.next();
+          int user = Integer.parseInt(userName.substring("u-".length()));
+          JSONObject epsilon2hist = user2hist.getJSONObject(userName);
+          for (Iterator<String> eit = epsilon2hist.keys(); eit.hasNext(); ) {
+            String epsilonName = eit.next();
+            double epsilon = Double.parseDouble(epsilonName.substring("e-".length()));
+            JSONObject histogram = epsilon2hist.getJSONObject(epsilonName);
+            for (Iterator<String> it = histogram.keys(); it.hasNext(); ) {
+              String name = it.next();
+              rows.add(histogramRow(DatabaseController.RANDOM_VIEWS, user, epsilon, name, histogram.getLong(name)));
+            }
+          }
+        }
+      }
+      parsed = true;
+    } catch (JSONException | NumberFormatException e) {
+      Log.e(TAG, "Failed to migrate legacy histograms: " + e);
+      rows.clear();
+    }
+    sQLiteDatabase.beginTransaction();
+    try {
+      sQLiteDatabase.execSQL(CREATE_HISTOGRAMS_TABLE_SQL);
+      for (ContentValues row : rows) {
+        sQLiteDatabase.insert("histograms", null, row);
+      }
+      if (parsed) {
+        ContentValues cv = new ContentValues();
+        cv.put("actual_histogram", "{}");
+        cv.put("random_histogram", "{}");
+        sQLiteDatabase.update("stats", cv, null, null);
+      }
+      sQLiteDatabase.setTransactionSuccessful();
+    } finally {
+      sQLiteDatabase.endTransaction();
+    }
+    if (parsed) {
+      Log.i(TAG, "Migrated legacy histograms");
+    }
+  }
+
+  /**
+   * Gives the screen_names table of earlier versions an explicit id column. The
+   * ids are the old rowids, which compact randomized hits already refer to;
+   * duplicate names keep their first id.
+   */
+  private void migrateScreenNames(SQLiteDatabase sQLiteDatabase) {
+    sQLiteDatabase.beginTransaction();
+    try {
+      sQLiteDatabase.execSQL("ALTER TABLE screen_names RENAME TO screen_names_old");
+      sQLiteDatabase.execSQL(CREATE_SCREEN_NAMES_TABLE_SQL);
+      sQLiteDatabase.execSQL("INSERT INTO screen_names (name_id, name) " +
+              "SELECT MIN(rowid), name FROM screen_names_old GROUP BY name");
+      sQLiteDatabase.execSQL("DROP TABLE screen_names_old");
+      sQLiteDatabase.setTransactionSuccessful();
+      Log.i(TAG, "Migrated screen_names to explicit ids");
+    } finally {
+      sQLiteDatabase.endTransaction();
+    }
+  }
+
+  private static ContentValues histogramRow(int kind, int user, double epsilon, String name, long views) {
+    ContentValues cv = new ContentValues();
+    cv.put("kind", kind);
+    cv.put("user", user);
+    cv.put("epsilon", epsilon);
+    cv.put("name", name);
+    cv.put("views", views);
+    return cv;
   }
 
   @Override
@@ -36,7 +36,7 @@ public class Scheduler {
     mAlarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
   }
 
-  public void schedule() {
+  public synchronized void schedule() {
     cancel();
     hasScheduled = true;
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
@@ -71,7 +71,7 @@ public class Scheduler {
     return PendingIntent.getBroadcast(mAppContext, 0, intent, 0);
   }
 
-  public void cancel() {
+  public synchronized void cancel() {
     hasScheduled = false;
     mAlarmManager.cancel(getSendReceiver());
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
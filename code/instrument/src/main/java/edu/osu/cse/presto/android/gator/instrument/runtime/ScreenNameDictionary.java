@@ -0,0 +1,161 @@
+/*
+ * ScreenNameDictionary.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+import android.support.annotation.NonNull;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The universe of screen names, each with a dense integer id (1, 2, ...) that
+ * matches screen_names.name_id. It is the set behind Proxy.V, so the names the
+ * instrumentation adds at init get ids as well. Lookups are lock-free; only
+ * adding a name takes a lock. Ids of names added at runtime are queued until the
+ * dispatch thread persists them.
+ */
+public class ScreenNameDictionary extends AbstractSet<String> {
+  private final Map<String, Integer> mIds = new ConcurrentHashMap<>();
+  // indexed by id, slot 0 unused
+  private volatile String[] mNames = new String[16];
+  private volatile int mMaxId;
+  private final Queue<Integer> mUnpersisted = new ConcurrentLinkedQueue<>();
+
+  ScreenNameDictionary(Map<Integer, String> persisted) {
+    for (Map.Entry<Integer, String> entry : persisted.entrySet()) {
+      put(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private void put(int id, String name) {
+    String[] names = mNames;
+    if (id >= names.length) {
+      String[] grown = new String[Math.max(names.length * 2, id + 1)];
+      System.arraycopy(names, 0, grown, 0, names.length);
+      names = grown;
+    }
+    names[id] = name;
+    mNames = names;
+    mIds.put(name, id);
+    if (id > mMaxId) {
+      mMaxId = id;
+    }
+  }
+
+  /**
+   * @return the id of the name, or -1 if it is not in the universe
+   */
+  public int id(String name) {
+    Integer id = mIds.get(name);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * @return the name with the given id, or null
+   */
+  public String name(int id) {
+    String[] names = mNames;
+    return id > 0 && id < names.length ? names[id] : null;
+  }
+
+  /**
+   * Ids are in [1, maxId()]; an id without a name is a gap left in the database.
+   */
+  public int maxId() {
+    return mMaxId;
+  }
+
+  @Override
+  public boolean add(String name) {
+    if (mIds.containsKey(name)) {
+      return false;
+    }
+    synchronized (this) {
+      if (mIds.containsKey(name)) {
+        return false;
+      }
+      int id = mMaxId + 1;
+      put(id, name);
+      mUnpersisted.add(id);
+      return true;
+    }
+  }
+
+  /**
+   * @return the id of a name not written to screen_names yet, or null
+   */
+  Integer pollUnpersisted() {
+    return mUnpersisted.poll();
+  }
+
+  void markUnpersisted(int id) {
+    mUnpersisted.add(id);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return mIds.containsKey(o);
+  }
+
+  @Override
+  public int size() {
+    return mIds.size();
+  }
+
+  @NonNull
+  @Override
+  public Iterator<String> iterator() {
+    String[] names = mNames;
+    return new NameIterator(names, Math.min(mMaxId, names.length - 1));
+  }
+
+  /**
+   * Iterates over the names of a snapshot of the id table, in id order. A
+   * named class, so that the instrumenter can add it to the app.
+   */
+  public static class NameIterator implements Iterator<String> {
+    private final String[] names;
+    private final int maxId;
+    private int next;
+
+    NameIterator(String[] names, int maxId) {
+      this.names = names;
+      this.maxId = maxId;
+      this.next = advance(1);
+    }
+
+    private int advance(int id) {
+      while (id <= maxId && names[id] == null) {
+        id++;
+      }
+      return id;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next <= maxId;
+    }
+
+    @Override
+    public String next() {
+      if (next > maxId) {
+        throw new NoSuchElementException();
+      }
+      String name = names[next];
+      next = advance(next + 1);
+      return name;
+    }
+  }
+}
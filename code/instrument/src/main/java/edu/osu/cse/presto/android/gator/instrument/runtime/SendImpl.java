@@ -60,7 +60,10 @@ public class SendImpl<T extends Context> {
 
   private void dispatch(final Integer startId, final JobParameters jobParameters) {
     try {
-      Proxy.getInstance().getDispatcher().deliver();
+      Metrics.dump();
+      Dispatcher dispatcher = Proxy.getInstance().getDispatcher();
+      dispatcher.checkpoint();
+      dispatcher.deliver();
     } catch (Exception ignored) {
     }
     // stop service
@@ -0,0 +1,24 @@
+/*
+ * SpillJob.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+public class SpillJob implements Runnable {
+  private final Dispatcher dispatcher;
+
+  SpillJob(Dispatcher dispatcher) {
+    this.dispatcher = dispatcher;
+  }
+
+  @Override
+  public void run() {
+    Dispatcher.checkIfInWorkerThread();
+    dispatcher.drainSpilledHits();
+  }
+}
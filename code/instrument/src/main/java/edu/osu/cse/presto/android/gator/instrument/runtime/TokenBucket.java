@@ -0,0 +1,58 @@
+/*
+ * TokenBucket.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+/**
+ * Paces sends without sleeping: one token per send, refilled at a fixed rate up
+ * to a burst capacity. Callers stop when no token is left and retry later.
+ */
+public class TokenBucket {
+  private final long mCapacity;
+  private final long mNanosPerToken;
+  private long mTokens;
+  private long mLastRefill;
+
+  TokenBucket(long capacity, long millisPerToken) {
+    this.mCapacity = capacity;
+    this.mNanosPerToken = millisPerToken * 1000000L;
+    this.mTokens = capacity;
+    this.mLastRefill = System.nanoTime();
+  }
+
+  private void refill() {
+    long now = System.nanoTime();
+    long tokens = (now - mLastRefill) / mNanosPerToken;
+    if (tokens > 0) {
+      mTokens = Math.min(mCapacity, mTokens + tokens);
+      mLastRefill = mTokens == mCapacity ? now : mLastRefill + tokens * mNanosPerToken;
+    }
+  }
+
+  public synchronized boolean tryAcquire() {
+    refill();
+    if (mTokens > 0) {
+      mTokens--;
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns a token taken by {@link #tryAcquire()} that ended up unused.
+   */
+  public synchronized void refund() {
+    mTokens = Math.min(mCapacity, mTokens + 1);
+  }
+
+  public synchronized long available() {
+    refill();
+    return mTokens;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * ViewCounterCache.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory actual view counters. Screenviews only touch atomics; the counts are
+ * written behind to the stats/histograms tables by {@link #flush()} on the
+ * dispatch thread, either when enough views piled up or on a Scheduler tick.
+ */
+public class ViewCounterCache {
+  private final String TAG = "presto.ga.rt." + ViewCounterCache.class.getSimpleName();
+  private final long FLUSH_THRESHOLD = 20;
+  private final long FLUSH_INTERVAL_MILLIS = 30000; // 30 seconds
+
+  private final DatabaseController mDbController;
+  private final ScreenNameDictionary mScreenNames;
+  private final AtomicLong mActualViews;
+  private final AtomicLong mUnflushedViews = new AtomicLong();
+  // indexed by screen name id; grown by copying the references, so no count is lost
+  private volatile AtomicLong[] mUnflushedHistogram = new AtomicLong[16];
+  private final AtomicBoolean mFlushRequested = new AtomicBoolean();
+  private final Timer mTimer = new Timer();
+
+  ViewCounterCache(DatabaseController dbController, ScreenNameDictionary screenNames, long actualViewsSoFar) {
+    this.mDbController = dbController;
+    this.mScreenNames = screenNames;
+    this.mActualViews = new AtomicLong(actualViewsSoFar);
+    this.mTimer.start();
+  }
+
+  /**
+   * @return the number of actual views including this one
+   */
+  public long incrementActualViews(int screenNameId) {
+    AtomicLong[] histogram = mUnflushedHistogram;
+    AtomicLong views = screenNameId < histogram.length ? histogram[screenNameId] : null;
+    if (views == null) {
+      views = counter(screenNameId);
+    }
+    views.incrementAndGet();
+    mUnflushedViews.incrementAndGet();
+    return mActualViews.incrementAndGet();
+  }
+
+  private synchronized AtomicLong counter(int screenNameId) {
+    AtomicLong[] histogram = mUnflushedHistogram;
+    if (screenNameId >= histogram.length) {
+      AtomicLong[] grown = new AtomicLong[Math.max(histogram.length * 2, screenNameId + 1)];
+      System.arraycopy(histogram, 0, grown, 0, histogram.length);
+      histogram = grown;
+    }
+    if (histogram[screenNameId] == null) {
+      histogram[screenNameId] = new AtomicLong();
+    }
+    mUnflushedHistogram = histogram;
+    return histogram[screenNameId];
+  }
+
+  public long actualViewsSoFar() {
+    return mActualViews.get();
+  }
+
+  /**
+   * Returns true at most once per pending flush, when the unflushed views reached
+   * the threshold or the last flush is older than the flush interval.
+   */
+  boolean shouldFlush() {
+    long unflushed = mUnflushedViews.get();
+    if (unflushed == 0) {
+      return false;
+    }
+    if (unflushed < FLUSH_THRESHOLD && !mTimer.checkTimeLimit(FLUSH_INTERVAL_MILLIS)) {
+      return false;
+    }
+    return mFlushRequested.compareAndSet(false, true);
+  }
+
+  /**
+   * Persists the views counted since the last flush in one transaction. On
+   * failure the counts are kept in memory and retried by the next flush.
+   */
+  synchronized void flush() {
+    Dispatcher.checkIfInWorkerThread();
+    mFlushRequested.set(false);
+    long views = mUnflushedViews.getAndSet(0);
+    if (views == 0) {
+      return;
+    }
+    Map<Integer, Long> histogram = new HashMap<>();
+    AtomicLong[] counters = mUnflushedHistogram;
+    for (int id = 0; id < counters.length; id++) {
+      long n = counters[id] == null ? 0 : counters[id].getAndSet(0);
+      if (n > 0) {
+        histogram.put(id, n);
+      }
+    }
+    try {
+      mDbController.beginTransaction();
+      try {
+        mDbController.incrementTotalActualViews(views);
+        for (Map.Entry<Integer, Long> entry : histogram.entrySet()) {
+          mDbController.incrementActualViews(mScreenNames.name(entry.getKey()), entry.getValue());
+        }
+        mDbController.setTransactionSuccessful();
+      } finally {
+        mDbController.endTransaction();
+      }
+    } catch (SQLiteException sQLiteException) {
+      Log.e(TAG, "Failed to flush actual views, will retry " + sQLiteException);
+      mUnflushedViews.addAndGet(views);
+      for (Map.Entry<Integer, Long> entry : histogram.entrySet()) {
+        counter(entry.getKey()).addAndGet(entry.getValue());
+      }
+      return;
+    }
+    mTimer.start();
+    Log.d(TAG, "Flushed " + views + " actual views");
+  }
+}
@@ -52,6 +52,9 @@ public class TransformationUtil {
     throw new RuntimeException("Error reading data universe.");
   }
 
+  // screen_names holds the names given to Proxy.V at init as well as the ones
+  // met at runtime, as randomized hits refer to both by id; the former are in
+  // the data universe already
   private Set<String> readRuntimeDataUniverse() {
     Set<String> ret = Sets.newHashSet();
     if (Configs.runtimeDb != null && !Configs.runtimeDb.equals("<no-db>")) {
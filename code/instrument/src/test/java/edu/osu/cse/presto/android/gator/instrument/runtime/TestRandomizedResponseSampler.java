@@ -0,0 +1,155 @@
+/*
+ * TestRandomizedResponseSampler.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.instrument.runtime;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the geometric-skip sampler is statistically equivalent to the
+ * original one-draw-per-name loop of Randomizer.
+ */
+public class TestRandomizedResponseSampler {
+  private static final int ROUNDS = 20000;
+  private static final double[] EPSILONS = {0.25, 0.5, 1, 2, 4, 8};
+
+  private static double notHitProbability(double epsilon) {
+    return 1 / (1 + Math.exp(epsilon / 2));
+  }
+
+  // the loop Randomizer used before the sampler
+  private static boolean[] legacyReports(int n, double epsilon, Random rand) {
+    boolean[] reports = new boolean[n];
+    for (int i = 0; i < n; i++) {
+      reports[i] = rand.nextDouble() <= notHitProbability(epsilon);
+    }
+    return reports;
+  }
+
+  private static boolean[] sampledReports(int n, RandomizedResponseSampler sampler) {
+    boolean[] reports = new boolean[n];
+    for (long i = sampler.nextReported(0, n); i < n; i = sampler.nextReported(i + 1, n)) {
+      reports[(int) i] = true;
+    }
+    return reports;
+  }
+
+  @Test
+  public void testPerNameFrequencies() {
+    int n = 40;
+    for (double epsilon : EPSILONS) {
+      Random rand = new Random(42);
+      RandomizedResponseSampler sampler = new RandomizedResponseSampler(epsilon, new Random(7));
+      long[] legacy = new long[n];
+      long[] sampled = new long[n];
+      for (int r = 0; r < ROUNDS; r++) {
+        boolean[] l = legacyReports(n, epsilon, rand);
+        boolean[] s = sampledReports(n, sampler);
+        for (int i = 0; i < n; i++) {
+          legacy[i] += l[i] ? 1 : 0;
+          sampled[i] += s[i] ? 1 : 0;
+        }
+      }
+      double q = notHitProbability(epsilon);
+      // difference of two binomial(ROUNDS, q) counts
+      double sigma = Math.sqrt(2 * ROUNDS * q * (1 - q));
+      double chiSquare = 0;
+      for (int i = 0; i < n; i++) {
+        assertTrue("epsilon=" + epsilon + " name#" + i + " legacy=" + legacy[i] + " sampled=" + sampled[i],
+                Math.abs(legacy[i] - sampled[i]) < 5 * sigma);
+        double expected = ROUNDS * q;
+        chiSquare += (sampled[i] - expected) * (sampled[i] - expected) / (expected * (1 - q));
+      }
+      // n degrees of freedom: mean n, standard deviation sqrt(2n)
+      assertTrue("epsilon=" + epsilon + " chi2=" + chiSquare, chiSquare < n + 5 * Math.sqrt(2 * n));
+    }
+  }
+
+  @Test
+  public void testReportsAreIndependent() {
+    // adjacent names must not be correlated by the skipping
+    int n = 10;
+    double epsilon = 1;
+    double q = notHitProbability(epsilon);
+    RandomizedResponseSampler sampler = new RandomizedResponseSampler(epsilon, new Random(11));
+    long both = 0;
+    for (int r = 0; r < ROUNDS; r++) {
+      boolean[] s = sampledReports(n, sampler);
+      for (int i = 0; i + 1 < n; i++) {
+        both += s[i] && s[i + 1] ? 1 : 0;
+      }
+    }
+    long pairs = (long) ROUNDS * (n - 1);
+    double expected = pairs * q * q;
+    assertTrue("pairs=" + both + " expected=" + expected,
+            Math.abs(both - expected) < 5 * Math.sqrt(pairs * q * q * (1 - q * q)));
+  }
+
+  @Test
+  public void testNotHitCountMatchesLoop() {
+    int trials = 120;
+    for (double epsilon : EPSILONS) {
+      Random rand = new Random(3);
+      RandomizedResponseSampler sampler = new RandomizedResponseSampler(epsilon, new Random(5));
+      double legacySum = 0, sampledSum = 0, sampledSquares = 0;
+      for (int r = 0; r < ROUNDS; r++) {
+        long legacy = 0;
+        for (int j = 0; j < trials; j++) {
+          if (rand.nextDouble() <= notHitProbability(epsilon)) {
+            legacy++;
+          }
+        }
+        long sampled = sampler.notHitCount(trials);
+        assertTrue(sampled >= 0 && sampled <= trials);
+        legacySum += legacy;
+        sampledSum += sampled;
+        sampledSquares += sampled * sampled;
+      }
+      double q = notHitProbability(epsilon);
+      double mean = trials * q;
+      double variance = trials * q * (1 - q);
+      double sampledMean = sampledSum / ROUNDS;
+      double standardError = Math.sqrt(variance / ROUNDS);
+      assertEquals("epsilon=" + epsilon, mean, sampledMean, 5 * standardError);
+      assertEquals("epsilon=" + epsilon, legacySum / ROUNDS, sampledMean, 5 * Math.sqrt(2) * standardError);
+      double sampledVariance = sampledSquares / ROUNDS - sampledMean * sampledMean;
+      assertEquals("epsilon=" + epsilon, variance, sampledVariance, 0.05 * variance);
+    }
+  }
+
+  @Test
+  public void testReportActual() {
+    double epsilon = 2;
+    RandomizedResponseSampler sampler = new RandomizedResponseSampler(epsilon, new Random(13));
+    long reported = 0;
+    for (int r = 0; r < ROUNDS; r++) {
+      reported += sampler.reportActual() ? 1 : 0;
+    }
+    double p = sampler.getHitProbability();
+    assertEquals(1 - notHitProbability(epsilon), p, 1e-12);
+    assertEquals(ROUNDS * p, reported, 5 * Math.sqrt(ROUNDS * p * (1 - p)));
+  }
+
+  @Test
+  public void testBounds() {
+    RandomizedResponseSampler sampler = new RandomizedResponseSampler(1, new Random(17));
+    assertEquals(5, sampler.nextReported(5, 5));
+    assertEquals(3, sampler.nextReported(9, 3));
+    assertEquals(0, sampler.notHitCount(0));
+    for (int r = 0; r < ROUNDS; r++) {
+      long i = sampler.nextReported(2, 6);
+      assertTrue(i >= 2 && i <= 6);
+    }
+  }
+}
@@ -1,14 +1,23 @@
 import os
+import shutil
 from subprocess import call, DEVNULL
 
-from pygator.utils import make_temp_dir
+from pygator.utils import make_temp_dir, sha256
 
 JAR = os.path.join(os.path.realpath(os.path.dirname(__file__)),
                    '..', 'tools', 'apktool_2.3.3.jar')
 
 
-def decode_res_from_apk(apk_path):
-    return decode_apk(apk_path, ['--no-src'])
+def decode_res_from_apk(apk_path, cache_dir=None):
+    if cache_dir is None:
+        return decode_apk(apk_path, ['--no-src'])
+    # reuse the output of an earlier run on the same APK
+    out_dir = os.path.join(cache_dir, sha256(apk_path), 'apktool')
+    if not os.path.exists(os.path.join(out_dir, 'apktool.yml')):
+        tmp_dir = decode_apk(apk_path, ['--no-src'])
+        shutil.rmtree(out_dir, ignore_errors=True)
+        shutil.copytree(tmp_dir, out_dir)
+    return out_dir
 
 
 def decode_src_from_apk(apk_path):
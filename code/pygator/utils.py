@@ -1,3 +1,4 @@
+import hashlib
 import shutil
 import tempfile
 
@@ -17,6 +18,14 @@ def remove_temp_dirs():
         shutil.rmtree(directory, ignore_errors=True)
 
 
+def sha256(path):
+    digest = hashlib.sha256()
+    with open(path, 'rb') as fd:
+        for chunk in iter(lambda: fd.read(1 << 16), b''):
+            digest.update(chunk)
+    return digest.hexdigest()
+
+
 def extract_number(cur_line):
     firstCom = cur_line.find("'")
     secondCom = cur_line.find("'", firstCom + 1)
@@ -1,4 +1,5 @@
 import concurrent.futures
+import json
 import os
 import re
 import sqlite3
@@ -116,6 +117,8 @@ def get_current_app(device):
         out = e.output
 
 
+# screen_names holds every name of the universe V with its id: the ones added
+# when the runtime is initialized, and the ones met at runtime.
 def read_screen_names_from_db(db_path):
     conn = sqlite3.connect(db_path)
     c = conn.cursor()
@@ -147,11 +150,21 @@ def read_actual_hits_from_db(db_path, limit=None):
     return ret
 
 
+def has_histograms_table(c):
+    c.execute("SELECT name FROM sqlite_master WHERE type='table' "
+              "AND name='histograms'")
+    return c.fetchone() is not None
+
+
 def read_actual_histogram_from_db(db_path):
     conn = sqlite3.connect(db_path)
     c = conn.cursor()
-    c.execute('SELECT actual_histogram FROM stats')
-    ret = c.fetchone()
+    if has_histograms_table(c):
+        c.execute('SELECT name, views FROM histograms WHERE kind = 0')
+        ret = (json.dumps(dict(c.fetchall())), )
+    else:
+        c.execute('SELECT actual_histogram FROM stats')
+        ret = c.fetchone()
     conn.close()
     return ret
 
@@ -159,8 +172,16 @@ def read_actual_histogram_from_db(db_path):
 def read_random_hit_num_from_db(db_path):
     conn = sqlite3.connect(db_path)
     c = conn.cursor()
-    c.execute('SELECT total_random_views FROM stats')
-    ret = c.fetchone()
+    if has_histograms_table(c):
+        c.execute('SELECT user, epsilon, SUM(views) FROM histograms '
+                  'WHERE kind = 1 GROUP BY user, epsilon')
+        user2views = {}
+        for user, epsilon, views in c.fetchall():
+            user2views.setdefault('u-%d' % user, {})['e-%s' % epsilon] = views
+        ret = (json.dumps(user2views), )
+    else:
+        c.execute('SELECT total_random_views FROM stats')
+        ret = c.fetchone()
     conn.close()
     return ret
 
@@ -168,8 +189,17 @@ def read_random_hit_num_from_db(db_path):
 def read_random_histogram_from_db(db_path):
     conn = sqlite3.connect(db_path)
     c = conn.cursor()
-    c.execute('SELECT random_histogram FROM stats')
-    ret = c.fetchone()
+    if has_histograms_table(c):
+        c.execute('SELECT user, epsilon, name, views FROM histograms '
+                  'WHERE kind = 1')
+        user2hist = {}
+        for user, epsilon, name, views in c.fetchall():
+            user2hist.setdefault('u-%d' % user, {}).setdefault(
+                'e-%s' % epsilon, {})[name] = views
+        ret = (json.dumps(user2hist), )
+    else:
+        c.execute('SELECT random_histogram FROM stats')
+        ret = c.fetchone()
     conn.close()
     return ret
 
@@ -503,6 +533,7 @@ class Gorilla:
         time.sleep(30)
 
     def read_screen_names(self):
+        # the whole universe V, see read_screen_names_from_db
         for device in self.devices:
             db_path = '%s/%s_%s.db' % (self.db_dir, self.pkg_name, device)
             conn = sqlite3.connect(db_path)
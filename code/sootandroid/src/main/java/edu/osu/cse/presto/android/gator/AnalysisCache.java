@@ -0,0 +1,346 @@
+/*
+ * AnalysisCache.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import edu.osu.cse.presto.android.gator.gui.clients.GADemoClient;
+import soot.toolkits.scalar.Pair;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk cache of analysis artifacts, enabled with -cacheDir. Entries live
+ * in cacheDir/SHA-256 of the APK/ and are named after a hash of the options
+ * they depend on, so a re-run on the same APK reuses what it can:
+ * <ul>
+ * <li>the resource id tables read by the XML parser (name/value pairs in
+ * feeding order, in a small binary format), which depend on the APK and the
+ * platform only;</li>
+ * <li>the Universe XML produced by the GA client, which depends on the whole
+ * command line. On a hit, Main writes it out without starting Soot, which is
+ * only done when the GA client is the only client.</li>
+ * </ul>
+ * Entries that depend on the platform only, such as the platform snapshot,
+ * live in cacheDir/platform/ and are shared by all APKs.
+ * <p>
+ * Soot classes and flowgraph nodes cannot be rebuilt without loading the dex
+ * into Soot, so the hierarchy and the flowgraph are not cached. The jar the
+ * analysis runs from is part of every key, so rebuilding GATOR invalidates
+ * the cache. Apart from the platform entries, only APK projects are cached.
+ */
+public class AnalysisCache {
+  static final String TAG = AnalysisCache.class.getSimpleName();
+
+  private static final String GA_CLIENT = GADemoClient.class.getSimpleName();
+
+  private static final int MAGIC = 0x47415452;
+  private static final int VERSION = 1;
+
+  private static AnalysisCache theInstance;
+
+  // options that do not change the Universe XML, with their number of values
+  private static final Map<String, Integer> OUTPUT_ONLY_OPTIONS = Maps.newHashMap();
+
+  static {
+    OUTPUT_ONLY_OPTIONS.put("-project", 1);
+    OUTPUT_ONLY_OPTIONS.put("-gaXmlOutput", 1);
+    OUTPUT_ONLY_OPTIONS.put("-cacheDir", 1);
+    OUTPUT_ONLY_OPTIONS.put("-noExit", 0);
+    OUTPUT_ONLY_OPTIONS.put("-verbose", 0);
+  }
+
+  // null if caching is disabled
+  private final File apkDir;
+  // the command line without the output-only options
+  private final List<String> arguments = Lists.newArrayList();
+
+  private AnalysisCache() {
+    File dir = null;
+    if (!Configs.cacheDir.isEmpty() && Configs.apkMode) {
+      String digest = sha256(new File(Configs.project));
+      if (digest != null) {
+        dir = new File(Configs.cacheDir, digest);
+        Logger.verb(TAG, "APK digest " + digest);
+      }
+    }
+    apkDir = dir;
+  }
+
+  public static synchronized AnalysisCache v() {
+    if (theInstance == null) {
+      theInstance = new AnalysisCache();
+    }
+    return theInstance;
+  }
+
+  public boolean isEnabled() {
+    return apkDir != null;
+  }
+
+  /**
+   * Sets the command line of this run, which is part of the key of the
+   * analysis result.
+   */
+  public void setArguments(String[] args) {
+    arguments.clear();
+    for (int i = 0; i < args.length; i++) {
+      Integer numValues = OUTPUT_ONLY_OPTIONS.get(args[i]);
+      if (numValues != null) {
+        i += numValues;
+      } else {
+        arguments.add(args[i]);
+      }
+    }
+  }
+
+  // --- resource ids
+
+  /**
+   * Replays the cached (name, value) pairs of every section, in the order
+   * they were recorded.
+   *
+   * @return the sections, or null on a miss
+   */
+  public Map<String, List<Pair<String, Integer>>> loadResourceIds() {
+    File file = resourceFile();
+    if (file == null || !file.exists()) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      int numSections = in.readInt();
+      Map<String, List<Pair<String, Integer>>> sections = Maps.newLinkedHashMap();
+      for (int i = 0; i < numSections; i++) {
+        String name = in.readUTF();
+        int size = in.readInt();
+        List<Pair<String, Integer>> pairs = Lists.newArrayListWithCapacity(size);
+        for (int k = 0; k < size; k++) {
+          String key = in.readUTF();
+          pairs.add(new Pair<>(key, in.readInt()));
+        }
+        sections.put(name, pairs);
+      }
+      Logger.info(TAG, "Resource ids loaded from " + file);
+      return sections;
+    } catch (IOException e) {
+      Logger.warn(TAG, "Cannot read " + file + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  public void storeResourceIds(Map<String, List<Pair<String, Integer>>> sections) {
+    File file = resourceFile();
+    if (file == null) {
+      return;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(sections.size());
+      for (Map.Entry<String, List<Pair<String, Integer>>> section : sections.entrySet()) {
+        out.writeUTF(section.getKey());
+        out.writeInt(section.getValue().size());
+        for (Pair<String, Integer> pair : section.getValue()) {
+          out.writeUTF(pair.getO1());
+          out.writeInt(pair.getO2());
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    write(file, bytes.toByteArray());
+  }
+
+  private File resourceFile() {
+    if (apkDir == null) {
+      return null;
+    }
+    return new File(apkDir, "res-" + hash(Lists.newArrayList(
+            Configs.apiLevel, Configs.android, Configs.internalConstFile, codeStamp())) + ".bin");
+  }
+
+  // --- analysis result
+
+  /**
+   * Writes a cached Universe XML to -gaXmlOutput, or logs it, the way the GA
+   * client would.
+   *
+   * @return false on a miss
+   */
+  public boolean restoreResult() {
+    File file = resultFile();
+    if (file == null || !file.exists()) {
+      return false;
+    }
+    try {
+      byte[] xml = Files.readAllBytes(file.toPath());
+      if (Configs.gaScreenNameXmlOutputFile.isEmpty()) {
+        Logger.info("Builder", new String(xml, StandardCharsets.UTF_8));
+      } else {
+        Files.write(new File(Configs.gaScreenNameXmlOutputFile).toPath(), xml);
+        Logger.info("Builder", "Universe XML is saved to " + Configs.gaScreenNameXmlOutputFile);
+      }
+    } catch (IOException e) {
+      Logger.warn(TAG, "Cannot restore " + file + ": " + e.getMessage());
+      return false;
+    }
+    Logger.info(TAG, "Analysis result restored from " + file);
+    return true;
+  }
+
+  public void storeResult(String xml) {
+    File file = resultFile();
+    if (file != null) {
+      write(file, xml.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private File resultFile() {
+    // only the output of the GA client can be replayed, so it has to be the
+    // only client, and there is no flowgraph dump either
+    if (apkDir == null || !Configs.guiAnalysis || !Configs.gaEnabled || !Configs.flowgraphOutput.isEmpty()) {
+      return null;
+    }
+    if (!Configs.clients.equals(Collections.singleton(GA_CLIENT))) {
+      Logger.verb(TAG, "Not caching the analysis result, clients are " + Configs.clients);
+      return null;
+    }
+    // the command line covers every option; the files the analysis reads are
+    // stamped, as they may change under the same path
+    List<String> key = Lists.newArrayList(arguments);
+    key.addAll(Lists.newArrayList(Configs.apiLevel, stamp(Configs.android), stamp(Configs.internalConstFile),
+            codeStamp(), stamp(Configs.listenerSpecFile), stamp(Configs.wtgSpecFile)));
+    // layouts add views, and with them screen names, to the result
+    key.add("readLayouts=" + Configs.readLayouts);
+    key.add(stamp(Configs.platformSnapshot));
+    return new File(apkDir, "universe-" + hash(key) + ".xml");
+  }
+
+  // --- platform
+
+  /**
+   * Reads an entry cached for the platform (API level and android.jar) of
+   * this run by {@link #storePlatform}. Unlike the other entries, these do
+   * not depend on the APK, and are also used for non-APK projects.
+   *
+   * @return the bytes, or null on a miss
+   */
+  public byte[] loadPlatform(String name) {
+    File file = platformFile(name);
+    if (file == null || !file.exists()) {
+      return null;
+    }
+    try {
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      Logger.verb(TAG, "Platform " + name + " loaded from " + file);
+      return bytes;
+    } catch (IOException e) {
+      Logger.warn(TAG, "Cannot read " + file + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  public void storePlatform(String name, byte[] bytes) {
+    File file = platformFile(name);
+    if (file != null) {
+      write(file, bytes);
+    }
+  }
+
+  private File platformFile(String name) {
+    if (Configs.cacheDir.isEmpty()) {
+      return null;
+    }
+    return new File(new File(Configs.cacheDir, "platform"), name + "-" + hash(Lists.newArrayList(
+            Configs.apiLevel, stamp(Configs.android), Configs.sysProj, stamp(Configs.internalConstFile),
+            codeStamp())) + ".bin");
+  }
+
+  // --- helpers
+
+  private static void write(File file, byte[] bytes) {
+    try {
+      Files.createDirectories(file.getParentFile().toPath());
+      File tmp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+      Files.write(tmp.toPath(), bytes);
+      Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+              StandardCopyOption.ATOMIC_MOVE);
+      Logger.verb(TAG, "Saved " + file);
+    } catch (IOException e) {
+      Logger.warn(TAG, "Cannot write " + file + ": " + e.getMessage());
+    }
+  }
+
+  // path, size and modification time of a file the analysis reads
+  private static String stamp(String path) {
+    if (path == null || path.isEmpty()) {
+      return "";
+    }
+    File f = new File(path);
+    return f.getAbsolutePath() + ":" + f.length() + ":" + f.lastModified();
+  }
+
+  private static String codeStamp() {
+    URL location = AnalysisCache.class.getProtectionDomain().getCodeSource().getLocation();
+    return stamp(location.getPath());
+  }
+
+  private static String hash(List<String> parts) {
+    MessageDigest md = newSha256();
+    for (String part : parts) {
+      md.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+      md.update((byte) 0);
+    }
+    return hex(md.digest()).substring(0, 16);
+  }
+
+  static String sha256(File file) {
+    MessageDigest md = newSha256();
+    byte[] buffer = new byte[1 << 16];
+    try (InputStream in = new FileInputStream(file)) {
+      int n;
+      while ((n = in.read(buffer)) > 0) {
+        md.update(buffer, 0, n);
+      }
+    } catch (IOException e) {
+      Logger.warn(TAG, "Cannot read " + file + ", caching disabled: " + e.getMessage());
+      return null;
+    }
+    return hex(md.digest());
+  }
+
+  private static MessageDigest newSha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static String hex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b));
+    }
+    return sb.toString();
+  }
+}
@@ -39,7 +39,10 @@ public class AnalysisEntrypoint {
     }
 
     if (Configs.instrument) {
-      System.exit(0);
+      if (Configs.exitAfterAnalysis) {
+        System.exit(0);
+      }
+      return;
     }
 
     // Analysis
@@ -51,7 +54,9 @@ public class AnalysisEntrypoint {
     }
     Date endTime = new Date();
     System.out.println("Soot stopped on " + endTime);
-    System.exit(0);
+    if (Configs.exitAfterAnalysis) {
+      System.exit(0);
+    }
   }
 
   void validate() {
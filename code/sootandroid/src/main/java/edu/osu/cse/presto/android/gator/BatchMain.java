@@ -0,0 +1,175 @@
+/*
+ * BatchMain.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator;
+
+import com.google.common.collect.Lists;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Analyzes many apps in one JVM. Usage:
+ * <pre>
+ *   BatchMain -apps LIST [common Main options]
+ * </pre>
+ * Every non-empty line of LIST holds the Main options of one app, separated
+ * by tabs (e.g. -project, -apktoolDir, -apiLevel, -android, -benchmarkName,
+ * -gaXmlOutput), so that paths may contain spaces; the common options are put
+ * in front of them. Lines starting with '#' are skipped.
+ * <p>
+ * Each app runs Main with -noExit, so the analysis returns instead of
+ * exiting, and an app that fails is reported and skipped.
+ * <p>
+ * Apps are not analyzed one after the other in the same Scene after a
+ * G.reset(). Soot and GATOR keep their state in static fields, some of them
+ * final (SootMethods looked up once from the Scene, singletons such as
+ * Hierarchy.v() and GUIAnalysis.v(), soot.G itself), and a reset would have to
+ * know all of them. Each app instead runs Main in a fresh class loader for the
+ * soot and GATOR packages. So the JVM, the JDK and the other libraries stay
+ * loaded and warm, but the soot and GATOR classes are loaded and compiled
+ * again for each app, and so is the Scene with the platform classes: the
+ * platform classes belong to one soot.G and cannot be shared. What is reused
+ * across apps is on disk, the platform snapshot and the analysis cache (see
+ * PlatformSnapshot and AnalysisCache).
+ */
+public class BatchMain {
+  static final String TAG = BatchMain.class.getSimpleName();
+
+  // packages with per-analysis static state
+  private static final String[] ISOLATED = {
+          "edu.osu.cse.presto.android.gator.", "soot.", "heros.", "jasmin.", "polyglot.",
+  };
+
+  public static void main(String[] args) throws IOException {
+    String appsFile = null;
+    List<String> common = Lists.newArrayList();
+    for (int i = 0; i < args.length; i++) {
+      if ("-apps".equals(args[i])) {
+        appsFile = args[++i];
+      } else {
+        common.add(args[i]);
+      }
+    }
+    if (appsFile == null) {
+      throw new RuntimeException("Usage: BatchMain -apps LIST [common Main options]");
+    }
+
+    URL[] classpath = classpath();
+    int numApps = 0;
+    List<String> failed = Lists.newArrayList();
+    for (String line : Files.readAllLines(new File(appsFile).toPath(), StandardCharsets.UTF_8)) {
+      if (line.trim().isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      numApps++;
+      List<String> appArgs = Lists.newArrayList(common);
+      appArgs.add("-noExit");
+      for (String arg : line.split("\t")) {
+        if (!arg.isEmpty()) {
+          appArgs.add(arg);
+        }
+      }
+      long startTime = System.nanoTime();
+      Logger.info(TAG, "App " + numApps + ": " + line);
+      try {
+        run(classpath, appArgs.toArray(new String[0]));
+        Logger.info(TAG, "App " + numApps + " done in " + ((System.nanoTime() - startTime) * 1.0e-09) + " sec");
+      } catch (Throwable t) {
+        t.printStackTrace();
+        Logger.warn(TAG, "App " + numApps + " failed: " + t);
+        failed.add(line);
+      }
+    }
+    Logger.info(TAG, "Analyzed " + (numApps - failed.size()) + " of " + numApps + " apps");
+    for (String line : failed) {
+      Logger.warn(TAG, "Failed: " + line);
+    }
+    System.exit(failed.isEmpty() ? 0 : 1);
+  }
+
+  /**
+   * Runs Main on a thread of its own, so that thread locals set during the
+   * analysis go away with the thread and do not keep the class loader, and
+   * with it the whole Scene, alive.
+   */
+  private static void run(final URL[] classpath, final String[] args) throws Throwable {
+    final Throwable[] failure = new Throwable[1];
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try (IsolatingClassLoader loader = new IsolatingClassLoader(classpath, BatchMain.class.getClassLoader())) {
+          Method main = loader.loadClass(Main.class.getName()).getMethod("main", String[].class);
+          main.invoke(null, (Object) args);
+        } catch (InvocationTargetException e) {
+          failure[0] = e.getCause();
+        } catch (Throwable t) {
+          failure[0] = t;
+        }
+      }
+    }, "gator-app");
+    thread.start();
+    thread.join();
+    if (failure[0] != null) {
+      throw failure[0];
+    }
+  }
+
+  private static URL[] classpath() throws MalformedURLException {
+    List<URL> urls = Lists.newArrayList();
+    for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+      if (!entry.isEmpty()) {
+        urls.add(new File(entry).toURI().toURL());
+      }
+    }
+    return urls.toArray(new URL[0]);
+  }
+
+  /**
+   * Loads the ISOLATED packages itself and delegates everything else.
+   */
+  static class IsolatingClassLoader extends URLClassLoader {
+    IsolatingClassLoader(URL[] urls, ClassLoader parent) {
+      super(urls, parent);
+    }
+
+    @Override
+    protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+      if (!isIsolated(name)) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> c = findLoadedClass(name);
+        if (c == null) {
+          c = findClass(name);
+        }
+        if (resolve) {
+          resolveClass(c);
+        }
+        return c;
+      }
+    }
+
+    private static boolean isIsolated(String name) {
+      for (String prefix : ISOLATED) {
+        if (name.startsWith(prefix)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -86,6 +86,10 @@ public class Configs {
   // [wtg analysis] number of threads building wtg edges
   public static int workerNum = 16;
 
+  // [gui analysis] heap the FixpointSolver may spend on reaching-source sets
+  // before it traverses from listener objects one by one instead
+  public static long solverMemoryMB = 1024;
+
   // [wtg analysis] detect resource leak
   public static int detectLeak = -1;
 
@@ -130,6 +134,20 @@ public class Configs {
   public static String flowgraphOutput = "";
   public static String apktoolDir;
 
+  // read the app and platform layout files into views; the GA client does
+  // not need them
+  public static boolean readLayouts = false;
+
+  // return from Main after the analysis instead of exiting, see BatchMain
+  public static boolean exitAfterAnalysis = true;
+
+  // platform snapshot to read the system resources from, see
+  // PlatformSnapshot; empty to use the analysis cache or the platform itself
+  public static String platformSnapshot = "";
+
+  // directory of the on-disk analysis cache; empty to disable it
+  public static String cacheDir = "";
+
   public static void processing() {
     if (project.endsWith(".apk")) {
       if (useAndroidStudio) {
@@ -230,9 +248,12 @@ public class Configs {
           if (res == null) {
             System.err.println("[Configs] You need to set `Configs."
                     + f.getName() + "'");
-            System.exit(-1);
+            if (exitAfterAnalysis) {
+              System.exit(-1);
+            }
+            throw new RuntimeException("Configs." + f.getName() + " is not set");
           }
-        } catch (Exception e) {
+        } catch (IllegalAccessException e) {
           e.printStackTrace();
         }
       }
@@ -36,6 +36,8 @@ public class Debug {
   public static final String DUMP_TEST_CASE_DEBUG = "dump_test_case_debug";
 
   public static final String DIFF_TEST_CASE_DEBUG = "diff_test_case_debug";
+
+  public static final String BENCHMARK_REACHABILITY = "benchmark_reachability";
   private String debugFileName;
 
   private File debugFile;
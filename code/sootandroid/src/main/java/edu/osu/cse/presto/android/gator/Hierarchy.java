@@ -40,6 +40,11 @@ public class Hierarchy {
   }
 
   public boolean isSubclassOf(final SootClass child, final SootClass parent) {
+    int childId = index.id(child);
+    int parentId = index.id(parent);
+    if (childId >= 0 && parentId >= 0) {
+      return index.isSubtype(childId, parentId);
+    }
     Set<SootClass> superTypes = getSupertypes(child);
     if (superTypes != null) {
       return superTypes.contains(parent);
@@ -110,21 +115,41 @@ public class Hierarchy {
   // Returns a set of SootClasses: all transitive subtypes of c,
   // including c
   public Set<SootClass> getSubtypes(SootClass c) {
-    return classAndItsSubTypes.get(c);
+    return subtypes(classAndItsSubTypes, c, false);
   }
 
   // -----------------------------------------
   // Returns a set of SootClasses: all transitive SUPERtypes of c,
   // including c
   public Set<SootClass> getSupertypes(SootClass c) {
-    return classAndItsSuperTypes.get(c);
+    Set<SootClass> fake = fakeClassAndItsSuperTypes.get(c);
+    if (fake != null) {
+      return fake;
+    }
+    int id = index.id(c);
+    return id < 0 ? null : index.supertypes(id);
   }
 
   // ----------------------------------------------------------
   // Returns a set of SootClasses: all transitive subtypes of c
   // (including c) for which SootClass.isConcrete() is true
   public Set<SootClass> getConcreteSubtypes(SootClass c) {
-    return classAndItsConcreteSubTypes.get(c);
+    return subtypes(classAndItsConcreteSubTypes, c, true);
+  }
+
+  // Computes a subtype set on first use; every caller gets the same set
+  private Set<SootClass> subtypes(Map<SootClass, Set<SootClass>> cache, SootClass c, boolean concreteOnly) {
+    Set<SootClass> subtypes = cache.get(c);
+    if (subtypes != null) {
+      return subtypes;
+    }
+    int id = index.id(c);
+    if (id < 0) {
+      return null;
+    }
+    subtypes = index.subtypes(id, concreteOnly);
+    Set<SootClass> existing = cache.putIfAbsent(c, subtypes);
+    return existing == null ? subtypes : existing;
   }
 
   // ---------------------------------------------------------
@@ -149,16 +174,9 @@ public class Hierarchy {
       return null;
     }
     // look up the method
-    SootClass curr = receiverClass;
-    while (curr != null) {
-      if (curr.declaresMethod((staticTargetSubsig))) {
-        return curr.getMethod(staticTargetSubsig);
-      }
-      if (curr.hasSuperclass()) {
-        curr = curr.getSuperclass();
-      } else {
-        curr = null; // for java.lang.Object
-      }
+    SootClass matched = matchForVirtualDispatch(staticTargetSubsig, receiverClass);
+    if (matched != null) {
+      return matched.getMethod(staticTargetSubsig);
     }
     Logger.verb(TAG,
             "No match in Hierarchy.virtualDispatch: \n\tmethod subsig = "
@@ -167,8 +185,43 @@ public class Hierarchy {
   }
 
   // ------------------
+  // The class that declares the method with the given subsignature
+  // that receiverClass inherits, or null. Memoized per (subsignature,
+  // class) for the classes in the index, which do not get methods
+  // after the hierarchy is built; the fake listener classes do and
+  // are looked up every time.
   public SootClass matchForVirtualDispatch(String staticTargetSubsig,
                                            SootClass receiverClass) {
+    int classId = index.id(receiverClass);
+    if (classId < 0) {
+      return lookUpForVirtualDispatch(staticTargetSubsig, receiverClass);
+    }
+    Long key = ((long) subsignatureId(staticTargetSubsig) << 32) | classId;
+    Object matched = dispatchTable.get(key);
+    if (matched == null) {
+      SootClass c = lookUpForVirtualDispatch(staticTargetSubsig, receiverClass);
+      matched = c == null ? NO_MATCH : c;
+      dispatchTable.put(key, matched);
+    }
+    return matched == NO_MATCH ? null : (SootClass) matched;
+  }
+
+  private int subsignatureId(String subsig) {
+    Integer id = subsignatureIds.get(subsig);
+    if (id == null) {
+      synchronized (subsignatureIds) {
+        id = subsignatureIds.get(subsig);
+        if (id == null) {
+          id = subsignatureIds.size();
+          subsignatureIds.put(subsig, id);
+        }
+      }
+    }
+    return id;
+  }
+
+  private SootClass lookUpForVirtualDispatch(String staticTargetSubsig,
+                                             SootClass receiverClass) {
     // look up the method
     SootClass currentClass = receiverClass;
     while (currentClass != null) {
@@ -249,16 +302,17 @@ public class Hierarchy {
     mapClass = scene.getSootClass("java.util.Map");
     dialogInterface = scene.getSootClass("android.content.DialogInterface");
 
+    long phaseStart = System.nanoTime();
     simpleClassStatistics();
 
-    // next, for each class/interface C, recursively traverse
-    // all supertypes of C and add C to the appropriate sets
-    for (SootClass c : scene.getClasses()) {
-      traverse(c, c);
-    }
+    // next, number the classes/interfaces so that subtype tests and
+    // subtype sets come from the index
+    index = new HierarchyIndex(scene.getClasses());
+    phaseStart = logPhase("index", phaseStart);
 
     // Look at activities
     activityClasses();
+    phaseStart = logPhase("activities", phaseStart);
 
     // figure out the view classes
 //    viewsAndMenus();
@@ -266,12 +320,22 @@ public class Hierarchy {
     // dialogs
 //    dialogs();
 
+    buildApplicationCodeMap();
+    phaseStart = logPhase("instantiations", phaseStart);
+
     recordFrameworkInvokedCallbacks();
+    logPhase("callbacks", phaseStart);
 
     long estimatedTime = System.nanoTime() - startTime;
     Logger.info(TAG, "End: " + (estimatedTime * 1.0e-09) + " sec");
   } // Hierarchy()
 
+  private long logPhase(String phase, long start) {
+    long now = System.nanoTime();
+    Logger.info(TAG, "  " + phase + ": " + ((now - start) * 1.0e-09) + " sec");
+    return now;
+  }
+
   void simpleClassStatistics() {
     Scene scene = Scene.v();
     int numClasses = 0;
@@ -281,9 +345,6 @@ public class Hierarchy {
       if (c.isApplicationClass()) {
         appClasses.add(c);
       }
-      classAndItsConcreteSubTypes.put(c, new HashSet<SootClass>());
-      classAndItsSubTypes.put(c, new HashSet<SootClass>());
-      classAndItsSuperTypes.put(c, new HashSet<SootClass>());
     }
     Logger.info(TAG, "All classes: " + numClasses
             + " [App: " + appClasses.size()
@@ -297,91 +358,109 @@ public class Hierarchy {
 
   void recordFrameworkInvokedCallbacks() {
     // (1) possible calbacks from the framework to app classes,
-    // and (2) app classes that are instantiated by the framework
-    for (SootClass c : appClasses) {
-      boolean interesting = false;
-      for (SootClass s : getSupertypes(c)) {
-        if (s.isApplicationClass()) {
-          continue;
-        }
-        if (s.getName().startsWith("java.")) {
-          continue;
+    // and (2) app classes that are instantiated by the framework.
+    // Classes are independent, so look at them in parallel, once the
+    // instantiations are known.
+    if (instantiatedClasses == null) {
+      buildApplicationCodeMap();
+    }
+    final Map<SootClass, Set<SootMethod>> found = new ConcurrentHashMap<>();
+    appClasses.parallelStream().forEach(new Consumer<SootClass>() {
+      @Override
+      public void accept(SootClass c) {
+        Set<SootMethod> callbacks = frameworkInvokedCallbacks(c);
+        if (callbacks != null) {
+          found.put(c, callbacks);
         }
-        interesting = true;
-        break;
       }
-      if (!interesting) {
+    });
+    frameworkManaged.putAll(found);
+  }
+
+  // the callbacks of c if it is framework-managed, otherwise null
+  private Set<SootMethod> frameworkInvokedCallbacks(SootClass c) {
+    boolean interesting = false;
+    for (SootClass s : getSupertypes(c)) {
+      if (s.isApplicationClass()) {
         continue;
       }
-
-      // this application class is interesting - it has a
-      // superclass/interface that is in the framework or in a
-      // non-standard library. could be subjected to callbacks.
-
-      // is it instantiated in the app code? if so, we will
-      // assume that its creation and lifetime are not managed
-      // by the framework
-      boolean instantiated = instantiatedInApplicationCode(c);
-      if (instantiated) {
+      if (s.getName().startsWith("java.")) {
         continue;
       }
+      interesting = true;
+      break;
+    }
+    if (!interesting) {
+      return null;
+    }
 
-      // Note: some View subclasses are instantiated via
-      // inflation, and this will miss them (will erroneously
-      // report them as not-instantiated). Later, after
-      // inflating the XML files, we remove these from "todo"
+    // this application class is interesting - it has a
+    // superclass/interface that is in the framework or in a
+    // non-standard library. could be subjected to callbacks.
 
-      // TODO: for now, just deal with activities; later deal
-      // with the other interesting application classes
-      if (!applicationActivityClasses.contains(c)) {
+    // is it instantiated in the app code? if so, we will
+    // assume that its creation and lifetime are not managed
+    // by the framework
+    boolean instantiated = instantiatedInApplicationCode(c);
+    if (instantiated) {
+      return null;
+    }
+
+    // Note: some View subclasses are instantiated via
+    // inflation, and this will miss them (will erroneously
+    // report them as not-instantiated). Later, after
+    // inflating the XML files, we remove these from "todo"
+
+    // TODO: for now, just deal with activities; later deal
+    // with the other interesting application classes
+    if (!applicationActivityClasses.contains(c)) {
+      return null;
+    }
+
+    // here gather the callback methods (TODO: should be
+    // generic to work for all classes, not just activities)
+    Set<String> allSubsig = Sets.newHashSet();
+    for (SootClass s : getSupertypes(c)) {
+      if (s.isApplicationClass()) {
         continue;
       }
-
-      // here gather the callback methods (TODO: should be
-      // generic to work for all classes, not just activities)
-      Set<String> allSubsig = Sets.newHashSet();
-      for (SootClass s : getSupertypes(c)) {
-        if (s.isApplicationClass()) {
+      if (s.getName().startsWith("java.")) {
+        continue;
+      }
+      for (SootMethod m : s.getMethods()) {
+        if (m.isStatic()) {
           continue;
         }
-        if (s.getName().startsWith("java.")) {
+        if (m.isConstructor()) {
           continue;
         }
-        for (SootMethod m : s.getMethods()) {
-          if (m.isStatic()) {
-            continue;
-          }
-          if (m.isConstructor()) {
-            continue;
-          }
-          // only public and protected methods can be overridden
-          if (m.isPublic() || m.isProtected()) {
-            allSubsig.add(m.getSubSignature());
-          }
+        // only public and protected methods can be overridden
+        if (m.isPublic() || m.isProtected()) {
+          allSubsig.add(m.getSubSignature());
         }
       }
-      Set<SootMethod> callbacks = Sets.newHashSet();
-      // the no-parameters constructor can be called by the
-      // framework as part of the instantiation procss
-      if (c.declaresMethod("void <init>()")) {
-        callbacks.add(c.getMethod("void <init>()"));
-      }
-      frameworkManaged.put(c, callbacks);
-      for (String sub : allSubsig) {
-        // do we have a match in the application code?
-        for (SootClass t = c; t.isApplicationClass(); t = t.getSuperclass()) {
-          if (t.declaresMethod(sub)) {
-            SootMethod m = t.getMethod(sub);
-            if (!m.isConcrete()) {
-              throw new Error();
-            }
-            callbacks.add(m);
-            // no need to look at more superclasses
-            break;
+    }
+    Set<SootMethod> callbacks = Sets.newHashSet();
+    // the no-parameters constructor can be called by the
+    // framework as part of the instantiation procss
+    if (c.declaresMethod("void <init>()")) {
+      callbacks.add(c.getMethod("void <init>()"));
+    }
+    for (String sub : allSubsig) {
+      // do we have a match in the application code?
+      for (SootClass t = c; t.isApplicationClass(); t = t.getSuperclass()) {
+        if (t.declaresMethod(sub)) {
+          SootMethod m = t.getMethod(sub);
+          if (!m.isConcrete()) {
+            throw new Error();
           }
+          callbacks.add(m);
+          // no need to look at more superclasses
+          break;
         }
-      } // each subsignature
-    } // each application class
+      }
+    } // each subsignature
+    return callbacks;
   }
 
   void activityClasses() {
@@ -394,7 +473,7 @@ public class Hierarchy {
     stream.forEach(new Consumer<SootClass>() {
       @Override
       public void accept(SootClass sootClass) {
-        if (getSupertypes(sootClass).contains(act)) {
+        if (isSubclassOf(sootClass, act)) {
           applicationActivityClasses.add(sootClass);
         }
       }
@@ -403,7 +482,7 @@ public class Hierarchy {
     stream.forEach(new Consumer<SootClass>() {
       @Override
       public void accept(SootClass sootClass) {
-        if (getSupertypes(sootClass).contains(act)) {
+        if (isSubclassOf(sootClass, act)) {
           libActivityClasses.add(sootClass);
         }
       }
@@ -479,102 +558,79 @@ public class Hierarchy {
   private Set<SootClass> instantiatedClasses;
 
   void buildApplicationCodeMap() {
-    instantiatedClasses = Sets.newHashSet();
+    // Soot does not load bodies safely from several threads, so the bodies
+    // are loaded first and only the scan runs in parallel
+    List<Body> bodies = Lists.newArrayList();
     for (SootClass d : appClasses) {
       for (SootMethod m : Lists.newArrayList(d.getMethods())) {
-        if (!m.isConcrete()) {
-          continue;
+        if (m.isConcrete()) {
+          bodies.add(m.retrieveActiveBody());
         }
-
-        Body b = m.retrieveActiveBody();
-        for (Iterator<Unit> iter = b.getUnits().snapshotIterator();
-             iter.hasNext(); ) {
-          Stmt stmt = (Stmt) iter.next();
+      }
+    }
+    final Set<SootClass> instantiated = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    bodies.parallelStream().forEach(new Consumer<Body>() {
+      @Override
+      public void accept(Body b) {
+        for (Unit unit : b.getUnits()) {
+          Stmt stmt = (Stmt) unit;
           if (!(stmt instanceof AssignStmt))
             continue;
           Value rhs = ((AssignStmt) stmt).getRightOp();
           if (rhs instanceof NewExpr) {
             SootClass base = ((NewExpr) rhs).getBaseType().getSootClass();
-            instantiatedClasses.add(base);
+            instantiated.add(base);
           }
         }
       }
-    }
+    });
+    instantiatedClasses = instantiated;
   }
 
 
-  // -------------------------------------------------------
-  // recursive traversal of superclasses and superinterfaces
-  private void traverse(SootClass sub, SootClass supr) {
-
-    // sub is a subtype of supr (or possibly supr == sub)
-
-    // first, add sub to the all_tbl set for supr
-    classAndItsSubTypes.get(supr).add(sub);
-
-    // also, add supr to the all_super_tbl set for sub
-    classAndItsSuperTypes.get(sub).add(supr);
-
-    // next, if sub is a non-interface non-abstract class, add it
-    // to the tbl set for supr
-    if (sub.isConcrete()) {
-      classAndItsConcreteSubTypes.get(supr).add(sub);
-    }
-
-    // traverse parent classes/interfaces of supr
-
-    if (supr.hasSuperclass()) {
-      traverse(sub, supr.getSuperclass());
-    }
-
-    for (Iterator<SootClass> it = supr.getInterfaces().iterator(); it.hasNext(); ) {
-      traverse(sub, it.next());
-    }
-  }
-
   public void addFakeListenerClass(SootClass listenerClass,
                                    SootClass listenerInterface) {
-    classAndItsSuperTypes.put(
+    fakeClassAndItsSuperTypes.put(
             listenerClass,
             Sets.newHashSet(listenerClass, listenerInterface));
 
     classAndItsSubTypes.put(listenerClass, Sets.newHashSet(listenerClass));
     classAndItsConcreteSubTypes.put(listenerClass, Sets.newHashSet(listenerClass));
 
-    classAndItsSubTypes.get(listenerInterface).add(listenerClass);
-    classAndItsConcreteSubTypes.get(listenerInterface).add(listenerClass);
+    getSubtypes(listenerInterface).add(listenerClass);
+    getConcreteSubtypes(listenerInterface).add(listenerClass);
   }
 
   // -------------------------------------------------------------
-  // this hash table contains a pair (C,X) for each class C in the
-  // program. Here by "class" we mean SootClass, which could be a
-  // Java class or a Java interface. The set of possible values of C
-  // covers all SootClasses that are application classes or library
-  // classes. X is a HashSet that contains SootClasses for all
-  // elements of the set { C } union { D | D is a direct or
-  // transitive subtype of C }, **excluding** all D that are
-  // interfaces or abstract classes.
-  private final Map<SootClass, Set<SootClass>> classAndItsConcreteSubTypes = Maps.newHashMap();
+  // Subtype tests and subtype/supertype sets for all SootClasses
+  // (Java classes and interfaces) that are application, library
+  // or phantom classes when the hierarchy is built.
+  private HierarchyIndex index;
+
+  // -------------------------------------------------------------
+  // the sets returned by getConcreteSubtypes, i.e. for a class C
+  // the set { C } union { D | D is a direct or transitive subtype
+  // of C }, **excluding** all D that are interfaces or abstract
+  // classes. Filled on demand from the index.
+  private final Map<SootClass, Set<SootClass>> classAndItsConcreteSubTypes = new ConcurrentHashMap<>();
+
+  // -------------------------------------------------------------
+  // the sets returned by getSubtypes, i.e. for a class C the set
+  // { C } union { D | D is a direct or transitive subtype of C }.
+  // Filled on demand from the index.
+  private final Map<SootClass, Set<SootClass>> classAndItsSubTypes = new ConcurrentHashMap<>();
 
   // -------------------------------------------------------------
-  // this hash table contains a pair (C,X) for each class C in the
-  // program. Here by "class" we mean SootClass, which could be a
-  // Java class or a Java interface. The set of possible values of C
-  // covers all SootClasses that are application classes or library
-  // classes. X is a HashSet that contains SootClasses for all
-  // elements of the set { C } union { D | D is a direct or
-  // transitive subtype of C }.
-  private final Map<SootClass, Set<SootClass>> classAndItsSubTypes = Maps.newHashMap();
+  // supertypes of the fake listener classes, which are created
+  // after the index
+  private final Map<SootClass, Set<SootClass>> fakeClassAndItsSuperTypes = new ConcurrentHashMap<>();
 
   // -------------------------------------------------------------
-  // this hash table contains a pair (C,X) for each class C in the
-  // program. Here by "class" we mean SootClass, which could be a
-  // Java class or a Java interface. The set of possible values of C
-  // covers all SootClasses that are application classes or library
-  // classes. X is a HashSet that contains SootClasses for all
-  // elements of the set { C } union { D | D is a direct or
-  // transitive SUPERtype of C }.
-  private final Map<SootClass, Set<SootClass>> classAndItsSuperTypes = Maps.newHashMap();
+  // (subsignature id << 32 | class id) -> the result of
+  // matchForVirtualDispatch, or NO_MATCH
+  private final Map<Long, Object> dispatchTable = new ConcurrentHashMap<>();
+  private final Map<String, Integer> subsignatureIds = new ConcurrentHashMap<>();
+  private static final Object NO_MATCH = new Object();
 
   public Set<SootClass> applicationActivityClasses = Collections.newSetFromMap(new ConcurrentHashMap<>());
   public Set<SootClass> libActivityClasses = Collections.newSetFromMap(new ConcurrentHashMap<>()); // not in app
@@ -0,0 +1,289 @@
+/*
+ * HierarchyIndex.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import soot.SootClass;
+
+import java.util.*;
+
+/**
+ * Subtype tests and subtype/supertype enumeration over a fixed set of classes
+ * without a set per class. Every class gets an id. The superclass tree (where
+ * interfaces hang off java.lang.Object, as Soot models them) is numbered in
+ * pre-order, so the subclasses of c are exactly the classes numbered
+ * pre[c] .. end[c] - 1. Interfaces get a second, dense number, and every class
+ * has a BitSet of the interfaces it implements directly or transitively; a
+ * class that adds no interface of its own shares the BitSet of its
+ * superclass.
+ */
+class HierarchyIndex {
+  private final Map<SootClass, Integer> ids;
+  private final SootClass[] classes;
+  // id -> id of the superclass; -1 for roots
+  private final int[] parent;
+  // id -> pre-order number; the subtree of id is [pre[id], end[id])
+  private final int[] pre;
+  private final int[] end;
+  // pre-order number -> id
+  private final int[] byPre;
+  // id -> interface number; -1 for classes
+  private final int[] interfaceNumber;
+  // interface number -> id
+  private final int[] interfaceIds;
+  // id -> interfaces implemented, including itself for an interface
+  private final BitSet[] interfaces;
+  // interface number -> ids of the classes and interfaces that list it among
+  // their direct superinterfaces
+  private final int[][] directImplementers;
+
+  private static final int[] NONE = new int[0];
+
+  HierarchyIndex(Collection<SootClass> scene) {
+    int n = scene.size();
+    ids = Maps.newHashMapWithExpectedSize(n);
+    classes = new SootClass[n];
+    int numInterfaces = 0;
+    for (SootClass c : scene) {
+      int id = ids.size();
+      ids.put(c, id);
+      classes[id] = c;
+      if (c.isInterface()) {
+        numInterfaces++;
+      }
+    }
+
+    // the superclass tree, as child lists
+    parent = new int[n];
+    int[] childCount = new int[n + 1];
+    for (int id = 0; id < n; id++) {
+      SootClass c = classes[id];
+      Integer p = c.hasSuperclass() ? ids.get(c.getSuperclass()) : null;
+      parent[id] = p == null ? -1 : p;
+      if (p != null) {
+        childCount[p + 1]++;
+      }
+    }
+    for (int id = 0; id < n; id++) {
+      childCount[id + 1] += childCount[id];
+    }
+    int[] children = new int[childCount[n]];
+    int[] fill = Arrays.copyOf(childCount, n);
+    for (int id = 0; id < n; id++) {
+      if (parent[id] >= 0) {
+        children[fill[parent[id]]++] = id;
+      }
+    }
+
+    // pre-order numbering, without recursion
+    pre = new int[n];
+    end = new int[n];
+    byPre = new int[n];
+    int[] stack = new int[n];
+    int[] cursor = new int[n];
+    int next = 0;
+    for (int root = 0; root < n; root++) {
+      if (parent[root] >= 0) {
+        continue;
+      }
+      int top = 0;
+      stack[top++] = root;
+      pre[root] = next;
+      byPre[next++] = root;
+      cursor[root] = childCount[root];
+      while (top > 0) {
+        int id = stack[top - 1];
+        if (cursor[id] < childCount[id + 1]) {
+          int child = children[cursor[id]++];
+          pre[child] = next;
+          byPre[next++] = child;
+          cursor[child] = childCount[child];
+          stack[top++] = child;
+        } else {
+          end[id] = next;
+          top--;
+        }
+      }
+    }
+    if (next != n) {
+      throw new Error("[HIER] Cycle in the superclass relation");
+    }
+
+    // interfaces
+    interfaceNumber = new int[n];
+    interfaceIds = new int[numInterfaces];
+    int k = 0;
+    for (int id = 0; id < n; id++) {
+      if (classes[id].isInterface()) {
+        interfaceIds[k] = id;
+        interfaceNumber[id] = k++;
+      } else {
+        interfaceNumber[id] = -1;
+      }
+    }
+    int[] implementerCount = new int[numInterfaces];
+    for (int id = 0; id < n; id++) {
+      for (SootClass i : classes[id].getInterfaces()) {
+        Integer j = ids.get(i);
+        if (j != null && interfaceNumber[j] >= 0) {
+          implementerCount[interfaceNumber[j]]++;
+        }
+      }
+    }
+    directImplementers = new int[numInterfaces][];
+    for (int i = 0; i < numInterfaces; i++) {
+      directImplementers[i] = implementerCount[i] == 0 ? NONE : new int[implementerCount[i]];
+      implementerCount[i] = 0;
+    }
+    for (int id = 0; id < n; id++) {
+      for (SootClass i : classes[id].getInterfaces()) {
+        Integer j = ids.get(i);
+        if (j != null && interfaceNumber[j] >= 0) {
+          int number = interfaceNumber[j];
+          directImplementers[number][implementerCount[number]++] = id;
+        }
+      }
+    }
+    interfaces = new BitSet[n];
+    // superclasses come first in pre-order; superinterfaces are computed on
+    // demand
+    boolean[] inProgress = new boolean[n];
+    for (int p = 0; p < n; p++) {
+      interfacesOf(byPre[p], inProgress);
+    }
+  }
+
+  private BitSet interfacesOf(int id, boolean[] inProgress) {
+    if (interfaces[id] != null) {
+      return interfaces[id];
+    }
+    if (inProgress[id]) {
+      throw new Error("[HIER] Cycle in the superinterface relation at " + classes[id]);
+    }
+    inProgress[id] = true;
+    BitSet inherited = parent[id] >= 0 ? interfacesOf(parent[id], inProgress) : new BitSet(0);
+    BitSet result = inherited;
+    if (interfaceNumber[id] >= 0) {
+      result = (BitSet) inherited.clone();
+      result.set(interfaceNumber[id]);
+    }
+    for (SootClass i : classes[id].getInterfaces()) {
+      Integer j = ids.get(i);
+      if (j == null) {
+        continue;
+      }
+      BitSet bits = interfacesOf(j, inProgress);
+      if (isSubset(bits, result)) {
+        continue;
+      }
+      if (result == inherited) {
+        result = (BitSet) inherited.clone();
+      }
+      result.or(bits);
+    }
+    interfaces[id] = result;
+    inProgress[id] = false;
+    return result;
+  }
+
+  private static boolean isSubset(BitSet a, BitSet b) {
+    BitSet rest = (BitSet) a.clone();
+    rest.andNot(b);
+    return rest.isEmpty();
+  }
+
+  /**
+   * @return the id of c, or -1 if c was not in the Scene when the index was
+   * built
+   */
+  int id(SootClass c) {
+    Integer id = ids.get(c);
+    return id == null ? -1 : id;
+  }
+
+  int size() {
+    return classes.length;
+  }
+
+  SootClass sootClass(int id) {
+    return classes[id];
+  }
+
+  /**
+   * Whether child is parent or a direct or transitive subtype of it.
+   */
+  boolean isSubtype(int child, int parent) {
+    int number = interfaceNumber[parent];
+    if (number >= 0) {
+      return interfaces[child].get(number);
+    }
+    return pre[parent] <= pre[child] && pre[child] < end[parent];
+  }
+
+  /**
+   * c and all its direct and transitive supertypes.
+   */
+  Set<SootClass> supertypes(int id) {
+    BitSet bits = interfaces[id];
+    Set<SootClass> result = Sets.newHashSetWithExpectedSize(8 + bits.cardinality());
+    for (int c = id; c >= 0; c = parent[c]) {
+      result.add(classes[c]);
+    }
+    for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+      result.add(classes[interfaceIds[i]]);
+    }
+    return result;
+  }
+
+  /**
+   * c and all its direct and transitive subtypes, or only those for which
+   * SootClass.isConcrete() holds.
+   */
+  Set<SootClass> subtypes(int id, boolean concreteOnly) {
+    Set<SootClass> result = Sets.newHashSet();
+    if (interfaceNumber[id] < 0) {
+      addSubtree(id, concreteOnly, result);
+      return result;
+    }
+    // an interface: the subtrees of everything implementing it or one of its
+    // subinterfaces
+    BitSet visited = new BitSet(interfaceIds.length);
+    int[] worklist = new int[16];
+    int top = 0;
+    worklist[top++] = interfaceNumber[id];
+    visited.set(interfaceNumber[id]);
+    while (top > 0) {
+      int number = worklist[--top];
+      addSubtree(interfaceIds[number], concreteOnly, result);
+      for (int implementer : directImplementers[number]) {
+        int sub = interfaceNumber[implementer];
+        if (sub < 0) {
+          addSubtree(implementer, concreteOnly, result);
+        } else if (!visited.get(sub)) {
+          visited.set(sub);
+          if (top == worklist.length) {
+            worklist = Arrays.copyOf(worklist, top * 2);
+          }
+          worklist[top++] = sub;
+        }
+      }
+    }
+    return result;
+  }
+
+  private void addSubtree(int id, boolean concreteOnly, Set<SootClass> result) {
+    for (int p = pre[id]; p < end[id]; p++) {
+      SootClass c = classes[byPre[p]];
+      if (!concreteOnly || c.isConcrete()) {
+        result.add(c);
+      }
+    }
+  }
+}
@@ -29,6 +29,10 @@ public class Main {
     Debug.v().setStartTime();
     parseArgs(args);
     checkAndPrintEnvironmentInformation(args);
+    AnalysisCache.v().setArguments(args);
+    if (AnalysisCache.v().restoreResult()) {
+      return;
+    }
     setupAndInvokeSoot();
   }
 
@@ -91,6 +95,9 @@ public class Main {
       } else if ("-worker".equals(s)) {
         Configs.workerNum = Integer.parseInt(args[++i]);
         Assert.assertTrue("[Error]: number of workers should be >= 1", Configs.workerNum > 0);
+      } else if ("-solverMemory".equals(s)) {
+        Configs.solverMemoryMB = Long.parseLong(args[++i]);
+        Assert.assertTrue("[Error]: solver memory should be >= 0", Configs.solverMemoryMB >= 0);
       } else if ("-mockScene".equals(s)) {
         Configs.mockScene = true;
       } else if ("-hardwareEvent".equals(s)) {
@@ -131,6 +138,14 @@ public class Main {
         Configs.flowgraphOutput = args[++i];
       } else if ("-apktoolDir".equals(s)) {
         Configs.apktoolDir = args[++i];
+      } else if ("-readLayouts".equals(s)) {
+        Configs.readLayouts = true;
+      } else if ("-noExit".equals(s)) {
+        Configs.exitAfterAnalysis = false;
+      } else if ("-platformSnapshot".equals(s)) {
+        Configs.platformSnapshot = args[++i];
+      } else if ("-cacheDir".equals(s)) {
+        Configs.cacheDir = args[++i];
       } else {
         throw new RuntimeException("Unknown option: " + s);
       }
@@ -0,0 +1,303 @@
+/*
+ * BackwardValueIndex.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator.gui;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.CompactFlowgraph;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NIdNode;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NNode;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NObjectNode;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NOpNode;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NVarNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Answers the backward queries of DemandVariableValueQuery from a frozen
+ * flowgraph. Backward reachability with the op-node stop is reachability in
+ * the graph where non-op nodes point to their predecessors and op nodes point
+ * nowhere. Its strongly connected components are condensed once; the object
+ * and id values of a component (its own plus those of the components it
+ * reaches, plus the fixpoint solutions of the variables in it) are computed on
+ * the first query that needs them and then shared. Queries may come from
+ * several threads, so they are synchronized.
+ */
+public class BackwardValueIndex {
+  private final CompactFlowgraph g;
+  // node id -> component; -1 for ids not in the snapshot
+  private final int[] component;
+  // successor components in the condensed graph, compressed rows
+  private final int[] componentOffsets;
+  private final int[] componentTargets;
+  // member node ids of each component, compressed rows
+  private final int[] memberOffsets;
+  private final int[] members;
+  private final Map<NVarNode, Set<NNode>> solutionsByResultVar;
+
+  // component -> its values; null until summarized
+  private final List<Set<NObjectNode>> objects;
+  private final List<Set<NIdNode>> ids;
+
+  BackwardValueIndex(CompactFlowgraph g, FixpointSolver solver) {
+    this.g = g;
+    int n = g.size();
+    component = new int[n];
+    Arrays.fill(component, -1);
+    int numComponents = condense();
+
+    // members grouped by component
+    memberOffsets = new int[numComponents + 1];
+    for (int id = 0; id < n; id++) {
+      if (component[id] >= 0) {
+        memberOffsets[component[id] + 1]++;
+      }
+    }
+    for (int c = 0; c < numComponents; c++) {
+      memberOffsets[c + 1] += memberOffsets[c];
+    }
+    members = new int[memberOffsets[numComponents]];
+    int[] fill = Arrays.copyOf(memberOffsets, numComponents);
+    for (int id = 0; id < n; id++) {
+      if (component[id] >= 0) {
+        members[fill[component[id]]++] = id;
+      }
+    }
+
+    // condensed edges, without self loops and duplicates
+    componentOffsets = new int[numComponents + 1];
+    int[] targets = new int[16];
+    int numTargets = 0;
+    int[] lastSeen = new int[numComponents];
+    Arrays.fill(lastSeen, -1);
+    for (int c = 0; c < numComponents; c++) {
+      for (int k = memberOffsets[c]; k < memberOffsets[c + 1]; k++) {
+        int u = members[k];
+        if (g.isOpNode(u)) {
+          continue;
+        }
+        for (int i = g.predOffsets[u]; i < g.predOffsets[u + 1]; i++) {
+          int d = component[g.predTargets[i]];
+          if (d == c || lastSeen[d] == c) {
+            continue;
+          }
+          lastSeen[d] = c;
+          if (numTargets == targets.length) {
+            targets = Arrays.copyOf(targets, numTargets * 2);
+          }
+          targets[numTargets++] = d;
+        }
+      }
+      componentOffsets[c + 1] = numTargets;
+    }
+    componentTargets = Arrays.copyOf(targets, numTargets);
+
+    solutionsByResultVar = Maps.newHashMap();
+    if (solver != null && solver.solutionResults != null) {
+      for (Map.Entry<NOpNode, Set<NNode>> entry : solver.solutionResults.entrySet()) {
+        NVarNode local = solver.resultExtractor.extract(entry.getKey());
+        if (local == null) {
+          continue;
+        }
+        Set<NNode> solutions = solutionsByResultVar.get(local);
+        if (solutions == null) {
+          solutions = Sets.newHashSet();
+          solutionsByResultVar.put(local, solutions);
+        }
+        solutions.addAll(entry.getValue());
+      }
+    }
+
+    objects = new ArrayList<>(Collections.<Set<NObjectNode>>nCopies(numComponents, null));
+    ids = new ArrayList<>(Collections.<Set<NIdNode>>nCopies(numComponents, null));
+  }
+
+  public boolean isCurrent() {
+    return g.isCurrent();
+  }
+
+  public boolean contains(NNode n) {
+    return g.contains(n);
+  }
+
+  /**
+   * Iterative Tarjan over the backward graph. Components are numbered in the
+   * order they are completed, so every edge of the condensed graph goes from
+   * a higher to a lower number.
+   *
+   * @return the number of components
+   */
+  private int condense() {
+    int n = g.size();
+    int[] index = new int[n];
+    int[] lowLink = new int[n];
+    int[] edgeCursor = new int[n];
+    boolean[] onStack = new boolean[n];
+    int[] sccStack = new int[n];
+    int[] callStack = new int[n];
+    int nextIndex = 1;
+    int sccTop = 0;
+    int numComponents = 0;
+    for (int root = 0; root < n; root++) {
+      if (g.node(root) == null || index[root] != 0) {
+        continue;
+      }
+      int callTop = 0;
+      callStack[callTop++] = root;
+      index[root] = lowLink[root] = nextIndex++;
+      edgeCursor[root] = g.predOffsets[root];
+      sccStack[sccTop++] = root;
+      onStack[root] = true;
+      while (callTop > 0) {
+        int u = callStack[callTop - 1];
+        int end = g.isOpNode(u) ? edgeCursor[u] : g.predOffsets[u + 1];
+        if (edgeCursor[u] < end) {
+          int v = g.predTargets[edgeCursor[u]++];
+          if (index[v] == 0) {
+            index[v] = lowLink[v] = nextIndex++;
+            edgeCursor[v] = g.predOffsets[v];
+            sccStack[sccTop++] = v;
+            onStack[v] = true;
+            callStack[callTop++] = v;
+          } else if (onStack[v]) {
+            lowLink[u] = Math.min(lowLink[u], index[v]);
+          }
+          continue;
+        }
+        callTop--;
+        if (callTop > 0) {
+          int parent = callStack[callTop - 1];
+          lowLink[parent] = Math.min(lowLink[parent], lowLink[u]);
+        }
+        if (lowLink[u] == index[u]) {
+          int v;
+          do {
+            v = sccStack[--sccTop];
+            onStack[v] = false;
+            component[v] = numComponents;
+          } while (v != u);
+          numComponents++;
+        }
+      }
+    }
+    return numComponents;
+  }
+
+  /**
+   * The NObjectNodes backward reachable from n, plus the fixpoint solutions
+   * of the variables backward reachable from it.
+   */
+  public synchronized Set<NObjectNode> objectValues(NNode n) {
+    int c = component[n.id];
+    if (objects.get(c) == null) {
+      summarize(c);
+    }
+    return objects.get(c);
+  }
+
+  /**
+   * The NIdNodes backward reachable from n.
+   */
+  public synchronized Set<NIdNode> idValues(NNode n) {
+    int c = component[n.id];
+    if (ids.get(c) == null) {
+      summarize(c);
+    }
+    return ids.get(c);
+  }
+
+  /**
+   * Computes the values of c and of every component below it that is not
+   * summarized yet, successors first, without recursion.
+   */
+  private void summarize(int root) {
+    int[] stack = new int[16];
+    int top = 0;
+    stack[top++] = root;
+    while (top > 0) {
+      int c = stack[top - 1];
+      if (objects.get(c) != null) {
+        top--;
+        continue;
+      }
+      boolean ready = true;
+      for (int i = componentOffsets[c]; i < componentOffsets[c + 1]; i++) {
+        int d = componentTargets[i];
+        if (objects.get(d) == null) {
+          if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+          }
+          stack[top++] = d;
+          ready = false;
+        }
+      }
+      if (ready) {
+        top--;
+        computeValues(c);
+      }
+    }
+  }
+
+  private void computeValues(int c) {
+    Set<NObjectNode> ownObjects = Collections.emptySet();
+    Set<NIdNode> ownIds = Collections.emptySet();
+    for (int k = memberOffsets[c]; k < memberOffsets[c + 1]; k++) {
+      NNode node = g.node(members[k]);
+      if (node instanceof NObjectNode) {
+        ownObjects = add(ownObjects, (NObjectNode) node);
+      } else if (node instanceof NIdNode) {
+        ownIds = add(ownIds, (NIdNode) node);
+      }
+      if (node instanceof NVarNode) {
+        Set<NNode> solutions = solutionsByResultVar.get(node);
+        if (solutions != null) {
+          for (NNode solution : solutions) {
+            ownObjects = add(ownObjects, (NObjectNode) solution);
+          }
+        }
+      }
+    }
+    objects.set(c, union(ownObjects, objects, c));
+    ids.set(c, union(ownIds, ids, c));
+  }
+
+  private static <T> Set<T> add(Set<T> set, T element) {
+    if (set.isEmpty()) {
+      set = Sets.newHashSet();
+    }
+    set.add(element);
+    return set;
+  }
+
+  /**
+   * Shares the set of the only successor when c adds nothing to it.
+   */
+  private <T> Set<T> union(Set<T> own, List<Set<T>> summaries, int c) {
+    int from = componentOffsets[c];
+    int to = componentOffsets[c + 1];
+    if (own.isEmpty()) {
+      if (from == to) {
+        return Collections.emptySet();
+      }
+      if (to - from == 1) {
+        return summaries.get(componentTargets[from]);
+      }
+    }
+    Set<T> result = Sets.newHashSet(own);
+    for (int i = from; i < to; i++) {
+      result.addAll(summaries.get(componentTargets[i]));
+    }
+    return Collections.unmodifiableSet(result);
+  }
+}
@@ -395,7 +395,7 @@ public class DefaultGUIAnalysisOutput implements GUIAnalysisOutput {
   public Set<Stmt> getCallbackRegistrations(NObjectNode guiObject,
                                             Predicate<EventType> condition) {
     Set<Stmt> result = Sets.newHashSet();
-    for (NOpNode opNode : NOpNode.getNodes(NSetListenerOpNode.class)) {
+    for (NOpNode opNode : flowgraph.opNodes.getNodes(NSetListenerOpNode.class)) {
       NSetListenerOpNode setListener = (NSetListenerOpNode) opNode;
       Set<NNode> receiverSet = solver.solutionReceivers.get(setListener);
       if (receiverSet != null && receiverSet.contains(guiObject)) {
@@ -562,14 +562,14 @@ public class DefaultGUIAnalysisOutput implements GUIAnalysisOutput {
   // For a specified statement, return the corresponding NOpNode if it does
   // represent such a node. If not, null will be returned.
   public NOpNode operationNode(Stmt s) {
-    return NOpNode.lookupByStmt(s);
+    return flowgraph.opNodes.lookupByStmt(s);
   }
 
   // For a specified Jimple statement, determine whether it represents a
   // callback registration.
   @Override
   public boolean isCallbackRegistration(Stmt s) {
-    NOpNode node = NOpNode.lookupByStmt(s);
+    NOpNode node = flowgraph.opNodes.lookupByStmt(s);
     return node instanceof NSetListenerOpNode;
   }
 
@@ -578,7 +578,7 @@ public class DefaultGUIAnalysisOutput implements GUIAnalysisOutput {
   // operation nodes.
   @Override
   public Set<NOpNode> operationNodes(Class<? extends NOpNode> klass) {
-    return NOpNode.getNodes(klass);
+    return flowgraph.opNodes.getNodes(klass);
   }
 
   // Return the set of all operation nodes.
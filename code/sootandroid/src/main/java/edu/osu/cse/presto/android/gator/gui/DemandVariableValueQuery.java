@@ -11,6 +11,7 @@ package edu.osu.cse.presto.android.gator.gui;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
 import edu.osu.cse.presto.android.gator.Hierarchy;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.CompactFlowgraph;
 import edu.osu.cse.presto.android.gator.gui.flowgraph.Flowgraph;
 import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.*;
 import edu.osu.cse.presto.android.gator.gui.listener.ListenerSpecification;
@@ -33,6 +34,7 @@ public class DemandVariableValueQuery implements VariableValueQueryInterface {
   private GraphUtil graphUtil;
   private Hierarchy hier;
   private ListenerSpecification listenerSpec;
+  private BackwardValueIndex index;
 
   DemandVariableValueQuery(Flowgraph flowgraph, FixpointSolver solver) {
     this.flowgraph = flowgraph;
@@ -50,11 +52,30 @@ public class DemandVariableValueQuery implements VariableValueQueryInterface {
     return theInstance;
   }
 
+  /**
+   * @return the index over the frozen flowgraph, or null if there is no
+   * current one that holds n
+   */
+  synchronized BackwardValueIndex indexFor(NNode n) {
+    CompactFlowgraph g = flowgraph.getCompactFlowgraph();
+    if (g == null || !g.isCurrent() || !g.contains(n)) {
+      return null;
+    }
+    if (index == null || !index.isCurrent() || !index.contains(n)) {
+      index = new BackwardValueIndex(g, solver);
+    }
+    return index;
+  }
+
   Set<NObjectNode> valueSetForRefTypes(Local local) {
     NVarNode varNode = flowgraph.lookupVarNode(local);
     if (varNode == null) {
       return Collections.emptySet();
     }
+    BackwardValueIndex index = indexFor(varNode);
+    if (index != null) {
+      return Sets.newHashSet(index.objectValues(varNode));
+    }
     Set<NObjectNode> pts = Sets.newHashSet();
 
     // basic reachability
@@ -93,6 +114,10 @@ public class DemandVariableValueQuery implements VariableValueQueryInterface {
     if (varNode == null) {
       return Collections.emptySet();
     }
+    BackwardValueIndex index = indexFor(varNode);
+    if (index != null) {
+      return Sets.newHashSet(index.idValues(varNode));
+    }
     Set<NIdNode> pts = Sets.newHashSet();
     for (NNode node : graphUtil.backwardReachableNodes(varNode)) {
       if (node instanceof NIdNode) {
@@ -31,6 +31,16 @@ import java.util.*;
  * nodes. First, it performs simple graph reachability. Then, it does the
  * actual fixed-point computation. Right now, it is iterative but seems to be
  * pretty efficient.
+ * <p>
+ * Reachability is not computed per source: the sources of all passes are
+ * propagated along the flowgraph together, see ReachingSources, and each pass
+ * looks at the (source, op node) pairs it finds there. When a SetListener
+ * adds edges, only the difference is propagated and only the op nodes it
+ * reaches are looked at again.
+ * <p>
+ * Only objects that can reach the listener parameter of some SetListener are
+ * listener sources. If the sets still outgrow Configs.solverMemoryMB, the
+ * listeners fall back to one graph traversal per candidate object.
  */
 public class FixpointSolver {
   public Flowgraph flowgraph;
@@ -81,6 +91,28 @@ public class FixpointSolver {
 
   public Map<NNode, Set<NOpNode>> viewProducers;
 
+  // Which sources reach which nodes; kept up to date while the solver adds
+  // edges
+  ReachingSources reachingSources;
+
+  // whether listener candidates are sources in reachingSources, or are
+  // traversed from one by one
+  boolean listenersAsSources = true;
+
+  // op nodes by their parameter and receiver
+  Map<NNode, Set<NOpNode>> operandUses;
+
+  // tags of the sources in reachingSources, i.e. the passes they take part in
+  static final int LAYOUT_ID = 1;
+  static final int MENU_ID = 1 << 1;
+  static final int WINDOW = 1 << 2;
+  static final int OPTIONS_MENU = 1 << 3;
+  static final int CONTEXT_MENU = 1 << 4;
+  static final int VIEW_ID = 1 << 5;
+  static final int ANONYMOUS_ID = 1 << 6;
+  static final int VIEW_PRODUCER = 1 << 7;
+  static final int LISTENER = 1 << 8;
+
   public FixpointSolver(Flowgraph g) {
     this.flowgraph = g;
     this.graphUtil = GraphUtil.v();
@@ -92,6 +124,7 @@ public class FixpointSolver {
     // Pre
     preSolveInit();
 
+    reachingSources = new ReachingSources();
     solveCore();
   }
 
@@ -120,7 +153,7 @@ public class FixpointSolver {
     solutionResults = Maps.newHashMap();
 
     solutionListeners = Maps.newHashMap();
-    for (NOpNode n : NOpNode.getNodes(NSetListenerOpNode.class)) {
+    for (NOpNode n : flowgraph.opNodes.getNodes(NSetListenerOpNode.class)) {
       solutionListeners.put(n, new HashSet<NNode>());
     }
 
@@ -130,29 +163,78 @@ public class FixpointSolver {
   }
 
   void computePathsFromViewProducerToViewConsumer() {
-    viewAndListenerAsParameterAndReceiverReachability();
+    computePathsFromViewProducerToViewConsumer(null);
+  }
+
+  /**
+   * @param opNodes the op nodes whose reaching views and listeners may have
+   *                changed, or null for all op nodes
+   */
+  void computePathsFromViewProducerToViewConsumer(Set<NOpNode> opNodes) {
+    viewAndListenerAsParameterAndReceiverReachability(opNodes == null ? flowgraph.opNodes.getNodes() : opNodes);
 
     // reverse
-    reverseParameterReachability();
-    reverseReceiverReachability();
-    reverseListenerReachability();
+    reverseParameterReachability(opNodes);
+    reverseReceiverReachability(opNodes);
+    reverseListenerReachability(opNodes);
 
     // solution
-    solutionParameterReachability();
-    solutionReceiverReachability();
+    solutionParameterReachability(opNodes);
+    solutionReceiverReachability(opNodes);
     solutionResultsReachability();
-    solutionListenersReachability();
+    solutionListenersReachability(opNodes);
+  }
+
+  /**
+   * Brings the paths up to date after nodes and edges were added: new view
+   * producers and listeners become sources, the added edges are propagated,
+   * and only the op nodes whose reaching sources, or whose operands' reaching
+   * sources, grew are looked at again.
+   */
+  void updatePathsFromViewProducerToViewConsumer() {
+    registerViewSources();
+    if (propagateSources()) {
+      computePathsFromViewProducerToViewConsumer();
+      return;
+    }
+    if (operandUses == null) {
+      operandUses = Maps.newHashMap();
+      for (NOpNode opNode : flowgraph.opNodes.getNodes()) {
+        if (opNode.hasParameter()) {
+          MultiMapUtil.addKeyAndHashSetElement(operandUses, opNode.getParameter(), opNode);
+        }
+        if (opNode.hasReceiver()) {
+          MultiMapUtil.addKeyAndHashSetElement(operandUses, opNode.getReceiver(), opNode);
+        }
+      }
+    }
+    Set<NOpNode> opNodes = Sets.newHashSet();
+    for (NNode n : reachingSources.pollChanged()) {
+      if (n instanceof NOpNode) {
+        opNodes.add((NOpNode) n);
+      }
+      Set<NOpNode> uses = operandUses.get(n);
+      if (uses != null) {
+        opNodes.addAll(uses);
+      }
+    }
+    if (!listenersAsSources) {
+      // the new edges may connect listeners that are not sources
+      opNodes.addAll(flowgraph.opNodes.getNodes(NSetListenerOpNode.class));
+    }
+    // menus handed on to reachingReceiverViews
+    opNodes.addAll(reachingOptionsMenus.keySet());
+    opNodes.addAll(reachingContextMenus.keySet());
+    computePathsFromViewProducerToViewConsumer(opNodes);
   }
 
   public void solveCore() {
-    // compute
-    layoutIdReachability();
-    menuIdReachability();
+    long startTime = System.nanoTime();
+    registerSources();
 
-    windowReachability();
-    optionsMenuReachability();
-    contextMenuReachability();
-    viewIdReachability();
+    // compute
+    reachability(flowgraph.opNodes.getNodes(),
+        LAYOUT_ID | MENU_ID | WINDOW | OPTIONS_MENU | CONTEXT_MENU | VIEW_ID | ANONYMOUS_ID);
 
     computePathsFromViewProducerToViewConsumer();
 
@@ -160,12 +242,206 @@ public class FixpointSolver {
     processInflaterCalls();
 
     // propagation
-    viewAndListenerPropagation();
+    int rounds = viewAndListenerPropagation();
+
+    System.out.println("[FixpointSolver] " + reachingSources + ", " + rounds + " rounds, "
+        + ((System.nanoTime() - startTime) * 1.0e-09) + " sec");
+  }
+
+  /**
+   * Registers the sources of all reachability passes and propagates them.
+   */
+  void registerSources() {
+    for (NLayoutIdNode layoutIdNode : flowgraph.allNLayoutIdNodes.values()) {
+      reachingSources.addSource(layoutIdNode, LAYOUT_ID);
+    }
+    for (NMenuIdNode menuIdNode : flowgraph.allNMenuIdNodes.values()) {
+      reachingSources.addSource(menuIdNode, MENU_ID);
+    }
+    for (NWindowNode windowNode : NWindowNode.windowNodes) {
+      reachingSources.addSource(windowNode, WINDOW);
+    }
+    for (NOptionsMenuNode optionsMenu : flowgraph.activityClassToOptionsMenu.values()) {
+      reachingSources.addSource(optionsMenu, OPTIONS_MENU);
+    }
+    for (NContextMenuNode contextMenu : flowgraph.menuVarNodeToContextMenus.values()) {
+      reachingSources.addSource(contextMenu, CONTEXT_MENU);
+    }
+    for (NWidgetIdNode viewIdNode : flowgraph.allNWidgetIdNodes.values()) {
+      reachingSources.addSource(viewIdNode, VIEW_ID);
+    }
+    for (NAnonymousIdNode anonymousIdNode : flowgraph.anonymousIdNodes.values()) {
+      reachingSources.addSource(anonymousIdNode, ANONYMOUS_ID);
+    }
+    registerViewSources();
+    propagateSources();
+    reachingSources.pollChanged();
+  }
+
+  /**
+   * Propagates the sources. If the sets outgrow Configs.solverMemoryMB, starts
+   * over without listener sources.
+   *
+   * @return whether it started over, i.e. the sets were rebuilt from scratch
+   */
+  boolean propagateSources() {
+    reachingSources.propagate();
+    long budget = Configs.solverMemoryMB * (1L << 20);
+    if (!listenersAsSources || reachingSources.footprint() <= budget) {
+      return false;
+    }
+    Logger.warn("[FixpointSolver] " + reachingSources + " over " + Configs.solverMemoryMB
+        + " MB, traversing from listeners instead");
+    listenersAsSources = false;
+    reachingSources = new ReachingSources();
+    registerSources();
+    return true;
+  }
+
+  /**
+   * Registers the nodes that can "produce" view objects and the listener
+   * candidates. Already registered ones are kept.
+   */
+  void registerViewSources() {
+    BitSet candidates = listenersAsSources ? listenerCandidates() : null;
+    for (NNode n : flowgraph.allNNodes) {
+      int tags = 0;
+      if (n instanceof NViewAllocNode || n instanceof NInflNode || n instanceof NOptionsMenuNode
+          || n instanceof NContextMenuNode || n instanceof NFindView1OpNode
+          || n instanceof NFindView2OpNode || n instanceof NFindView3OpNode
+          || n instanceof NInflate1OpNode) {
+        tags |= VIEW_PRODUCER;
+      }
+      if (candidates != null && candidates.get(n.id)) {
+        tags |= LISTENER;
+      }
+      if (tags != 0) {
+        reachingSources.addSource(n, tags);
+      }
+    }
+  }
+
+  /**
+   * The ids of the object nodes that can reach the listener parameter of some
+   * SetListener, i.e. those any listenerReachability could accept. This is
+   * backwardReachableNodes from all the parameters at once.
+   */
+  BitSet listenerCandidates() {
+    BitSet visited = new BitSet();
+    BitSet candidates = new BitSet();
+    ArrayDeque<NNode> worklist = new ArrayDeque<>();
+    for (NOpNode setListener : flowgraph.opNodes.getNodes(NSetListenerOpNode.class)) {
+      if (!setListener.hasParameter()) {
+        continue;
+      }
+      NNode parameter = setListener.getParameter();
+      if (!visited.get(parameter.id)) {
+        visited.set(parameter.id);
+        worklist.add(parameter);
+        if (parameter instanceof NObjectNode) {
+          candidates.set(parameter.id);
+        }
+      }
+    }
+    while (!worklist.isEmpty()) {
+      NNode n = worklist.poll();
+      for (int i = 0, numPred = n.getNumberOfPredecessors(); i < numPred; i++) {
+        NNode p = n.getPredecessor(i);
+        if (visited.get(p.id)) {
+          continue;
+        }
+        visited.set(p.id);
+        if (p instanceof NObjectNode) {
+          candidates.set(p.id);
+        }
+        // an op node reaches the parameter itself, but nothing flows through it
+        if (!(p instanceof NOpNode)) {
+          worklist.add(p);
+        }
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * Whether reachableNodes(source).contains(n); traverses if source is not
+   * registered.
+   */
+  boolean reaches(NNode source, NNode n) {
+    if (reachingSources.indexOf(source) >= 0) {
+      return reachingSources.reaches(source, n);
+    }
+    return graphUtil.reaches(source, n);
+  }
+
+  /**
+   * Runs the passes selected by tagMask on every (source, op node) pair where
+   * the source reaches one of the given op nodes.
+   */
+  void reachability(Collection<NOpNode> opNodes, int tagMask) {
+    for (NOpNode opNode : opNodes) {
+      SourceSet sources = reachingSources.reachingSources(opNode);
+      for (int i = sources.nextSetBit(0); i >= 0; i = sources.nextSetBit(i + 1)) {
+        reachability(reachingSources.source(i), reachingSources.tags(i) & tagMask, opNode);
+      }
+      // a source reaches itself
+      int self = reachingSources.indexOf(opNode);
+      if (self >= 0 && !sources.get(self)) {
+        reachability(opNode, reachingSources.tags(self) & tagMask, opNode);
+      }
+    }
+  }
+
+  void reachability(NNode source, int tags, NOpNode opNode) {
+    if ((tags & LAYOUT_ID) != 0) {
+      layoutIdReachability((NLayoutIdNode) source, opNode);
+    }
+    if ((tags & MENU_ID) != 0) {
+      menuIdReachability((NMenuIdNode) source, opNode);
+    }
+    if ((tags & WINDOW) != 0) {
+      windowReachability((NWindowNode) source, opNode);
+    }
+    if ((tags & OPTIONS_MENU) != 0) {
+      optionsMenuReachability((NOptionsMenuNode) source, opNode);
+    }
+    if ((tags & CONTEXT_MENU) != 0) {
+      contextMenuReachability((NContextMenuNode) source, opNode);
+    }
+    if ((tags & VIEW_ID) != 0) {
+      viewIdReachability((NWidgetIdNode) source, opNode);
+    }
+    if ((tags & ANONYMOUS_ID) != 0) {
+      anonymousIdReachability((NAnonymousIdNode) source, opNode);
+    }
+    if ((tags & VIEW_PRODUCER) != 0) {
+      parameterAndReceiverViewReachability(source, opNode);
+    }
+    if ((tags & LISTENER) != 0) {
+      listenerReachability(source, opNode);
+    }
+  }
+
+  /**
+   * The entries of map for the given keys, or all entries if keys is null.
+   */
+  static <V> Collection<Map.Entry<NOpNode, V>> entries(Map<NOpNode, V> map, Set<NOpNode> keys) {
+    if (keys == null) {
+      return map.entrySet();
+    }
+    List<Map.Entry<NOpNode, V>> entries = Lists.newArrayList();
+    for (NOpNode key : keys) {
+      V value = map.get(key);
+      if (value != null) {
+        entries.add(Maps.immutableEntry(key, value));
+      }
+    }
+    return entries;
   }
 
   // AddView1, AddView2
-  void solutionParameterReachability() {
-    for (Map.Entry<NOpNode, Set<NNode>> entry : reachingParameterViews.entrySet()) {
+  void solutionParameterReachability(Set<NOpNode> keys) {
+    for (Map.Entry<NOpNode, Set<NNode>> entry : entries(reachingParameterViews, keys)) {
       NOpNode key = entry.getKey();
       Set<NNode> value = solutionParameters.get(key);
       for (NNode n : entry.getValue()) {
@@ -189,8 +465,8 @@ public class FixpointSolver {
   }
 
   // AddView2, SetId, SetText, FindView1, FindView3
-  void solutionReceiverReachability() {
-    for (Map.Entry<NOpNode, Set<NNode>> entry : reachingReceiverViews.entrySet()) {
+  void solutionReceiverReachability(Set<NOpNode> keys) {
+    for (Map.Entry<NOpNode, Set<NNode>> entry : entries(reachingReceiverViews, keys)) {
       NOpNode key = entry.getKey();
       Set<NNode> value = solutionReceivers.get(key);
       for (NNode n : entry.getValue()) {
@@ -222,10 +498,10 @@ public class FixpointSolver {
 
   // Inflate1, FindView1/2/3
   void solutionResultsReachability() {
-    solutionResultsReachability(NOpNode.getNodes(NInflate1OpNode.class));
-    solutionResultsReachability(NOpNode.getNodes(NFindView1OpNode.class));
-    solutionResultsReachability(NOpNode.getNodes(NFindView2OpNode.class));
-    solutionResultsReachability(NOpNode.getNodes(NFindView3OpNode.class));
+    solutionResultsReachability(flowgraph.opNodes.getNodes(NInflate1OpNode.class));
+    solutionResultsReachability(flowgraph.opNodes.getNodes(NFindView1OpNode.class));
+    solutionResultsReachability(flowgraph.opNodes.getNodes(NFindView2OpNode.class));
+    solutionResultsReachability(flowgraph.opNodes.getNodes(NFindView3OpNode.class));
   }
 
   // Add empty set to results map
@@ -242,9 +518,9 @@ public class FixpointSolver {
     }
   }
 
-  void solutionListenersReachability() {
+  void solutionListenersReachability(Set<NOpNode> keys) {
     // SetListener
-    for (Map.Entry<NOpNode, Set<NNode>> entry : reachingListeners.entrySet()) {
+    for (Map.Entry<NOpNode, Set<NNode>> entry : entries(reachingListeners, keys)) {
       NOpNode setListener = entry.getKey();
       Set<NNode> reachables = entry.getValue();
       for (NNode n : reachables) {
@@ -254,7 +530,7 @@ public class FixpointSolver {
         NObjectNode listenerObject = (NObjectNode) n;
 
         // Sanity check. If fail, exception.
-        if (graphUtil.reachableNodes(listenerObject).contains(setListener.getParameter())) {
+        if (reaches(listenerObject, setListener.getParameter())) {
           if (!listenerSpecs.isListenerType(listenerObject.getClassType())) {
             String msg = "[WARNING] Non-listener " + listenerObject + " reaching " + setListener;
             Debug.v().printf("%s\n", msg);
@@ -271,8 +547,9 @@ public class FixpointSolver {
     }
   }
 
-  void reverseReachbility(Map<NOpNode, Set<NNode>> map, Map<NOpNode, Set<NOpNode>> reverseMap) {
-    for (Map.Entry<NOpNode, Set<NNode>> entry : map.entrySet()) {
+  void reverseReachbility(Map<NOpNode, Set<NNode>> map, Map<NOpNode, Set<NOpNode>> reverseMap,
+                          Set<NOpNode> keys) {
+    for (Map.Entry<NOpNode, Set<NNode>> entry : entries(map, keys)) {
       NOpNode target = entry.getKey();
       for (NNode n : entry.getValue()) {
         if (!(n instanceof NOpNode)) {
@@ -289,16 +566,16 @@ public class FixpointSolver {
     }
   }
 
-  void reverseParameterReachability() {
-    reverseReachbility(reachingParameterViews, reachedParameterViews);
+  void reverseParameterReachability(Set<NOpNode> keys) {
+    reverseReachbility(reachingParameterViews, reachedParameterViews, keys);
   }
 
-  void reverseReceiverReachability() {
-    reverseReachbility(reachingReceiverViews, reachedReceiverViews);
+  void reverseReceiverReachability(Set<NOpNode> keys) {
+    reverseReachbility(reachingReceiverViews, reachedReceiverViews, keys);
   }
 
-  void reverseListenerReachability() {
-    reverseReachbility(reachingListeners, reachedListeners);
+  void reverseListenerReachability(Set<NOpNode> keys) {
+    reverseReachbility(reachingListeners, reachedListeners, keys);
   }
 
   /**
@@ -307,104 +584,67 @@ public class FixpointSolver {
    * nodes are only created for application code. The result is saved in the
    * map reachingLayoutIds.
    */
-  void layoutIdReachability() {
-    for (NLayoutIdNode layoutIdNode : flowgraph.allNLayoutIdNodes.values()) {
-      for (NNode target : graphUtil.reachableNodes(layoutIdNode)) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
-        // NOTE: setId() could use layout id as parameter as well.
-        if (opNode.consumesLayoutId()) {
-          Set<NLayoutIdNode> layouts = reachingLayoutIds.get(opNode);
-          if (layouts == null) {
-            layouts = Sets.newHashSet();
-            reachingLayoutIds.put(opNode, layouts);
-          }
-          layouts.add(layoutIdNode);
-        } else {
-          Logger.warn(layoutIdNode + " reaching " + opNode);
-        }
-      }
+  void layoutIdReachability(NLayoutIdNode layoutIdNode, NOpNode opNode) {
+    // NOTE: setId() could use layout id as parameter as well.
+    if (opNode.consumesLayoutId()) {
+      Set<NLayoutIdNode> layouts = reachingLayoutIds.get(opNode);
+      if (layouts == null) {
+        layouts = Sets.newHashSet();
+        reachingLayoutIds.put(opNode, layouts);
+      }
+      layouts.add(layoutIdNode);
+    } else {
+      Logger.warn(layoutIdNode + " reaching " + opNode);
     }
   }
 
   /**
    * Look at all menu IDs and see what operation nodes use them.
    */
-  void menuIdReachability() {
-    for (NMenuIdNode menuIdNode : flowgraph.allNMenuIdNodes.values()) {
-      for (NNode target : graphUtil.reachableNodes(menuIdNode)) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
-        if (opNode.consumesMenuId()) {
-          Set<NMenuIdNode> menus = reachingMenuIds.get(opNode);
-          if (menus == null) {
-            menus = Sets.newHashSet();
-            reachingMenuIds.put(opNode, menus);
-          }
-          menus.add(menuIdNode);
-        } else {
-          Logger.warn(menuIdNode + " reaching " + opNode);
-        }
-      }
+  void menuIdReachability(NMenuIdNode menuIdNode, NOpNode opNode) {
+    if (opNode.consumesMenuId()) {
+      Set<NMenuIdNode> menus = reachingMenuIds.get(opNode);
+      if (menus == null) {
+        menus = Sets.newHashSet();
+        reachingMenuIds.put(opNode, menus);
+      }
+      menus.add(menuIdNode);
+    } else {
+      Logger.warn(menuIdNode + " reaching " + opNode);
     }
   }
 
-  void windowReachability() {
-    for (NWindowNode windowNode : NWindowNode.windowNodes) {
-      Set<NNode> reachables = graphUtil.reachableNodes(windowNode);
-      for (NNode target : reachables) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
-        if ((opNode instanceof NInflate2OpNode || opNode instanceof NAddView1OpNode
-            || opNode instanceof NFindView2OpNode) && reachables.contains(opNode.getReceiver())) {
-          MultiMapUtil.addKeyAndHashSetElement(reachingWindows, opNode, windowNode);
-        } else if (opNode instanceof NSetListenerOpNode
-            && reachables.contains(opNode.getParameter())) {
-          if (Configs.debugCodes.contains(Debug.LISTENER_DEBUG)) {
-            System.out.println("[WindowAsListener] " + windowNode + " -> " + opNode);
-          }
-          MultiMapUtil.addKeyAndHashSetElement(reachingListeners, opNode, windowNode);
-        } else {
-          //throw new RuntimeException(objectNode + " reaching " + opNode);
-        }
-      }
+  void windowReachability(NWindowNode windowNode, NOpNode opNode) {
+    if ((opNode instanceof NInflate2OpNode || opNode instanceof NAddView1OpNode
+        || opNode instanceof NFindView2OpNode)
+        && reachingSources.reaches(windowNode, opNode.getReceiver())) {
+      MultiMapUtil.addKeyAndHashSetElement(reachingWindows, opNode, windowNode);
+    } else if (opNode instanceof NSetListenerOpNode
+        && reachingSources.reaches(windowNode, opNode.getParameter())) {
+      if (Configs.debugCodes.contains(Debug.LISTENER_DEBUG)) {
+        System.out.println("[WindowAsListener] " + windowNode + " -> " + opNode);
+      }
+      MultiMapUtil.addKeyAndHashSetElement(reachingListeners, opNode, windowNode);
+    } else {
+      //throw new RuntimeException(objectNode + " reaching " + opNode);
     }
   }
 
-  void optionsMenuReachability() {
-    for (NOptionsMenuNode optionsMenu : flowgraph.activityClassToOptionsMenu.values()) {
-      for (NNode target : graphUtil.reachableNodes(optionsMenu)) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
-        if (opNode instanceof NFindView1OpNode || opNode instanceof NFindView3OpNode
-            || opNode instanceof NAddView2OpNode || opNode instanceof NMenuInflateOpNode) {
-          Set<NOptionsMenuNode> optionsMenus = reachingOptionsMenus.get(opNode);
-          if (optionsMenus == null) {
-            optionsMenus = Sets.newHashSet();
-            reachingOptionsMenus.put(opNode, optionsMenus);
-          }
-          optionsMenus.add(optionsMenu);
-        } else {
-          Logger.warn(optionsMenu + " reaching " + opNode);
-        }
+  void optionsMenuReachability(NOptionsMenuNode optionsMenu, NOpNode opNode) {
+    if (opNode instanceof NFindView1OpNode || opNode instanceof NFindView3OpNode
+        || opNode instanceof NAddView2OpNode || opNode instanceof NMenuInflateOpNode) {
+      Set<NOptionsMenuNode> optionsMenus = reachingOptionsMenus.get(opNode);
+      if (optionsMenus == null) {
+        optionsMenus = Sets.newHashSet();
+        reachingOptionsMenus.put(opNode, optionsMenus);
       }
+      optionsMenus.add(optionsMenu);
+    } else {
+      Logger.warn(optionsMenu + " reaching " + opNode);
     }
   }
 
-  void contextMenuReachability() {
-    for (NContextMenuNode contextMenu : flowgraph.menuVarNodeToContextMenus.values()) {
-      contextMenuReachability(contextMenu);
-    }
-  }
-
+  // For a context menu created while solving, so not a source yet
   Set<NOpNode> contextMenuReachability(NContextMenuNode contextMenu) {
     Set<NOpNode> opNodes = Sets.newHashSet();
     for (NNode target : graphUtil.reachableNodes(contextMenu)) {
@@ -412,83 +652,64 @@ public class FixpointSolver {
         continue;
       }
       NOpNode opNode = (NOpNode) target;
-      if (opNode instanceof NFindView1OpNode || opNode instanceof NFindView3OpNode
-          || opNode instanceof NAddView2OpNode || opNode instanceof NMenuInflateOpNode) {
-        Set<NContextMenuNode> contextMenus = reachingContextMenus.get(opNode);
-        if (contextMenus == null) {
-          contextMenus = Sets.newHashSet();
-          reachingContextMenus.put(opNode, contextMenus);
-        }
-        contextMenus.add(contextMenu);
+      if (contextMenuReachability(contextMenu, opNode)) {
         opNodes.add(opNode);
-      } else {
-        Logger.warn("ContextMenu reaches " + opNode);
       }
     }
     return opNodes;
   }
 
-  void viewIdReachability() {
-    for (NWidgetIdNode viewIdNode : flowgraph.allNWidgetIdNodes.values()) {
-      for (NNode target : graphUtil.reachableNodes(viewIdNode)) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
-        if (opNode instanceof NFindView1OpNode || opNode instanceof NFindView2OpNode
-            || opNode instanceof NSetIdOpNode) {
-          Set<NIdNode> views = reachingViewIds.get(opNode);
-          if (views == null) {
-            views = Sets.newHashSet();
-            reachingViewIds.put(opNode, views);
-          }
-          views.add(viewIdNode);
-        } else if (opNode instanceof NInflate2OpNode) {
-          // This is basically activity.setContentView(viewId). Weirdly, this
-          // seems to be allowed, but it does not affect our analysis. Ignore it
-          // for now.
-          if (Configs.verbose) {
-            System.out.println("viewId " + viewIdNode + " used for " + opNode);
-          }
-        } else {
-          Logger.warn(viewIdNode + " reaching " + opNode);
-        }
+  boolean contextMenuReachability(NContextMenuNode contextMenu, NOpNode opNode) {
+    if (opNode instanceof NFindView1OpNode || opNode instanceof NFindView3OpNode
+        || opNode instanceof NAddView2OpNode || opNode instanceof NMenuInflateOpNode) {
+      Set<NContextMenuNode> contextMenus = reachingContextMenus.get(opNode);
+      if (contextMenus == null) {
+        contextMenus = Sets.newHashSet();
+        reachingContextMenus.put(opNode, contextMenus);
       }
+      contextMenus.add(contextMenu);
+      return true;
     }
-    for (NAnonymousIdNode anonymousIdNode : flowgraph.anonymousIdNodes.values()) {
-      for (NNode target : graphUtil.reachableNodes(anonymousIdNode)) {
-        if (!(target instanceof NOpNode)) {
-          continue;
-        }
-        NOpNode opNode = (NOpNode) target;
-        if (opNode instanceof NFindView1OpNode) {
-          MultiMapUtil.addKeyAndHashSetElement(reachingViewIds, opNode, anonymousIdNode);
-        } else {
-          Logger.warn(anonymousIdNode + " reaching " + opNode);
-        }
+    Logger.warn("ContextMenu reaches " + opNode);
+    return false;
+  }
+
+  void viewIdReachability(NWidgetIdNode viewIdNode, NOpNode opNode) {
+    if (opNode instanceof NFindView1OpNode || opNode instanceof NFindView2OpNode
+        || opNode instanceof NSetIdOpNode) {
+      Set<NIdNode> views = reachingViewIds.get(opNode);
+      if (views == null) {
+        views = Sets.newHashSet();
+        reachingViewIds.put(opNode, views);
+      }
+      views.add(viewIdNode);
+    } else if (opNode instanceof NInflate2OpNode) {
+      // This is basically activity.setContentView(viewId). Weirdly, this
+      // seems to be allowed, but it does not affect our analysis. Ignore it
+      // for now.
+      if (Configs.verbose) {
+        System.out.println("viewId " + viewIdNode + " used for " + opNode);
       }
+    } else {
+      Logger.warn(viewIdNode + " reaching " + opNode);
+    }
+  }
+
+  void anonymousIdReachability(NAnonymousIdNode anonymousIdNode, NOpNode opNode) {
+    if (opNode instanceof NFindView1OpNode) {
+      MultiMapUtil.addKeyAndHashSetElement(reachingViewIds, opNode, anonymousIdNode);
+    } else {
+      Logger.warn(anonymousIdNode + " reaching " + opNode);
     }
   }
 
   // For both AddView1 and AddView2, there is a formal parameter that is a view.
   // In AddView2, this is the *child* to be added.
-  void viewAndListenerAsParameterAndReceiverReachability() {
-    // Find all nodes that can "produce" view objects
-    for (NNode n : flowgraph.allNNodes) {
-      if (n instanceof NViewAllocNode || n instanceof NInflNode || n instanceof NOptionsMenuNode
-          || n instanceof NContextMenuNode) {
-        parameterAndReceiverViewReachability(n);
-      } else if (n instanceof NOpNode) {
-        NOpNode opNode = (NOpNode) n;
-        if (opNode instanceof NFindView1OpNode || opNode instanceof NFindView2OpNode
-            || opNode instanceof NFindView3OpNode || opNode instanceof NInflate1OpNode) {
-          parameterAndReceiverViewReachability(n);
-        }
-      }
-      // Any object could be a listener
-      if (n instanceof NObjectNode) {
-        listenerReachability(n);
-      }
+  void viewAndListenerAsParameterAndReceiverReachability(Collection<NOpNode> opNodes) {
+    // view producers and listeners, see registerViewSources
+    reachability(opNodes, VIEW_PRODUCER | LISTENER);
+    if (!listenersAsSources) {
+      listenerTraversal(opNodes);
     }
     // patch in some special cases
     // OptionsMenu as receiver
@@ -497,6 +718,34 @@ public class FixpointSolver {
     propagateContextMenuToReceivers();
   }
 
+  /**
+   * listenerReachability for the listener candidates that are not sources,
+   * one traversal per candidate.
+   */
+  void listenerTraversal(Collection<NOpNode> opNodes) {
+    List<NOpNode> setListeners = Lists.newArrayList();
+    for (NOpNode opNode : opNodes) {
+      if (opNode instanceof NSetListenerOpNode) {
+        setListeners.add(opNode);
+      }
+    }
+    if (setListeners.isEmpty()) {
+      return;
+    }
+    BitSet candidates = listenerCandidates();
+    for (NNode n : flowgraph.allNNodes) {
+      if (!candidates.get(n.id) || reachingSources.indexOf(n) >= 0) {
+        continue;
+      }
+      Set<NNode> reachables = graphUtil.reachableNodes(n);
+      for (NOpNode setListener : setListeners) {
+        if (reachables.contains(setListener.getParameter())) {
+          MultiMapUtil.addKeyAndHashSetElement(reachingListeners, setListener, n);
+        }
+      }
+    }
+  }
+
   void propagateOptionsMenuToReceivers() {
     for (Map.Entry<NOpNode, Set<NOptionsMenuNode>> entry : reachingOptionsMenus.entrySet()) {
       NOpNode key = entry.getKey();
@@ -523,43 +772,29 @@ public class FixpointSolver {
     }
   }
 
-  void parameterAndReceiverViewReachability(NNode source) {
-    Set<NNode> reachables = graphUtil.reachableNodes(source);
-    for (NNode target : reachables) {
-      if (!(target instanceof NOpNode)) {
-        continue;
-      }
-      NOpNode opNode = (NOpNode) target;
-      // View as parameter
-      if (opNode instanceof NAddView1OpNode || (opNode instanceof NAddView2OpNode
-          && reachables.contains(opNode.getParameter()))) {
-        MultiMapUtil.addKeyAndHashSetElement(reachingParameterViews, opNode, source);
-      } else {
-        // Maybe SetListener
-        listenerReachability(source, opNode, reachables);
-      }
-      // View as receiver
-      if (opNode instanceof NFindView1OpNode || opNode instanceof NFindView3OpNode
-          || opNode instanceof NSetIdOpNode || opNode instanceof NSetTextOpNode || (
-          opNode instanceof NSetListenerOpNode && reachables.contains(opNode.getReceiver())) || (
-          opNode instanceof NAddView2OpNode && reachables.contains(opNode.getReceiver()))) {
-        MultiMapUtil.addKeyAndHashSetElement(reachingReceiverViews, opNode, source);
-      }
-    }
-  }
-
-  void listenerReachability(NNode source) {
-    Set<NNode> reachables = graphUtil.reachableNodes(source);
-    for (NNode target : reachables) {
-      if (!(target instanceof NOpNode)) {
-        continue;
-      }
-      listenerReachability(source, (NOpNode) target, reachables);
+  void parameterAndReceiverViewReachability(NNode source, NOpNode opNode) {
+    // View as parameter
+    if (opNode instanceof NAddView1OpNode || (opNode instanceof NAddView2OpNode
+        && reachingSources.reaches(source, opNode.getParameter()))) {
+      MultiMapUtil.addKeyAndHashSetElement(reachingParameterViews, opNode, source);
+    } else {
+      // Maybe SetListener
+      listenerReachability(source, opNode);
+    }
+    // View as receiver
+    if (opNode instanceof NFindView1OpNode || opNode instanceof NFindView3OpNode
+        || opNode instanceof NSetIdOpNode || opNode instanceof NSetTextOpNode || (
+        opNode instanceof NSetListenerOpNode
+            && reachingSources.reaches(source, opNode.getReceiver())) || (
+        opNode instanceof NAddView2OpNode
+            && reachingSources.reaches(source, opNode.getReceiver()))) {
+      MultiMapUtil.addKeyAndHashSetElement(reachingReceiverViews, opNode, source);
     }
   }
 
-  void listenerReachability(NNode source, NOpNode target, Set<NNode> reachables) {
-    if (target instanceof NSetListenerOpNode && reachables.contains(target.getParameter())) {
+  void listenerReachability(NNode source, NOpNode target) {
+    if (target instanceof NSetListenerOpNode
+        && reachingSources.reaches(source, target.getParameter())) {
       // view as listener parameter
       MultiMapUtil.addKeyAndHashSetElement(reachingListeners, target, source);
     }
@@ -937,56 +1172,63 @@ public class FixpointSolver {
   }
 
   // Now, we are done with inflation. Let's process other NOpNodes
-  void viewAndListenerPropagation() {
+  int viewAndListenerPropagation() {
+    int rounds = 0;
     while (true) {
+      rounds++;
       boolean changed = false;
-      for (NOpNode findView1 : NOpNode.getNodes(NFindView1OpNode.class)) {
+      for (NOpNode findView1 : flowgraph.opNodes.getNodes(NFindView1OpNode.class)) {
         if (processFindView1((NFindView1OpNode) findView1)) {
           changed = true;
         }
       }
-      for (NOpNode findView2 : NOpNode.getNodes(NFindView2OpNode.class)) {
+      for (NOpNode findView2 : flowgraph.opNodes.getNodes(NFindView2OpNode.class)) {
         if (processFindView2((NFindView2OpNode) findView2)) {
           changed = true;
         }
       }
-      for (NOpNode findView3 : NOpNode.getNodes(NFindView3OpNode.class)) {
+      for (NOpNode findView3 : flowgraph.opNodes.getNodes(NFindView3OpNode.class)) {
         if (processFindView3((NFindView3OpNode) findView3)) {
           changed = true;
         }
       }
-      for (NOpNode addView1 : NOpNode.getNodes(NAddView1OpNode.class)) {
+      for (NOpNode addView1 : flowgraph.opNodes.getNodes(NAddView1OpNode.class)) {
         if (processAddView1((NAddView1OpNode) addView1)) {
           changed = true;
         }
       }
-      for (NOpNode addView2 : NOpNode.getNodes(NAddView2OpNode.class)) {
+      for (NOpNode addView2 : flowgraph.opNodes.getNodes(NAddView2OpNode.class)) {
         if (processAddView2((NAddView2OpNode) addView2)) {
           changed = true;
         }
       }
-      for (NOpNode setId : NOpNode.getNodes(NSetIdOpNode.class)) {
+      for (NOpNode setId : flowgraph.opNodes.getNodes(NSetIdOpNode.class)) {
         if (processSetId((NSetIdOpNode) setId)) {
           changed = true;
         }
       }
-      for (NOpNode setText : NOpNode.getNodes(NSetTextOpNode.class)) {
+      for (NOpNode setText : flowgraph.opNodes.getNodes(NSetTextOpNode.class)) {
         if (processSetText((NSetTextOpNode) setText)) {
           changed = true;
         }
       }
       // SetListener: need to recompute path summary if anything changes
-      for (NOpNode setListener : NOpNode.getNodes(NSetListenerOpNode.class)) {
+      boolean listenersChanged = false;
+      for (NOpNode setListener : flowgraph.opNodes.getNodes(NSetListenerOpNode.class)) {
         if (processSetListener((NSetListenerOpNode) setListener)) {
           changed = true;
-          // recompute the paths
-          computePathsFromViewProducerToViewConsumer();
+          listenersChanged = true;
         }
       }
+      if (listenersChanged) {
+        // recompute the paths affected by the new edges
+        updatePathsFromViewProducerToViewConsumer();
+      }
       if (!changed) {
         break;
       }
     }
+    return rounds;
   }
 
   // FindView1: lhs = receiver.findViewById(id)
@@ -1425,7 +1667,7 @@ public class FixpointSolver {
   }
 
   public Set<NOpNode> getOpNodes(Class<? extends NOpNode> type) {
-    return NOpNode.getNodes(type);
+    return flowgraph.opNodes.getNodes(type);
   }
 
   enum VarType {
@@ -10,10 +10,12 @@ package edu.osu.cse.presto.android.gator.gui;
 
 import com.google.common.collect.Sets;
 import edu.osu.cse.presto.android.gator.Configs;
+import edu.osu.cse.presto.android.gator.Debug;
 import edu.osu.cse.presto.android.gator.Hierarchy;
 import edu.osu.cse.presto.android.gator.Logger;
 import edu.osu.cse.presto.android.gator.gui.flowgraph.Flowgraph;
 import edu.osu.cse.presto.android.gator.gui.flowgraph.GAFlowgraph;
+import edu.osu.cse.presto.android.gator.gui.util.ReachabilityBenchmark;
 import edu.osu.cse.presto.android.gator.xml.XMLParser;
 import org.atteo.classindex.ClassIndex;
 
@@ -101,10 +103,16 @@ public class GUIAnalysis {
           new Flowgraph(hier, allLayoutIds, allMenuIds, allWidgetIds, allStringIds, allDrawableIds);
     }
     flowgraph.build();
+    flowgraph.freeze();
+    if (Configs.debugCodes.contains(Debug.BENCHMARK_REACHABILITY)) {
+      ReachabilityBenchmark.run(flowgraph.getCompactFlowgraph());
+    }
 
     // 2. Fix-point computation
-//    fixpointSolver = new FixpointSolver(flowgraph);
-//    fixpointSolver.solve();
+    fixpointSolver = new FixpointSolver(flowgraph);
+    fixpointSolver.solve();
+    // the solver adds edges, so take a new snapshot for the queries below
+    flowgraph.freeze();
 
     // 3. Variable value query interface
     variableValueQueryInterface = DemandVariableValueQuery.v(flowgraph, fixpointSolver);
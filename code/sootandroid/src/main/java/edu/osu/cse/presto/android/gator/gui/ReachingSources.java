@@ -0,0 +1,244 @@
+/*
+ * ReachingSources.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator.gui;
+
+import com.google.common.collect.Lists;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NNode;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NOpNode;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * For every flowgraph node, the set of registered source nodes that reach it,
+ * with the op-node stop of GraphUtil.reachableNodes: a source flows out of
+ * itself even if it is an op node, other op nodes receive sources but do not
+ * pass them on. So source s reaches n iff reachableNodes(s).contains(n).
+ * <p>
+ * Sets are SourceSets over source indexes, computed by difference
+ * propagation: a node passes on only the indexes it has newly received. Edges
+ * added to the graph since the last {@link #propagate()} are found by
+ * remembering how many successors each node with a set had, so the sets can
+ * be kept current while the solver grows the graph. Removed edges are not
+ * supported. Call {@link #propagate()} before reading.
+ */
+public class ReachingSources {
+  private final List<NNode> sources = Lists.newArrayList();
+  private int[] tags = new int[64];
+  // node id -> source index + 1; 0 if not a source
+  private int[] sourceIndex = new int[64];
+  // node id -> sources reaching it; null if none
+  private SourceSet[] reaching = new SourceSet[64];
+  // node id -> indexes received but not passed on yet
+  private SourceSet[] pending = new SourceSet[64];
+  private final ArrayDeque<NNode> worklist = new ArrayDeque<>();
+  // nodes that pass something on, i.e. sources and non-op nodes with a set
+  private final List<NNode> tracked = Lists.newArrayList();
+  // node id -> successors of a tracked node that were sent its set
+  private int[] seenSuccessors = new int[64];
+  // nodes whose set grew since the last pollChanged()
+  private final List<NNode> changed = Lists.newArrayList();
+  private BitSet changedIds = new BitSet();
+
+  private static final SourceSet EMPTY = SourceSet.empty();
+
+  private void ensureCapacity(int id) {
+    if (id < reaching.length) {
+      return;
+    }
+    int length = Math.max(id + 1, reaching.length * 2);
+    sourceIndex = Arrays.copyOf(sourceIndex, length);
+    reaching = Arrays.copyOf(reaching, length);
+    pending = Arrays.copyOf(pending, length);
+    seenSuccessors = Arrays.copyOf(seenSuccessors, length);
+  }
+
+  /**
+   * Registers n as a source, or adds tag to the tags of an existing one.
+   *
+   * @return the index of n
+   */
+  public int addSource(NNode n, int tag) {
+    ensureCapacity(n.id);
+    int index = sourceIndex[n.id] - 1;
+    if (index >= 0) {
+      tags[index] |= tag;
+      return index;
+    }
+    index = sources.size();
+    sources.add(n);
+    if (index == tags.length) {
+      tags = Arrays.copyOf(tags, index * 2);
+    }
+    tags[index] = tag;
+    boolean wasTracked = isTracked(n);
+    sourceIndex[n.id] = index + 1;
+    SourceSet bit = SourceSet.of(index);
+    int numSucc = n.getNumberOfSuccessors();
+    for (int i = 0; i < numSucc; i++) {
+      send(n.getSuccessor(i), bit);
+    }
+    if (!wasTracked) {
+      track(n, numSucc);
+    }
+    return index;
+  }
+  /**
+   * @return the index of n, or -1 if n is not a source
+   */
+  public int indexOf(NNode n) {
+    return n.id < sourceIndex.length ? sourceIndex[n.id] - 1 : -1;
+  }
+
+  public int numberOfSources() {
+    return sources.size();
+  }
+
+  public NNode source(int index) {
+    return sources.get(index);
+  }
+
+  public int tags(int index) {
+    return tags[index];
+  }
+
+  private boolean isTracked(NNode n) {
+    return sourceIndex[n.id] != 0 || (reaching[n.id] != null && !(n instanceof NOpNode));
+  }
+
+  private void track(NNode n, int numSucc) {
+    tracked.add(n);
+    seenSuccessors[n.id] = numSucc;
+  }
+
+  private void send(NNode target, SourceSet bits) {
+    ensureCapacity(target.id);
+    SourceSet set = reaching[target.id];
+    SourceSet delta;
+    if (set == null) {
+      delta = bits;
+      reaching[target.id] = bits.copy();
+      if (!(target instanceof NOpNode) && sourceIndex[target.id] == 0) {
+        // its successors get the set when the worklist reaches it
+        track(target, target.getNumberOfSuccessors());
+      }
+    } else {
+      delta = set.addAll(bits);
+      if (delta == null) {
+        return;
+      }
+    }
+    if (!changedIds.get(target.id)) {
+      changedIds.set(target.id);
+      changed.add(target);
+    }
+    if (target instanceof NOpNode) {
+      return;
+    }
+    SourceSet queued = pending[target.id];
+    if (queued == null) {
+      pending[target.id] = delta.copy();
+      worklist.add(target);
+    } else {
+      queued.addAll(delta);
+    }
+  }
+
+  /**
+   * Sends the whole set of every tracked node along the edges added to it
+   * since it was last looked at.
+   */
+  private void sendAlongNewEdges() {
+    // tracked grows while we go; new entries have seen all their successors
+    for (int t = 0, numTracked = tracked.size(); t < numTracked; t++) {
+      NNode n = tracked.get(t);
+      int seen = seenSuccessors[n.id];
+      int numSucc = n.getNumberOfSuccessors();
+      if (seen == numSucc) {
+        continue;
+      }
+      seenSuccessors[n.id] = numSucc;
+      SourceSet out = n instanceof NOpNode ? null : reaching[n.id];
+      int index = sourceIndex[n.id] - 1;
+      if (index >= 0) {
+        out = out == null ? SourceSet.of(index) : out.copy();
+        out.addAll(SourceSet.of(index));
+      }
+      for (int i = seen; i < numSucc; i++) {
+        send(n.getSuccessor(i), out);
+      }
+    }
+  }
+
+  /**
+   * Passes on all queued indexes, and the sets of nodes that got new
+   * successors, until nothing changes.
+   */
+  public void propagate() {
+    sendAlongNewEdges();
+    while (!worklist.isEmpty()) {
+      NNode n = worklist.poll();
+      SourceSet delta = pending[n.id];
+      pending[n.id] = null;
+      for (int i = 0, numSucc = n.getNumberOfSuccessors(); i < numSucc; i++) {
+        send(n.getSuccessor(i), delta);
+      }
+    }
+  }
+
+  /**
+   * The indexes of the sources reaching n along at least one edge. Do not
+   * modify.
+   */
+  public SourceSet reachingSources(NNode n) {
+    SourceSet set = n.id < reaching.length ? reaching[n.id] : null;
+    return set == null ? EMPTY : set;
+  }
+
+  /**
+   * Whether reachableNodes(source).contains(n), for a registered source.
+   */
+  public boolean reaches(NNode source, NNode n) {
+    if (source == n) {
+      return true;
+    }
+    int index = indexOf(source);
+    return index >= 0 && reachingSources(n).get(index);
+  }
+
+  /**
+   * The nodes whose set of reaching sources grew since the last call.
+   */
+  public List<NNode> pollChanged() {
+    List<NNode> result = Lists.newArrayList(changed);
+    changed.clear();
+    changedIds = new BitSet();
+    return result;
+  }
+
+  /**
+   * Approximate heap used by the sets, in bytes.
+   */
+  public long footprint() {
+    long bytes = 0;
+    for (SourceSet set : reaching) {
+      if (set != null) {
+        bytes += set.bytes();
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public String toString() {
+    return "ReachingSources[sources=" + sources.size() + ", bytes=" + footprint() + "]";
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * SourceSet.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator.gui;
+
+import java.util.Arrays;
+
+/**
+ * A sparse set of source indexes, see ReachingSources. Only the 64-bit words
+ * that have a bit set are stored, sorted by word index, so a node reached by
+ * a few sources far apart costs a few words rather than one bit per source.
+ */
+public final class SourceSet {
+  // word index of words[i]; sorted
+  private int[] keys;
+  private long[] words;
+  private int size;
+
+  private SourceSet(int capacity) {
+    keys = new int[capacity];
+    words = new long[capacity];
+  }
+
+  public static SourceSet empty() {
+    return new SourceSet(0);
+  }
+
+  public static SourceSet of(int index) {
+    SourceSet set = new SourceSet(1);
+    set.keys[0] = index >>> 6;
+    set.words[0] = 1L << index;
+    set.size = 1;
+    return set;
+  }
+
+  public SourceSet copy() {
+    SourceSet set = new SourceSet(size);
+    System.arraycopy(keys, 0, set.keys, 0, size);
+    System.arraycopy(words, 0, set.words, 0, size);
+    set.size = size;
+    return set;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean get(int index) {
+    int i = Arrays.binarySearch(keys, 0, size, index >>> 6);
+    return i >= 0 && (words[i] & (1L << index)) != 0;
+  }
+
+  /**
+   * The first index >= from in the set, or -1 if there is none.
+   */
+  public int nextSetBit(int from) {
+    int i = Arrays.binarySearch(keys, 0, size, from >>> 6);
+    if (i >= 0) {
+      long word = words[i] & (-1L << from);
+      if (word != 0) {
+        return (keys[i] << 6) + Long.numberOfTrailingZeros(word);
+      }
+      i++;
+    } else {
+      i = -i - 1;
+    }
+    return i < size ? (keys[i] << 6) + Long.numberOfTrailingZeros(words[i]) : -1;
+  }
+
+  /**
+   * Adds the indexes of other to this set.
+   *
+   * @return the indexes that were not in this set yet, or null if there were
+   * none
+   */
+  public SourceSet addAll(SourceSet other) {
+    // other minus this
+    SourceSet delta = null;
+    int newKeys = 0;
+    for (int i = 0, j = 0; i < other.size; i++) {
+      int key = other.keys[i];
+      while (j < size && keys[j] < key) {
+        j++;
+      }
+      boolean present = j < size && keys[j] == key;
+      long word = present ? other.words[i] & ~words[j] : other.words[i];
+      if (word == 0) {
+        continue;
+      }
+      if (delta == null) {
+        delta = new SourceSet(other.size - i);
+      }
+      delta.keys[delta.size] = key;
+      delta.words[delta.size] = word;
+      delta.size++;
+      if (!present) {
+        newKeys++;
+      }
+    }
+    if (delta == null) {
+      return null;
+    }
+    if (newKeys == 0) {
+      for (int i = 0, j = 0; i < delta.size; i++) {
+        while (keys[j] < delta.keys[i]) {
+          j++;
+        }
+        words[j] |= delta.words[i];
+      }
+      return delta;
+    }
+    // merge into arrays of the exact size
+    int length = size + newKeys;
+    int[] mergedKeys = new int[length];
+    long[] mergedWords = new long[length];
+    int i = 0, j = 0, k = 0;
+    while (i < size || j < delta.size) {
+      if (j == delta.size || (i < size && keys[i] < delta.keys[j])) {
+        mergedKeys[k] = keys[i];
+        mergedWords[k++] = words[i++];
+      } else if (i == size || delta.keys[j] < keys[i]) {
+        mergedKeys[k] = delta.keys[j];
+        mergedWords[k++] = delta.words[j++];
+      } else {
+        mergedKeys[k] = keys[i];
+        mergedWords[k++] = words[i++] | delta.words[j++];
+      }
+    }
+    keys = mergedKeys;
+    words = mergedWords;
+    size = length;
+    return delta;
+  }
+
+  /**
+   * Approximate heap used by this set, in bytes.
+   */
+  public long bytes() {
+    return 48 + 4L * keys.length + 8L * words.length;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(i);
+    }
+    return sb.append('}').toString();
+  }
+}
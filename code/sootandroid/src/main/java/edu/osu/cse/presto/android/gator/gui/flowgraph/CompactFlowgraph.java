@@ -0,0 +1,152 @@
+/*
+ * CompactFlowgraph.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator.gui.flowgraph;
+
+import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NNode;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NOpNode;
+
+import java.util.Collection;
+
+/**
+ * Read-only snapshot of the flowgraph edges, indexed by NNode.id. Successors
+ * of node i are succTargets[succOffsets[i] .. succOffsets[i + 1]) (compressed
+ * sparse rows), predecessors likewise, so a traversal touches int arrays only:
+ * no list copies and no NNode monitors.
+ * <p>
+ * The snapshot holds every node connected to the roots it was built from. It
+ * is stale as soon as an edge is added or removed, see {@link #isCurrent()};
+ * callers fall back to the NNode lists then.
+ */
+public class CompactFlowgraph {
+  // indexed by id; null for ids not in the snapshot
+  private final NNode[] nodes;
+  private final long[] opNodes;
+  public final int[] succOffsets;
+  public final int[] succTargets;
+  public final int[] predOffsets;
+  public final int[] predTargets;
+  private final int edgeModCount;
+
+  private CompactFlowgraph(NNode[] nodes, long[] opNodes, int[] succOffsets, int[] succTargets,
+                           int[] predOffsets, int[] predTargets, int edgeModCount) {
+    this.nodes = nodes;
+    this.opNodes = opNodes;
+    this.succOffsets = succOffsets;
+    this.succTargets = succTargets;
+    this.predOffsets = predOffsets;
+    this.predTargets = predTargets;
+    this.edgeModCount = edgeModCount;
+  }
+
+  /**
+   * Snapshots the nodes reachable from {@code roots} along edges in either
+   * direction.
+   */
+  public static CompactFlowgraph build(Collection<? extends NNode> roots) {
+    int edgeModCount = NNode.edgeModCount;
+    NNode[] nodes = new NNode[NNode.maxId() + 1];
+    int[] worklist = new int[nodes.length];
+    int top = 0;
+    for (NNode root : roots) {
+      if (root != null && nodes[root.id] == null) {
+        nodes[root.id] = root;
+        worklist[top++] = root.id;
+      }
+    }
+    int[] succOffsets = new int[nodes.length + 1];
+    int[] predOffsets = new int[nodes.length + 1];
+    while (top > 0) {
+      NNode n = nodes[worklist[--top]];
+      int numSucc = n.getNumberOfSuccessors();
+      for (int i = 0; i < numSucc; i++) {
+        NNode s = n.getSuccessor(i);
+        if (nodes[s.id] == null) {
+          nodes[s.id] = s;
+          worklist[top++] = s.id;
+        }
+      }
+      int numPred = n.getNumberOfPredecessors();
+      for (int i = 0; i < numPred; i++) {
+        NNode p = n.getPredecessor(i);
+        if (nodes[p.id] == null) {
+          nodes[p.id] = p;
+          worklist[top++] = p.id;
+        }
+      }
+      succOffsets[n.id + 1] = numSucc;
+      predOffsets[n.id + 1] = numPred;
+    }
+    for (int i = 1; i < succOffsets.length; i++) {
+      succOffsets[i] += succOffsets[i - 1];
+      predOffsets[i] += predOffsets[i - 1];
+    }
+    int[] succTargets = new int[succOffsets[nodes.length]];
+    int[] predTargets = new int[predOffsets[nodes.length]];
+    long[] opNodes = new long[(nodes.length + 63) >>> 6];
+    for (NNode n : nodes) {
+      if (n == null) {
+        continue;
+      }
+      if (n instanceof NOpNode) {
+        opNodes[n.id >>> 6] |= 1L << n.id;
+      }
+      int k = succOffsets[n.id];
+      for (int i = 0, numSucc = succOffsets[n.id + 1] - k; i < numSucc; i++) {
+        succTargets[k + i] = n.getSuccessor(i).id;
+      }
+      k = predOffsets[n.id];
+      for (int i = 0, numPred = predOffsets[n.id + 1] - k; i < numPred; i++) {
+        predTargets[k + i] = n.getPredecessor(i).id;
+      }
+    }
+    return new CompactFlowgraph(nodes, opNodes, succOffsets, succTargets, predOffsets, predTargets, edgeModCount);
+  }
+
+  /**
+   * @return false once an edge has been added or removed after the snapshot
+   */
+  public boolean isCurrent() {
+    return edgeModCount == NNode.edgeModCount;
+  }
+
+  public boolean contains(NNode n) {
+    return n.id < nodes.length && nodes[n.id] == n;
+  }
+
+  /**
+   * Ids are in [0, size()).
+   */
+  public int size() {
+    return nodes.length;
+  }
+
+  public NNode node(int id) {
+    return nodes[id];
+  }
+
+  public boolean isOpNode(int id) {
+    return (opNodes[id >>> 6] & (1L << id)) != 0;
+  }
+
+  public int numberOfEdges() {
+    return succTargets.length;
+  }
+
+  @Override
+  public String toString() {
+    int numNodes = 0;
+    for (NNode n : nodes) {
+      if (n != null) {
+        numNodes++;
+      }
+    }
+    return "CompactFlowgraph[nodes=" + numNodes + ", edges=" + numberOfEdges()
+        + ", ids=" + nodes.length + ", stale=" + !isCurrent() + "]";
+  }
+}
@@ -68,6 +68,9 @@ public class Flowgraph implements MethodNames {
 
   ListenerSpecification listenerSpecs;
 
+  // the NOpNodes created for this flowgraph
+  public final OpNodeRegistry opNodes = new OpNodeRegistry();
+
   public Multimap<Stmt, SootMethod> regToEventHandlers = HashMultimap.create();
   // public Map<Stmt, Set<SootMethod>> regToEventHandlers = Maps.newHashMap();
 
@@ -410,6 +413,47 @@ public class Flowgraph implements MethodNames {
     processFlowFromSetListenerToEventHandlers();
   }
 
+  CompactFlowgraph compactFlowgraph;
+
+  /**
+   * Snapshots the edges built so far into a CompactFlowgraph that GraphUtil
+   * traverses from now on. Edges added later make the snapshot stale and
+   * GraphUtil falls back to the node lists until the next freeze().
+   */
+  public CompactFlowgraph freeze() {
+    List<NNode> roots = Lists.newArrayList();
+    collectNodes(roots);
+    compactFlowgraph = CompactFlowgraph.build(roots);
+    graphUtil.setCompactFlowgraph(compactFlowgraph);
+    System.out.println("[Flowgraph] Frozen: " + compactFlowgraph);
+    return compactFlowgraph;
+  }
+
+  public CompactFlowgraph getCompactFlowgraph() {
+    return compactFlowgraph;
+  }
+
+  /**
+   * Adds the nodes held by the node maps; freeze() picks up everything
+   * connected to them.
+   */
+  protected void collectNodes(Collection<NNode> nodes) {
+    nodes.addAll(allNNodes);
+    nodes.addAll(allNVarNodes.values());
+    nodes.addAll(allNFieldNodes.values());
+    nodes.addAll(allNAllocNodes.values());
+    nodes.addAll(allNActivityNodes.values());
+    nodes.addAll(allNLayoutIdNodes.values());
+    nodes.addAll(allNMenuIdNodes.values());
+    nodes.addAll(allNWidgetIdNodes.values());
+    nodes.addAll(allNStringIdNodes.values());
+    nodes.addAll(allNDialogNodes.values());
+    nodes.addAll(allNDrawableIdNodes.values());
+    nodes.addAll(allNStringConstantNodes.values());
+    nodes.addAll(allNIntegerConstantNodes.values());
+    nodes.addAll(allMenuItems);
+  }
+
   public boolean processFlowFromSetListenerToEventHandlers() {
     if (tasks.isEmpty()) {
       return false;
@@ -756,7 +800,7 @@ public class Flowgraph implements MethodNames {
     NVarNode lhsNode = (s instanceof DefinitionStmt ? varNode(jimpleUtil.lhsLocal(s)) : null);
     if (outsideRoot == null) {
       if (lhsNode != null) {
-        inflate1 = new NInflate1OpNode(layoutIdNode, lhsNode, callSite, false);
+        inflate1 = opNodes.register(new NInflate1OpNode(layoutIdNode, lhsNode, callSite, false));
       }
     } else {
       // lhs = inflater.inflate(id, outside) ==>
@@ -766,9 +810,9 @@ public class Flowgraph implements MethodNames {
           Jimple.v().newLocal(fakeLocalName, Scene.v().getSootClass("android.view.View").getType());
       NVarNode fakeLocalNode = varNode(fakeLocal);  // child
       NVarNode outsideRootNode = varNode(outsideRoot);  // parent
-      inflate1 = new NInflate1OpNode(layoutIdNode, fakeLocalNode, callSite, false);
+      inflate1 = opNodes.register(new NInflate1OpNode(layoutIdNode, fakeLocalNode, callSite, false));
       NOpNode addView2 =
-          new NAddView2OpNode(outsideRootNode, fakeLocalNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), false);
+          opNodes.register(new NAddView2OpNode(outsideRootNode, fakeLocalNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), false));
       allNNodes.add(addView2);
       if (Configs.debugCodes.contains(Debug.OP_NODE_DEBUG)) {
         System.out.println(
@@ -818,7 +862,7 @@ public class Flowgraph implements MethodNames {
     NNode layoutIdNode = simpleNode(layoutIdVal);
     NVarNode receiverNode = varNode(jimpleUtil.receiver(ie));
     NInflate2OpNode inflate2 =
-        new NInflate2OpNode(layoutIdNode, receiverNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), false);
+        opNodes.register(new NInflate2OpNode(layoutIdNode, receiverNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), false));
 
     return inflate2;
   }
@@ -911,10 +955,10 @@ public class Flowgraph implements MethodNames {
 
     NVarNode lhsNode = varNode(jimpleUtil.lhsLocal(s));
     NOpNode findView1 =
-        new NFindView1OpNode(widgetIdNode, receiverNode, lhsNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)),
+        opNodes.register(new NFindView1OpNode(widgetIdNode, receiverNode, lhsNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)),
             menuFindItem ?
                 NFindView1OpNode.FindView1Type.MenuFindItem :
-                NFindView1OpNode.FindView1Type.Ordinary, false);
+                NFindView1OpNode.FindView1Type.Ordinary, false));
 
     if (Configs.debugCodes.contains(Debug.OP_NODE_DEBUG)) {
       System.out.println(
@@ -956,7 +1000,7 @@ public class Flowgraph implements MethodNames {
       return NOpNode.NullNode;
     }
     NOpNode findView2 =
-        new NFindView2OpNode(layoutIdNode, receiverNode, lhsNode, new Pair<Stmt, SootMethod>(s, caller), false);
+        opNodes.register(new NFindView2OpNode(layoutIdNode, receiverNode, lhsNode, new Pair<Stmt, SootMethod>(s, caller), false));
 
     if (Configs.debugCodes.contains(Debug.OP_NODE_DEBUG)) {
       System.out.println(
@@ -1019,7 +1063,7 @@ public class Flowgraph implements MethodNames {
     NVarNode receiverNode = varNode(jimpleUtil.receiver(ie));
     NNode lhsNode = varNode(jimpleUtil.lhsLocal(s));
     NOpNode findView3 =
-        new NFindView3OpNode(receiverNode, lhsNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), type, false);
+        opNodes.register(new NFindView3OpNode(receiverNode, lhsNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), type, false));
 
     if (Configs.debugCodes.contains(Debug.OP_NODE_DEBUG)) {
       System.out.println("[FindView3] view: " + receiverNode + ", lhs: " + lhsNode + " @ "
@@ -1054,7 +1098,7 @@ public class Flowgraph implements MethodNames {
     NVarNode receiverNode = varNode(receiver);
     NVarNode parameterNode = varNode((Local) ie.getArg(0));
     NAddView1OpNode addView1 =
-        new NAddView1OpNode(parameterNode, receiverNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), false);
+        opNodes.register(new NAddView1OpNode(parameterNode, receiverNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), false));
 
     return addView1;
   }
@@ -1073,7 +1117,7 @@ public class Flowgraph implements MethodNames {
     SootMethod caller = jimpleUtil.lookup(s);
     NVarNode parentNode = varNode(jimpleUtil.receiver(ie));
     NVarNode childNode = varNode((Local) ie.getArg(0));
-    return new NAddView2OpNode(parentNode, childNode, new Pair<Stmt, SootMethod>(s, caller), false);
+    return opNodes.register(new NAddView2OpNode(parentNode, childNode, new Pair<Stmt, SootMethod>(s, caller), false));
   }
 
   // SetId: view.setId(id)
@@ -1102,7 +1146,7 @@ public class Flowgraph implements MethodNames {
       return null;
     }
     NOpNode setId =
-        new NSetIdOpNode(idNode, receiverNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), false);
+        opNodes.register(new NSetIdOpNode(idNode, receiverNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), false));
 
     return setId;
   }
@@ -1276,7 +1320,7 @@ public class Flowgraph implements MethodNames {
     NVarNode listenerNode = varNode(listenerLocal);
     Pair<Stmt, SootMethod> callSite = (s == null ? null : new Pair<Stmt, SootMethod>(s, caller));
     NSetListenerOpNode setListener =
-        new NSetListenerOpNode(viewNode, listenerNode, callSite, isContextMenuSetListener, artificial);
+        opNodes.register(new NSetListenerOpNode(viewNode, listenerNode, callSite, isContextMenuSetListener, artificial));
 
     // Save event type
     if (isContextMenuSetListener) {
@@ -1490,13 +1534,13 @@ public class Flowgraph implements MethodNames {
     Local receiverLocal = jimpleUtil.receiver(ie);
     NVarNode menu = varNode(receiverLocal);
     Pair<Stmt, SootMethod> callSite = new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s));
-    NOpNode addMenuItem = new NAddView2OpNode(menu, menuItem, callSite, false);
+    NOpNode addMenuItem = opNodes.register(new NAddView2OpNode(menu, menuItem, callSite, false));
 
     // SetText: menuItem.setTitle(titleSpecifier)
     Value lastArgument = ie.getArg(ie.getArgCount() - 1);
     NNode titleSpecifier = simpleNode(lastArgument);
     if (titleSpecifier != null) {
-      NOpNode setText = new NSetTextOpNode(titleSpecifier, menuItem, callSite);
+      NOpNode setText = opNodes.register(new NSetTextOpNode(titleSpecifier, menuItem, callSite));
       allNNodes.add(setText);
       //      System.out.println("{Menu.add} menuItem: " + menuItem + ", title: "
       //          + titleSpecifier);
@@ -1544,7 +1588,7 @@ public class Flowgraph implements MethodNames {
     NVarNode receiverNode = varNode(jimpleUtil.receiver(ie));
     SootMethod caller = jimpleUtil.lookup(s);
     Pair<Stmt, SootMethod> callSite = new Pair<Stmt, SootMethod>(s, caller);
-    NOpNode setText = new NSetTextOpNode(titleNode, receiverNode, callSite);
+    NOpNode setText = opNodes.register(new NSetTextOpNode(titleNode, receiverNode, callSite));
 
     if (s instanceof DefinitionStmt) {
       NVarNode lhsNode = varNode(jimpleUtil.lhsLocal(s));
@@ -1567,7 +1611,7 @@ public class Flowgraph implements MethodNames {
     NNode menuIdNode = simpleNode(menuIdVal);
     NNode menuNode = simpleNode(ie.getArg(1));
     Pair<Stmt, SootMethod> callSite = new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s));
-    NOpNode menuInflate = new NMenuInflateOpNode(menuIdNode, menuNode, callSite, false);
+    NOpNode menuInflate = opNodes.register(new NMenuInflateOpNode(menuIdNode, menuNode, callSite, false));
 
     if (Configs.debugCodes.contains(Debug.MENU_DEBUG)) {
       System.out.println("--- [CREATED] " + menuInflate);
@@ -1607,7 +1651,7 @@ public class Flowgraph implements MethodNames {
     }
 
     NOpNode inflate2 =
-        new NInflate2OpNode(layoutIdNode, receiverNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), true);
+        opNodes.register(new NInflate2OpNode(layoutIdNode, receiverNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), true));
 
     // remeber the inflation, since our analysis doesn't consider control flow
     // this will introduce inaccuracy by creating multiple TabHost
@@ -1621,7 +1665,7 @@ public class Flowgraph implements MethodNames {
     Value hostVal = IntConstant.v(hostId.intValue());
     NNode hostValNode = simpleNode(hostVal);
     NOpNode findView2 =
-        new NFindView2OpNode(hostValNode, receiverNode, lhsNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), false);
+        opNodes.register(new NFindView2OpNode(hostValNode, receiverNode, lhsNode, new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s)), false));
 
     return findView2;
   }
@@ -1677,7 +1721,7 @@ public class Flowgraph implements MethodNames {
     NNode idNode = widgetIdNode(xmlUtil.getSystemRIdValue("list"));
     NVarNode receiverNode = varNode(receiver);
     NVarNode lhsNode = varNode(jimpleUtil.lhsLocal(s));
-    NOpNode findView2 = new NFindView2OpNode(idNode, receiverNode, lhsNode, callSite, false);
+    NOpNode findView2 = opNodes.register(new NFindView2OpNode(idNode, receiverNode, lhsNode, callSite, false));
 
     //    System.out.println("--- op nodes created for " + s + " @ " + caller);
     //    System.out.println("  [Inflate2] layoutId: " + layoutIdNode
@@ -1687,8 +1731,8 @@ public class Flowgraph implements MethodNames {
   }
 
   protected void checkAndPatchRootlessActivities() {
-    Set<NOpNode> activitySetContentView = NOpNode.getNodes(NInflate2OpNode.class);
-    activitySetContentView.addAll(NOpNode.getNodes(NAddView1OpNode.class));
+    Set<NOpNode> activitySetContentView = Sets.newHashSet(opNodes.getNodes(NInflate2OpNode.class));
+    activitySetContentView.addAll(opNodes.getNodes(NAddView1OpNode.class));
     Set<NActivityNode> suspects = Sets.newHashSet(allNActivityNodes.values());
     for (NOpNode op : activitySetContentView) {
       NVarNode activity = op.getReceiver();
@@ -1748,13 +1792,13 @@ public class Flowgraph implements MethodNames {
         activityNode.addEdgeTo(receiverNode);
         Local listView = Jimple.v().newLocal(nextFakeName(), listViewClass.getType());
         NVarNode listViewNode = varNode(listView);
-        NOpNode findView2 = new NFindView2OpNode(idNode, receiverNode, listViewNode, null, true);
+        NOpNode findView2 = opNodes.register(new NFindView2OpNode(idNode, receiverNode, listViewNode, null, true));
         allNNodes.add(findView2);
 
         Local listItem = Jimple.v().newLocal(nextFakeName(), RefType.v("android.view.View"));
         NVarNode listItemNode = varNode(listItem);
         NFindView3OpNode findView3 =
-            new NFindView3OpNode(listViewNode, listItemNode, null, NFindView3OpNode.FindView3Type.FindChildren, true);
+            opNodes.register(new NFindView3OpNode(listViewNode, listItemNode, null, NFindView3OpNode.FindView3Type.FindChildren, true));
         allNNodes.add(findView3);
 
         // A fake listener that calls onListItemClick
@@ -1886,7 +1930,7 @@ public class Flowgraph implements MethodNames {
     Local fakeLocal = Jimple.v().newLocal(fakeLocalName, RefType.v("android.app.ListActivity"));
     NVarNode receiverNode = varNode(fakeLocal);
     activity.addEdgeTo(receiverNode);
-    NOpNode inflate2 = new NInflate2OpNode(layoutIdNode, receiverNode, null, true);
+    NOpNode inflate2 = opNodes.register(new NInflate2OpNode(layoutIdNode, receiverNode, null, true));
     allNNodes.add(inflate2);
   }
 
@@ -2136,7 +2180,7 @@ public class Flowgraph implements MethodNames {
         for (Value returnValue : returnValuesForGetView) {
           if (returnValue instanceof Local) {
             NVarNode listItemNode = varNode((Local) returnValue);
-            NOpNode addView2 = new NAddView2OpNode(listViewNode, listItemNode, callSite, true);
+            NOpNode addView2 = opNodes.register(new NAddView2OpNode(listViewNode, listItemNode, callSite, true));
             allNNodes.add(addView2);
             if (Configs.debugCodes.contains(Debug.LIST_ADAPTER_DEBUG)) {
               System.out.println("  [AV2] parent: " + listViewNode + ", child: " + listItemNode);
@@ -2180,9 +2224,9 @@ public class Flowgraph implements MethodNames {
     Local fakeLocal =
         Jimple.v().newLocal(fakeLocalName, Scene.v().getSootClass("android.view.View").getType());
     NVarNode listItemNode = varNode(fakeLocal);
-    NOpNode inflate1 = new NInflate1OpNode(layoutNode, listItemNode, callSite, true);
+    NOpNode inflate1 = opNodes.register(new NInflate1OpNode(layoutNode, listItemNode, callSite, true));
     allNNodes.add(inflate1);
-    NOpNode addView2 = new NAddView2OpNode(listViewNode, listItemNode, callSite, true);
+    NOpNode addView2 = opNodes.register(new NAddView2OpNode(listViewNode, listItemNode, callSite, true));
     allNNodes.add(addView2);
     return listItemNode;
   }
@@ -2237,7 +2281,7 @@ public class Flowgraph implements MethodNames {
           Pair<Stmt, SootMethod> callSite = new Pair<Stmt, SootMethod>(adapterGetViewCall, caller);
           NNode lhsNode = varNode(jimpleUtil.lhsLocal(adapterGetViewCall));
           for (NNode layoutNode : layouts) {
-            NOpNode inflate1 = new NInflate1OpNode(layoutNode, lhsNode, callSite, true);
+            NOpNode inflate1 = opNodes.register(new NInflate1OpNode(layoutNode, lhsNode, callSite, true));
             allNNodes.add(inflate1);
           }
         }
@@ -2940,7 +2984,7 @@ public class Flowgraph implements MethodNames {
         internalDialogFindViewById(alertDialog, "custom", "android.widget.FrameLayout", callSite);
     // custom.addView(mView)
     NVarNode mView = varNode(viewLocal);
-    NAddView2OpNode customAddView = new NAddView2OpNode(custom, mView, callSite, true);
+    NAddView2OpNode customAddView = opNodes.register(new NAddView2OpNode(custom, mView, callSite, true));
     allNNodes.add(customAddView);
   }
 
@@ -3161,7 +3205,7 @@ public class Flowgraph implements MethodNames {
     NLayoutIdNode layoutIdNode = layoutIdNode(xmlUtil.getSystemRLayoutValue("alert_dialog"));
     SootMethod caller = jimpleUtil.lookup(s);
     Pair<Stmt, SootMethod> callSite = new Pair<Stmt, SootMethod>(s, caller);
-    NInflate2OpNode inflate2 = new NInflate2OpNode(layoutIdNode, receiverNode, callSite, true);
+    NInflate2OpNode inflate2 = opNodes.register(new NInflate2OpNode(layoutIdNode, receiverNode, callSite, true));
     allNNodes.add(inflate2);
 
     // Additional setups for subclasses
@@ -3193,7 +3237,7 @@ public class Flowgraph implements MethodNames {
     // View view = inflater.inflate(R.layout.time_picker_dialog, null);
     NLayoutIdNode layoutIdNode = layoutIdNode(xmlUtil.getSystemRLayoutValue("time_picker_dialog"));
     Local view = Jimple.v().newLocal(nextFakeName(), RefType.v("android.view.View"));
-    NInflate1OpNode inflate1 = new NInflate1OpNode(layoutIdNode, varNode(view), callSite, true);
+    NInflate1OpNode inflate1 = opNodes.register(new NInflate1OpNode(layoutIdNode, varNode(view), callSite, true));
     allNNodes.add(inflate1);
 
     // setView(view);
@@ -3214,7 +3258,7 @@ public class Flowgraph implements MethodNames {
     // View view = inflater.inflate(R.layout.date_picker_dialog, null);
     NLayoutIdNode layoutIdNode = layoutIdNode(xmlUtil.getSystemRLayoutValue("date_picker_dialog"));
     Local view = Jimple.v().newLocal(nextFakeName(), RefType.v("android.view.View"));
-    NInflate1OpNode inflate1 = new NInflate1OpNode(layoutIdNode, varNode(view), callSite, true);
+    NInflate1OpNode inflate1 = opNodes.register(new NInflate1OpNode(layoutIdNode, varNode(view), callSite, true));
     allNNodes.add(inflate1);
 
     // setView(view);
@@ -3238,7 +3282,7 @@ public class Flowgraph implements MethodNames {
     NVarNode lhsNode = varNode(fakeLhsLocal);
 
     NFindView2OpNode findView2 =
-        new NFindView2OpNode(idNode, receiverNode, lhsNode, callSite, true);
+        opNodes.register(new NFindView2OpNode(idNode, receiverNode, lhsNode, callSite, true));
     allNNodes.add(findView2);
 
     return lhsNode;
@@ -3736,7 +3780,7 @@ public class Flowgraph implements MethodNames {
       NVarNode viewNode = varNode(fakeLocal);
       Pair<Stmt, SootMethod> callSite =
           new Pair<Stmt, SootMethod>(setLabelIndicator, jimpleUtil.lookup(setLabelIndicator));
-      NInflate1OpNode infalte1 = new NInflate1OpNode(layoutIdNode, viewNode, callSite, true);
+      NInflate1OpNode infalte1 = opNodes.register(new NInflate1OpNode(layoutIdNode, viewNode, callSite, true));
       allNNodes.add(infalte1);
       MultiMapUtil.addKeyAndHashSetElement(tabSpecIndicatorNodes, tabSpecNode, viewNode);
     }
@@ -3758,7 +3802,7 @@ public class Flowgraph implements MethodNames {
       NVarNode viewNode = varNode(fakeLocal);
       Pair<Stmt, SootMethod> callSite =
           new Pair<Stmt, SootMethod>(setLayoutContent, jimpleUtil.lookup(setLayoutContent));
-      NInflate1OpNode infalte1 = new NInflate1OpNode(layoutIdNode, viewNode, callSite, true);
+      NInflate1OpNode infalte1 = opNodes.register(new NInflate1OpNode(layoutIdNode, viewNode, callSite, true));
       allNNodes.add(infalte1);
       MultiMapUtil.addKeyAndHashSetElement(tabSpecContentNodes, tabSpecNode, viewNode);
     }
@@ -3801,13 +3845,13 @@ public class Flowgraph implements MethodNames {
     NVarNode mTabWidgetNode = varNode(mTabWidget);
     NNode tabsIdNode = widgetIdNode(xmlUtil.getSystemRIdValue("tabs"));
     NFindView1OpNode findTabWidget =
-        new NFindView1OpNode(tabsIdNode, tabHostNode, mTabWidgetNode, callSite, NFindView1OpNode.FindView1Type.Ordinary, true);
+        opNodes.register(new NFindView1OpNode(tabsIdNode, tabHostNode, mTabWidgetNode, callSite, NFindView1OpNode.FindView1Type.Ordinary, true));
     allNNodes.add(findTabWidget);
 
     // mTabWidget.addView(tabIndicator);
     for (NVarNode tabIndicatorNode : MultiMapUtil.getNonNullHashSetByKey(tabSpecIndicatorNodes, tabSpecNode)) {
       NAddView2OpNode addView2 =
-          new NAddView2OpNode(mTabWidgetNode, tabIndicatorNode, callSite, true);
+          opNodes.register(new NAddView2OpNode(mTabWidgetNode, tabIndicatorNode, callSite, true));
       allNNodes.add(addView2);
     }
 
@@ -3817,14 +3861,14 @@ public class Flowgraph implements MethodNames {
     NVarNode mTabContentNode = varNode(mTabContent);
     NNode tabContentIdNode = widgetIdNode(xmlUtil.getSystemRIdValue("tabcontent"));
     NFindView1OpNode findTabContent =
-        new NFindView1OpNode(tabContentIdNode, tabHostNode, mTabContentNode, callSite, NFindView1OpNode.FindView1Type.Ordinary, true);
+        opNodes.register(new NFindView1OpNode(tabContentIdNode, tabHostNode, mTabContentNode, callSite, NFindView1OpNode.FindView1Type.Ordinary, true));
     allNNodes.add(findTabContent);
 
     // mCurrentView = spec.mContentStrategy.getContentView();
     // mTabContent.addView(mCurrentView)
     for (NVarNode mCurrentViewNode : MultiMapUtil.getNonNullHashSetByKey(tabSpecContentNodes, tabSpecNode)) {
       NAddView2OpNode addView2 =
-          new NAddView2OpNode(mTabContentNode, mCurrentViewNode, callSite, true);
+          opNodes.register(new NAddView2OpNode(mTabContentNode, mCurrentViewNode, callSite, true));
       allNNodes.add(addView2);
     }
   }
@@ -3986,7 +4030,7 @@ public class Flowgraph implements MethodNames {
     // TODO(tony): right now, we consider the callsite to be null. We may
     // instead use the first statement of the method as the call site.
     NOpNode findView3 =
-        new NFindView3OpNode(findItemReceiverVarNode, findItemResultVarNode, null, NFindView3OpNode.FindView3Type.FindChildren, true);
+        opNodes.register(new NFindView3OpNode(findItemReceiverVarNode, findItemResultVarNode, null, NFindView3OpNode.FindView3Type.FindChildren, true));
     allNNodes.add(findView3);
     // item = lhs
     findItemResultVarNode.addEdgeTo(varNode(menuItemLocal));
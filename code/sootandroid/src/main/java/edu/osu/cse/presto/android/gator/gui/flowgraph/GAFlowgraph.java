@@ -36,6 +36,7 @@ import soot.toolkits.scalar.ValueUnitPair;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
@@ -111,6 +112,19 @@ public class GAFlowgraph extends Flowgraph {
     processFlowFromSetListenerToEventHandlers();
   }
 
+  @Override
+  protected void collectNodes(Collection<NNode> nodes) {
+    super.collectNodes(nodes);
+    nodes.addAll(allNXmlIdNodes.values());
+    nodes.addAll(allNGoogleAnalyticsScreenViewBuilderNodes);
+    nodes.addAll(allNGoogleAnalyticsExceptionBuilderNodes);
+    nodes.addAll(allNGoogleAnalyticsTimingBuilderNodes);
+    nodes.addAll(allNGoogleAnalyticsSocialBuilderNodes);
+    nodes.addAll(allNGoogleAnalyticsEventBuilderNodes);
+    nodes.addAll(allNClassConstantNodes.values());
+    nodes.addAll(allNLongConstantNodes.values());
+  }
+
   @Override
   void processActivityCallbacks(SootClass c) {
     if (c.isAbstract()) {
@@ -392,8 +406,15 @@ public class GAFlowgraph extends Flowgraph {
 //        return opNode;
 //    }
 
+    // only the matchers whose specification lists the callee's subsignature
+    // can succeed; for most calls there are none
+    int kinds = gaUtil.callKinds(s);
+    if (kinds == 0) {
+      return Configs.gaEnabled ? null : super.createOpNode(s);
+    }
+
     // object.getClass()
-    {
+    if ((kinds & GAUtil.GET_CLASS_CALL) != 0) {
       NOpNode getClass = createGetClassOpNode(s);
       if (getClass != null) {
         return getClass;
@@ -401,52 +422,52 @@ public class GAFlowgraph extends Flowgraph {
     }
 
     // START Google >>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>
-    {
+    if ((kinds & GAUtil.SET_SCREEN_NAME_CALL) != 0) {
       NOpNode opNode = createGoogleAnalyticsSetScreenNameOpNode(s);
       if (opNode != null)
         return opNode;
     }
-    {
+    if ((kinds & GAUtil.TRACKER_SEND_CALL) != 0) {
       NOpNode opNode = createGoogleAnalyticsTrackerSendOpNode(s);
       if (opNode != null)
         return opNode;
     }
-    {
+    if ((kinds & GAUtil.NEW_TRACKER_CALL) != 0) {
       NOpNode opNode = createGoogleAnalyticsNewTrackerOpNode(s);
       if (opNode != null)
         return opNode;
     }
-    {
+    if ((kinds & GAUtil.AUTO_ACTIVITY_TRACKING_CALL) != 0) {
       NOpNode opNode = createGoogleAnalyticsAutoActivityTrackingOpNode(s);
       if (opNode != null)
         return opNode;
     }
-    {
+    if ((kinds & GAUtil.SCREEN_VIEW_BUILDER_BUILD_CALL) != 0) {
       NOpNode opNode = createGoogleAnalyticsScreenViewBuilderBuildOpNode(s);
       if (opNode != null)
         return opNode;
     }
-    {
+    if ((kinds & GAUtil.EVENT_BUILDER_BUILD_CALL) != 0) {
       NOpNode opNode = createGoogleAnalyticsEventBuilderBuildOpNode(s);
       if (opNode != null)
         return opNode;
     }
-    {
+    if ((kinds & GAUtil.EXCEPTION_BUILDER_BUILD_CALL) != 0) {
       NOpNode opNode = createGoogleAnalyticsExceptionBuilderBuildOpNode(s);
       if (opNode != null)
         return opNode;
     }
-    {
+    if ((kinds & GAUtil.SOCIAL_BUILDER_BUILD_CALL) != 0) {
       NOpNode opNode = createGoogleAnalyticsSocialBuilderBuildOpNode(s);
       if (opNode != null)
         return opNode;
     }
-    {
+    if ((kinds & GAUtil.TIMING_BUILDER_BUILD_CALL) != 0) {
       NOpNode opNode = createGoogleAnalyticsTimingBuilderBuildOpNode(s);
       if (opNode != null)
         return opNode;
     }
-    {
+    if ((kinds & GAUtil.GET_INSTANCE_CALL) != 0) {
       NOpNode opNode = createGoogleAnalyticsGetInstanceOpNode(s);
       if (opNode != null)
         return opNode;
@@ -727,7 +748,7 @@ public class GAFlowgraph extends Flowgraph {
     Pair<Stmt, SootMethod> callsite = new Pair<Stmt, SootMethod>(s, jimpleUtil.lookup(s));
     Local lhsLocal = jimpleUtil.lhsLocal(s);
     NNode lhsNode = simpleNode(lhsLocal);
-    return new NGetClassOpNode(lhsNode, srcNode, callsite);
+    return opNodes.register(new NGetClassOpNode(lhsNode, srcNode, callsite));
   }
 
   private void buildFlowThroughContainer() {
@@ -846,7 +867,7 @@ public class GAFlowgraph extends Flowgraph {
     NNode nameNode = simpleNode(arg);
     NNode trackerNode = simpleNode(jimpleUtil.receiver(s));
     Pair<Stmt, SootMethod> callSite = new Pair<>(s, jimpleUtil.lookup(s));
-    return new NGoogleAnalyticsSetScreenNameOpNode(trackerNode, nameNode, callSite);
+    return opNodes.register(new NGoogleAnalyticsSetScreenNameOpNode(trackerNode, nameNode, callSite));
   }
 
   // hailong: google analytics
@@ -863,7 +884,7 @@ public class GAFlowgraph extends Flowgraph {
     NNode bundleNode = simpleNode(arg);
     NNode trackerNode = simpleNode(jimpleUtil.receiver(s));
     Pair<Stmt, SootMethod> callSite = new Pair<>(s, jimpleUtil.lookup(s));
-    return new NGoogleAnalyticsTrackerSendOpNode(trackerNode, bundleNode, callSite);
+    return opNodes.register(new NGoogleAnalyticsTrackerSendOpNode(trackerNode, bundleNode, callSite));
   }
 
   // hailong: google analytics
@@ -881,7 +902,7 @@ public class GAFlowgraph extends Flowgraph {
     NNode analyticsInstanceNode = simpleNode(jimpleUtil.receiver(s));
     NNode trackerNode = simpleNode(jimpleUtil.lhs(s));
     Pair<Stmt, SootMethod> callSite = new Pair<>(s, jimpleUtil.lookup(s));
-    return new NGoogleAnalyticsNewTrackerOpNode(trackerNode, analyticsInstanceNode, paramNode, callSite);
+    return opNodes.register(new NGoogleAnalyticsNewTrackerOpNode(trackerNode, analyticsInstanceNode, paramNode, callSite));
   }
 
   // hailong: google analytics
@@ -899,7 +920,7 @@ public class GAFlowgraph extends Flowgraph {
     NNode paramNode = simpleNode(arg);
     NNode trackerNode = simpleNode(jimpleUtil.receiver(s));
     Pair<Stmt, SootMethod> callSite = new Pair<>(s, jimpleUtil.lookup(s));
-    return new NGoogleAnalyticsAutoActivityTrackingOpNode(trackerNode, paramNode, callSite);
+    return opNodes.register(new NGoogleAnalyticsAutoActivityTrackingOpNode(trackerNode, paramNode, callSite));
   }
 
   // hailong: google analytics
@@ -910,7 +931,7 @@ public class GAFlowgraph extends Flowgraph {
     NNode screenViewBuilderNode = simpleNode(jimpleUtil.receiver(s));
     NNode bundleNode = simpleNode(jimpleUtil.lhs(s));
     Pair<Stmt, SootMethod> callSite = new Pair<>(s, jimpleUtil.lookup(s));
-    return new NGoogleAnalyticsScreenViewBuilderBuildOpNode(screenViewBuilderNode, bundleNode, callSite);
+    return opNodes.register(new NGoogleAnalyticsScreenViewBuilderBuildOpNode(screenViewBuilderNode, bundleNode, callSite));
   }
 
   // hailong: google analytics
@@ -921,7 +942,7 @@ public class GAFlowgraph extends Flowgraph {
     NNode builderNode = simpleNode(jimpleUtil.receiver(s));
     NNode bundleNode = simpleNode(jimpleUtil.lhs(s));
     Pair<Stmt, SootMethod> callSite = new Pair<>(s, jimpleUtil.lookup(s));
-    return new NGoogleAnalyticsEventBuilderBuildOpNode(builderNode, bundleNode, callSite);
+    return opNodes.register(new NGoogleAnalyticsEventBuilderBuildOpNode(builderNode, bundleNode, callSite));
   }
 
   // hailong: google analytics
@@ -932,7 +953,7 @@ public class GAFlowgraph extends Flowgraph {
     NNode builderNode = simpleNode(jimpleUtil.receiver(s));
     NNode bundleNode = simpleNode(jimpleUtil.lhs(s));
     Pair<Stmt, SootMethod> callSite = new Pair<>(s, jimpleUtil.lookup(s));
-    return new NGoogleAnalyticExceptionBuilderBuildOpNode(builderNode, bundleNode, callSite);
+    return opNodes.register(new NGoogleAnalyticExceptionBuilderBuildOpNode(builderNode, bundleNode, callSite));
   }
 
   // hailong: google analytics
@@ -943,7 +964,7 @@ public class GAFlowgraph extends Flowgraph {
     NNode builderNode = simpleNode(jimpleUtil.receiver(s));
     NNode bundleNode = simpleNode(jimpleUtil.lhs(s));
     Pair<Stmt, SootMethod> callSite = new Pair<>(s, jimpleUtil.lookup(s));
-    return new NGoogleAnalyticsSocialBuilderBuildOpNode(builderNode, bundleNode, callSite);
+    return opNodes.register(new NGoogleAnalyticsSocialBuilderBuildOpNode(builderNode, bundleNode, callSite));
   }
 
   // hailong: google analytics
@@ -954,7 +975,7 @@ public class GAFlowgraph extends Flowgraph {
     NNode builderNode = simpleNode(jimpleUtil.receiver(s));
     NNode bundleNode = simpleNode(jimpleUtil.lhs(s));
     Pair<Stmt, SootMethod> callSite = new Pair<>(s, jimpleUtil.lookup(s));
-    return new NGoogleAnalyticsTimingBuilderBuildOpNode(builderNode, bundleNode, callSite);
+    return opNodes.register(new NGoogleAnalyticsTimingBuilderBuildOpNode(builderNode, bundleNode, callSite));
   }
 
   // hailong: google analytics
@@ -971,7 +992,7 @@ public class GAFlowgraph extends Flowgraph {
     NNode paramNode = simpleNode(arg);
     NNode lhsNode = simpleNode(jimpleUtil.lhs(s));
     Pair<Stmt, SootMethod> callSite = new Pair<>(s, jimpleUtil.lookup(s));
-    return new NGoogleAnalyticsGetInstanceOpNode(paramNode, lhsNode, callSite);
+    return opNodes.register(new NGoogleAnalyticsGetInstanceOpNode(paramNode, lhsNode, callSite));
   }
 
 
@@ -1034,7 +1055,7 @@ public class GAFlowgraph extends Flowgraph {
 //        writeNodes(writer, GraphUtil.v().backwardReachableNodes(node));
 //        interestingNodes.add(node);
 //      }
-      for (NNode node : NOpNode.getNodes(NGoogleAnalyticsSetScreenNameOpNode.class)) {
+      for (NNode node : opNodes.getNodes(NGoogleAnalyticsSetScreenNameOpNode.class)) {
         writeNodes(writer, GraphUtil.v().allBackwardReachableNodes(node));
         interestingNodes.add(node);
       }
@@ -13,11 +13,15 @@ import com.google.common.collect.Sets;
 import soot.jimple.Stmt;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class NNode {
   public static boolean verbose = false;
-  public static int nextId = 0;
-  public static int numberOfEdges = 0;
+  // ids stay unique across flowgraphs: some sentinel nodes are static
+  private static final AtomicInteger lastId = new AtomicInteger();
+  public static final AtomicInteger numberOfEdges = new AtomicInteger();
+  // bumped on every edge change, so a CompactFlowgraph can tell it is stale
+  public static volatile int edgeModCount = 0;
   public int id;
 
   // The flow graph node representing the widget id - could be NWidgetIdNode,
@@ -29,8 +33,14 @@ public abstract class NNode {
   private Set<NNode> textNodes;
 
   public NNode() {
-    nextId++;
-    id = nextId;
+    id = lastId.incrementAndGet();
+  }
+
+  /**
+   * The largest id handed out so far; ids are in [1, maxId()].
+   */
+  public static int maxId() {
+    return lastId.get();
   }
 
   // NOTE(tony): "alias" nodes/paths
@@ -105,7 +115,8 @@ public abstract class NNode {
   public synchronized void removeEdgeTo(NNode target) {
     if (succ != null && succ.contains(target)) {
       succ.remove(target);
-      numberOfEdges--;
+      numberOfEdges.decrementAndGet();
+      edgeModCount++;
     } else {
       if (target.pred != null && target.pred.contains(this)) {
         throw new RuntimeException("Broken edge " + this + "===>" + target);
@@ -129,7 +140,8 @@ public abstract class NNode {
     }
     if (!succ.contains(x)) {
       succ.add(x);
-      numberOfEdges++;
+      numberOfEdges.incrementAndGet();
+      edgeModCount++;
     } else {
       return;
     }
@@ -9,17 +9,11 @@
 package edu.osu.cse.presto.android.gator.gui.flowgraph.nodes;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 import soot.SootMethod;
 import soot.Type;
 import soot.jimple.Stmt;
 import soot.toolkits.scalar.Pair;
 
-import java.util.Collections;
-import java.util.Map;
-import java.util.Set;
-
 /**
  * Each NOpNode corresponds one special API call that we want to simulate.
  * Typically, one such API call is invoking framework method that we want to
@@ -111,9 +105,6 @@ import java.util.Set;
  * in[1] - NVarNode(menu)
  */
 public abstract class NOpNode extends NNode {
-  private static Map<String, Set<NOpNode>> opNodes = Maps.newHashMap();
-  private static Map<Stmt, NOpNode> stmtAndNodes = Maps.newHashMap();
-
   public final static NOpNode NullNode = new NOpNode(true) {
     @Override
     public boolean hasReceiver() {
@@ -154,15 +145,6 @@ public abstract class NOpNode extends NNode {
     this(artificial);
     this.opType = this.getClass().getSimpleName();
     this.callSite = callSite;
-    Set<NOpNode> nodes = opNodes.get(opType);
-    if (nodes == null) {
-      nodes = Sets.newHashSet();
-      opNodes.put(opType, nodes);
-    }
-    nodes.add(this);
-    if (callSite != null) {
-      stmtAndNodes.put(callSite.getO1(), this);
-    }
   }
 
   public String shortDescription() {
@@ -180,27 +162,6 @@ public abstract class NOpNode extends NNode {
                     + callSite.getO2()) + "] " + id;
   }
 
-  public static Set<NOpNode> getNodes(Class<? extends NOpNode> klass) {
-    String type = klass.getSimpleName();
-    Set<NOpNode> result = opNodes.get(type);
-    if (result == null) {
-      result = Collections.emptySet();
-    }
-    return result;
-  }
-
-  public static Set<NOpNode> getNodes() {
-    Set<NOpNode> res = Sets.newHashSet();
-    for (Set<NOpNode> nodes : opNodes.values()) {
-      res.addAll(nodes);
-    }
-    return res;
-  }
-
-  public static NOpNode lookupByStmt(Stmt s) {
-    return stmtAndNodes.get(s);
-  }
-
   public boolean consumesLayoutId() {
     return false;
   }
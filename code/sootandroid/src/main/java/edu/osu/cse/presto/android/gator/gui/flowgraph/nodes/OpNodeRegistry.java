@@ -0,0 +1,108 @@
+/*
+ * OpNodeRegistry.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator.gui.flowgraph.nodes;
+
+import com.google.common.collect.Sets;
+import soot.jimple.Stmt;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The NOpNodes of one flowgraph, by op kind and by call site. Every op kind
+ * (the concrete NOpNode subclass) gets a dense number the first time one of
+ * its nodes is registered, and the nodes of kind k are in byKind.get(k).
+ * Registration may happen on several threads at once.
+ * <p>
+ * Each Flowgraph owns a registry and registers the NOpNodes it creates, so
+ * analyses running in the same JVM at the same time do not see each other's
+ * nodes.
+ */
+public class OpNodeRegistry {
+  private final Map<Class<?>, Integer> kinds = new ConcurrentHashMap<>();
+  // a kind is added once, its nodes many times
+  private final List<Set<NOpNode>> byKind = new CopyOnWriteArrayList<>();
+  private final Map<Stmt, NOpNode> stmtAndNodes = new ConcurrentHashMap<>();
+
+  /**
+   * @return node, for use at the place it is created
+   */
+  public <T extends NOpNode> T register(T node) {
+    int kind = kindOf(node.getClass(), true);
+    byKind.get(kind).add(node);
+    if (node.callSite != null) {
+      stmtAndNodes.put(node.callSite.getO1(), node);
+    }
+    return node;
+  }
+
+  // the number of klass, or -1 if no node of it was registered
+  private int kindOf(Class<?> klass, boolean create) {
+    Integer kind = kinds.get(klass);
+    if (kind != null) {
+      return kind;
+    }
+    if (!create) {
+      return -1;
+    }
+    synchronized (this) {
+      kind = kinds.get(klass);
+      if (kind != null) {
+        return kind;
+      }
+      int k = byKind.size();
+      byKind.add(Sets.<NOpNode>newConcurrentHashSet());
+      kinds.put(klass, k);
+      return k;
+    }
+  }
+
+  /**
+   * The nodes of exactly the given kind, as a read-only view.
+   */
+  public Set<NOpNode> getNodes(Class<? extends NOpNode> klass) {
+    int kind = kindOf(klass, false);
+    if (kind < 0) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(byKind.get(kind));
+  }
+
+  /**
+   * A copy of all nodes.
+   */
+  public Set<NOpNode> getNodes() {
+    Set<NOpNode> res = Sets.newHashSet();
+    for (Set<NOpNode> nodes : byKind) {
+      res.addAll(nodes);
+    }
+    return res;
+  }
+
+  public NOpNode lookupByStmt(Stmt s) {
+    return stmtAndNodes.get(s);
+  }
+
+  public int numberOfKinds() {
+    return kinds.size();
+  }
+
+  @Override
+  public String toString() {
+    int numNodes = 0;
+    for (Set<NOpNode> nodes : byKind) {
+      numNodes += nodes.size();
+    }
+    return "OpNodeRegistry[kinds=" + kinds.size() + ", nodes=" + numNodes + "]";
+  }
+}
@@ -10,6 +10,7 @@
 package edu.osu.cse.presto.android.gator.gui.ga;
 
 import com.google.common.collect.Sets;
+import edu.osu.cse.presto.android.gator.AnalysisCache;
 import edu.osu.cse.presto.android.gator.Configs;
 import edu.osu.cse.presto.android.gator.Hierarchy;
 import edu.osu.cse.presto.android.gator.Logger;
@@ -27,7 +28,10 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import java.io.File;
+import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Map;
 import java.util.Set;
 
@@ -47,9 +51,9 @@ public class Builder {
     boolean autoTracking = false;
     Set<NXmlIdNode> gaXmlIdNodes = Sets.newHashSet();
 
-    Set<NOpNode> instances = NOpNode.getNodes(NGoogleAnalyticsGetInstanceOpNode.class);
+    Set<NOpNode> instances = gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsGetInstanceOpNode.class);
     Logger.info(TAG, "google.getInstance.num=" + instances.size());
-    Set<NOpNode> trackers = NOpNode.getNodes(NGoogleAnalyticsNewTrackerOpNode.class);
+    Set<NOpNode> trackers = gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsNewTrackerOpNode.class);
     Logger.info(TAG, "google.tracker.num=" + trackers.size());
     int id = 0;
     for (NNode trackerNode : trackers) {
@@ -99,46 +103,46 @@ public class Builder {
 
     Logger.info(TAG, "4. call sites ====================================================");
     int i = 0;
-    for (NOpNode node : NOpNode.getNodes(NGoogleAnalyticsSetScreenNameOpNode.class)) {
+    for (NOpNode node : gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsSetScreenNameOpNode.class)) {
       Logger.info(TAG, ++i + ".setScreenName.callsite: " + node.callSite);
     }
     i = 0;
-    for (NOpNode node : NOpNode.getNodes(NGoogleAnalyticsTrackerSendOpNode.class)) {
+    for (NOpNode node : gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsTrackerSendOpNode.class)) {
       Logger.info(TAG, ++i + ".send.callsite: " + node.callSite);
     }
     i = 0;
-    for (NOpNode node : NOpNode.getNodes(NGoogleAnalyticsNewTrackerOpNode.class)) {
+    for (NOpNode node : gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsNewTrackerOpNode.class)) {
       Logger.info(TAG, ++i + ".newTracker.callsite: " + node.callSite);
     }
     i = 0;
-    for (NOpNode node : NOpNode.getNodes(NGoogleAnalyticExceptionBuilderBuildOpNode.class)) {
+    for (NOpNode node : gaFlowgraph.opNodes.getNodes(NGoogleAnalyticExceptionBuilderBuildOpNode.class)) {
       Logger.info(TAG, ++i + ".ExceptionBuilder.build.callsite: " + node.callSite);
     }
     i = 0;
-    for (NOpNode node : NOpNode.getNodes(NGoogleAnalyticsEventBuilderBuildOpNode.class)) {
+    for (NOpNode node : gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsEventBuilderBuildOpNode.class)) {
       Logger.info(TAG, ++i + ".EventBuilder.build.callsite: " + node.callSite);
     }
     i = 0;
-    for (NOpNode node : NOpNode.getNodes(NGoogleAnalyticsScreenViewBuilderBuildOpNode.class)) {
+    for (NOpNode node : gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsScreenViewBuilderBuildOpNode.class)) {
       Logger.info(TAG, ++i + ".ScreenViewBuilder.build.callsite: " + node.callSite);
     }
     i = 0;
-    for (NOpNode node : NOpNode.getNodes(NGoogleAnalyticsSocialBuilderBuildOpNode.class)) {
+    for (NOpNode node : gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsSocialBuilderBuildOpNode.class)) {
       Logger.info(TAG, ++i + ".SocialBuilder.build.callsite: " + node.callSite);
     }
     i = 0;
-    for (NOpNode node : NOpNode.getNodes(NGoogleAnalyticsTimingBuilderBuildOpNode.class)) {
+    for (NOpNode node : gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsTimingBuilderBuildOpNode.class)) {
       Logger.info(TAG, ++i + ".TimingBuilder.build.callsite: " + node.callSite);
     }
     i = 0;
-    for (NOpNode node : NOpNode.getNodes(NGoogleAnalyticsAutoActivityTrackingOpNode.class)) {
+    for (NOpNode node : gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsAutoActivityTrackingOpNode.class)) {
       Logger.info(TAG, ++i + ".autoActivityTracking.callsite: " + node.callSite);
     }
 
     Logger.info(TAG, "5. check screen names ====================================================");
-    int numTrackers = NOpNode.getNodes(NGoogleAnalyticsNewTrackerOpNode.class).size();
+    int numTrackers = gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsNewTrackerOpNode.class).size();
     Logger.info("google.tracker.num", "" + numTrackers);
-    int numAutoTrackingOpNodes = NOpNode.getNodes(NGoogleAnalyticsAutoActivityTrackingOpNode.class).size();
+    int numAutoTrackingOpNodes = gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsAutoActivityTrackingOpNode.class).size();
     Logger.info("google.autotracking.num", "" + numAutoTrackingOpNodes);
 
     Universe nu = new Universe();
@@ -174,7 +178,7 @@ public class Builder {
   }
 
   void log(Universe nu, GAFlowgraph gaFlowgraph, String tag) {
-    for (NNode node : NOpNode.getNodes(NGoogleAnalyticsSetScreenNameOpNode.class)) {
+    for (NNode node : gaFlowgraph.opNodes.getNodes(NGoogleAnalyticsSetScreenNameOpNode.class)) {
       int strings = 0;
       for (NNode n : GraphUtil.v().backwardReachableNodes(node)) {
         if (n instanceof NStringConstantNode) {
@@ -217,19 +221,19 @@ public class Builder {
       JAXBContext jc = JAXBContext.newInstance(Universe.class);
       Marshaller m = jc.createMarshaller();
       m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-      if (Configs.gaScreenNameXmlOutputFile.isEmpty()) {
-        StringWriter sw = new StringWriter();
-        m.marshal(nu, sw);
-        xmlString = sw.toString();
-      } else {
+      StringWriter sw = new StringWriter();
+      m.marshal(nu, sw);
+      xmlString = sw.toString();
+      AnalysisCache.v().storeResult(xmlString);
+      if (!Configs.gaScreenNameXmlOutputFile.isEmpty()) {
         File xmlOutputFile = new File(Configs.gaScreenNameXmlOutputFile);
+        Files.write(xmlOutputFile.toPath(), xmlString.getBytes(StandardCharsets.UTF_8));
         xmlOutputFile.setWritable(true, false);
         xmlOutputFile.setReadable(true, false);
 //        xmlOutputFile.setExecutable(true, false);
-        m.marshal(nu, xmlOutputFile);
         xmlString = "Universe XML is saved to " + Configs.gaScreenNameXmlOutputFile;
       }
-    } catch (JAXBException e) {
+    } catch (JAXBException | IOException e) {
       e.printStackTrace();
     }
     return xmlString;
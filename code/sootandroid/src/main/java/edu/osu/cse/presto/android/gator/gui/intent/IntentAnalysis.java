@@ -354,7 +354,7 @@ public class IntentAnalysis {
 
   private void postAnalysis() {
     // if the startActivity can backward reach ANY intent, then add ANY value to its target in map: startActivitytoTarget
-    for (NOpNode startActivityOpNode : NOpNode.getNodes(NStartActivityOpNode.class)) {
+    for (NOpNode startActivityOpNode : guiOutput.getFlowgraph().opNodes.getNodes(NStartActivityOpNode.class)) {
       NNode intentNode = startActivityOpNode.getParameter();
       Set<NNode> backReachedNodes = queryHelper.allVariableValues(intentNode);
       for (NNode backReachedNode : backReachedNodes) {
@@ -53,15 +53,79 @@ public class GAUtil extends IntentUtil {
   // <class, <subsig, context_pos>>
   private final Map<SootClass, Map<String, Integer>> googleAnalyticsGetInstanceMethods = Maps.newHashMap();
 
+  // Kinds of calls that GAFlowgraph.createOpNode models. A call can only be of
+  // a kind whose specification lists its subsignature, so callKinds() narrows
+  // the candidates with one lookup; the isXCall() checks still decide.
+  public static final int GET_CLASS_CALL = 1 << 0;
+  public static final int SET_SCREEN_NAME_CALL = 1 << 1;
+  public static final int TRACKER_SEND_CALL = 1 << 2;
+  public static final int NEW_TRACKER_CALL = 1 << 3;
+  public static final int AUTO_ACTIVITY_TRACKING_CALL = 1 << 4;
+  public static final int SCREEN_VIEW_BUILDER_BUILD_CALL = 1 << 5;
+  public static final int EVENT_BUILDER_BUILD_CALL = 1 << 6;
+  public static final int EXCEPTION_BUILDER_BUILD_CALL = 1 << 7;
+  public static final int SOCIAL_BUILDER_BUILD_CALL = 1 << 8;
+  public static final int TIMING_BUILDER_BUILD_CALL = 1 << 9;
+  public static final int GET_INSTANCE_CALL = 1 << 10;
+
+  // subsig -> call kinds
+  private final Map<String, Integer> callKindsBySubsig = Maps.newHashMap();
+
 
   public static synchronized GAUtil v() {
     if (util == null) {
       util = new GAUtil();
       util.readFromSpecificationFile(Configs.wtgSpecFile);
+      ((GAUtil) util).buildCallKinds();
     }
     return (GAUtil) util;
   }
 
+  private void buildCallKinds() {
+    addCallKind(GET_CLASS_CALL, getClassMethods);
+    addCallKind(SET_SCREEN_NAME_CALL, googleAnalyticsSetScreenNameMethods);
+    addCallKind(TRACKER_SEND_CALL, googleAnalyticsTrackerSendMethods);
+    addCallKind(NEW_TRACKER_CALL, googleAnalyticsNewTrackerMethods);
+    addCallKind(AUTO_ACTIVITY_TRACKING_CALL, googleAnalyticsAutoActivityTrackingMethods);
+    addCallKind(SCREEN_VIEW_BUILDER_BUILD_CALL, googleAnalyticsScreenViewBuilderBuildMethods);
+    addCallKind(EVENT_BUILDER_BUILD_CALL, googleAnalyticsEventBuilderBuildMethods);
+    addCallKind(EXCEPTION_BUILDER_BUILD_CALL, googleAnalyticsExceptionBuilderBuildMethods);
+    addCallKind(SOCIAL_BUILDER_BUILD_CALL, googleAnalyticsSocialBuilderBuildMethods);
+    addCallKind(TIMING_BUILDER_BUILD_CALL, googleAnalyticsTimingBuilderBuildMethods);
+    addCallKind(GET_INSTANCE_CALL, googleAnalyticsGetInstanceMethods);
+  }
+
+  private void addCallKind(int kind, Map<SootClass, Map<String, Integer>> methods) {
+    for (Map<String, Integer> subsigs : methods.values()) {
+      addCallKind(kind, subsigs.keySet());
+    }
+  }
+
+  private void addCallKind(int kind, HashSetMultiMap<SootClass, String> methods) {
+    for (SootClass c : methods.keySet()) {
+      addCallKind(kind, methods.get(c));
+    }
+  }
+
+  private void addCallKind(int kind, Set<String> subsigs) {
+    for (String subsig : subsigs) {
+      Integer kinds = callKindsBySubsig.get(subsig);
+      callKindsBySubsig.put(subsig, kinds == null ? kind : kinds | kind);
+    }
+  }
+
+  /**
+   * The kinds (XXX_CALL bits) s may be a call of, judging by the subsignature
+   * of the callee only; 0 if s is not a call of any of them.
+   */
+  public int callKinds(Stmt s) {
+    if (!s.containsInvokeExpr()) {
+      return 0;
+    }
+    Integer kinds = callKindsBySubsig.get(s.getInvokeExpr().getMethodRef().getSubSignature().getString());
+    return kinds == null ? 0 : kinds;
+  }
+
   public boolean isLibraryClass(SootClass c) {
     String name = c.getName();
     if (name.startsWith("com.google.android.")
@@ -10,6 +10,7 @@ package edu.osu.cse.presto.android.gator.gui.util;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.CompactFlowgraph;
 import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NNode;
 import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NOpNode;
 import soot.toolkits.scalar.Pair;
@@ -22,6 +23,13 @@ import java.util.Set;
 public class GraphUtil {
   public static boolean verbose;
   private static GraphUtil instance;
+  private CompactFlowgraph compactFlowgraph;
+  private final ThreadLocal<ReachabilityEngine> engines = new ThreadLocal<ReachabilityEngine>() {
+    @Override
+    protected ReachabilityEngine initialValue() {
+      return new ReachabilityEngine();
+    }
+  };
 
   private GraphUtil() {
   }
@@ -33,16 +41,55 @@ public class GraphUtil {
     return instance;
   }
 
+  public void setCompactFlowgraph(CompactFlowgraph compactFlowgraph) {
+    this.compactFlowgraph = compactFlowgraph;
+  }
+
+  /**
+   * @return the frozen flowgraph if it is current and holds n, otherwise null
+   */
+  private CompactFlowgraph compactFlowgraphFor(NNode n) {
+    CompactFlowgraph g = compactFlowgraph;
+    if (g == null || !g.isCurrent() || !g.contains(n)) {
+      return null;
+    }
+    return g;
+  }
+
   public Set<NNode> reachableNodes(NNode n) {
     return reachableNodes(n, true);
   }
 
   public Set<NNode> reachableNodes(NNode n, boolean includeSelf) {
+    CompactFlowgraph g = compactFlowgraphFor(n);
+    if (g != null && !verbose) {
+      return traverse(g, g.succOffsets, g.succTargets, n, includeSelf, true);
+    }
     Set<NNode> res = Sets.newHashSet();
     findReachableNodes(n, res, includeSelf);
     return res;
   }
 
+  /**
+   * Whether reachableNodes(from).contains(to), without building the set.
+   */
+  public boolean reaches(NNode from, NNode to) {
+    CompactFlowgraph g = compactFlowgraphFor(from);
+    if (g != null && !verbose) {
+      return g.contains(to) && engines.get().reaches(g, from.id, to.id);
+    }
+    return reachableNodes(from).contains(to);
+  }
+
+  private Set<NNode> traverse(CompactFlowgraph g, int[] offsets, int[] targets, NNode start, boolean includeStart,
+                              boolean stopAtOpNode) {
+    ReachabilityEngine engine = engines.get();
+    Set<NNode> res = Sets.newHashSetWithExpectedSize(
+        engine.traverse(g, offsets, targets, start.id, includeStart, stopAtOpNode));
+    engine.addResultsTo(g, res);
+    return res;
+  }
+
   public void findReachableNodes(NNode start, Set<NNode> reachableNodes, boolean includeSelf) {
     LinkedList<NNode> worklist = Lists.newLinkedList();
     worklist.add(start);
@@ -71,6 +118,10 @@ public class GraphUtil {
   // ///
   public Set<NNode> backwardReachableNodes(NNode n) {
     // p("[BackwardReachable] " + n);
+    CompactFlowgraph g = compactFlowgraphFor(n);
+    if (g != null && !verbose) {
+      return traverse(g, g.predOffsets, g.predTargets, n, true, true);
+    }
     Set<NNode> res = Sets.newHashSet();
     findBackwardReachableNodes(n, res, true);
     return res;
@@ -78,6 +129,10 @@ public class GraphUtil {
 
   public Set<NNode> allBackwardReachableNodes(NNode n) {
     // p("[BackwardReachable] " + n);
+    CompactFlowgraph g = compactFlowgraphFor(n);
+    if (g != null && !verbose) {
+      return traverse(g, g.predOffsets, g.predTargets, n, true, false);
+    }
     Set<NNode> res = Sets.newHashSet();
     findBackwardReachableNodes(n, res, false);
     return res;
@@ -109,6 +164,10 @@ public class GraphUtil {
   }
 
   public Set<NNode> forwardReachableNodes(NNode n) {
+    CompactFlowgraph g = compactFlowgraphFor(n);
+    if (g != null) {
+      return traverse(g, g.succOffsets, g.succTargets, n, true, true);
+    }
     Set<NNode> res = Sets.newHashSet();
     findForwardReachableNodes(n, res);
     return res;
@@ -137,7 +196,7 @@ public class GraphUtil {
   // ///
   public Set<NNode> descendantNodes(NNode n) {
     Set<NNode> res = Sets.newHashSet();
-    findDescendantNodes(n, res);
+    engines.get().traverseHierarchy(n, true, res);
     return res;
   }
 
@@ -160,7 +219,7 @@ public class GraphUtil {
   // ///
   public Set<NNode> ancestorNodes(NNode n) {
     Set<NNode> res = Sets.newHashSet();
-    findAncestorNodes(n, res);
+    engines.get().traverseHierarchy(n, false, res);
     return res;
   }
 
@@ -0,0 +1,84 @@
+/*
+ * ReachabilityBenchmark.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator.gui.util;
+
+import com.google.common.collect.Lists;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.CompactFlowgraph;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NNode;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compares the NNode-list traversals of GraphUtil with the ReachabilityEngine
+ * on the flowgraph of the analyzed app. Enabled by
+ * "-debugCode benchmark_reachability"; every node is queried forward,
+ * backward and forward-to-op-nodes, first for equal results and then timed
+ * after a few warm-up rounds.
+ */
+public class ReachabilityBenchmark {
+  private static final int WARMUP_ROUNDS = 3;
+  private static final int MEASURED_ROUNDS = 5;
+
+  public static void run(CompactFlowgraph g) {
+    GraphUtil graphUtil = GraphUtil.v();
+    List<NNode> nodes = Lists.newArrayList();
+    for (int id = 0; id < g.size(); id++) {
+      if (g.node(id) != null) {
+        nodes.add(g.node(id));
+      }
+    }
+    System.out.println("[ReachabilityBenchmark] " + g + ", " + nodes.size() + " queries per kind");
+
+    int mismatches = 0;
+    for (NNode n : nodes) {
+      graphUtil.setCompactFlowgraph(null);
+      Set<NNode> reachable = graphUtil.reachableNodes(n);
+      Set<NNode> backward = graphUtil.backwardReachableNodes(n);
+      Set<NNode> forward = graphUtil.forwardReachableNodes(n);
+      graphUtil.setCompactFlowgraph(g);
+      if (!reachable.equals(graphUtil.reachableNodes(n))
+          || !backward.equals(graphUtil.backwardReachableNodes(n))
+          || !forward.equals(graphUtil.forwardReachableNodes(n))) {
+        mismatches++;
+        System.out.println("[ReachabilityBenchmark] Results differ for " + n);
+      }
+    }
+
+    long legacy = measure(graphUtil, null, nodes);
+    long engine = measure(graphUtil, g, nodes);
+    graphUtil.setCompactFlowgraph(g);
+    System.out.println("[ReachabilityBenchmark] lists: " + legacy / 1000000 + " ms/round, engine: "
+        + engine / 1000000 + " ms/round, speedup: " + String.format("%.2f", legacy * 1.0 / Math.max(engine, 1))
+        + "x, mismatches: " + mismatches);
+  }
+
+  /**
+   * @return the mean time of a measured round in nanoseconds
+   */
+  private static long measure(GraphUtil graphUtil, CompactFlowgraph g, List<NNode> nodes) {
+    graphUtil.setCompactFlowgraph(g);
+    long checksum = 0;
+    long total = 0;
+    for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (NNode n : nodes) {
+        checksum += graphUtil.reachableNodes(n).size();
+        checksum += graphUtil.backwardReachableNodes(n).size();
+        checksum += graphUtil.forwardReachableNodes(n).size();
+      }
+      if (round >= WARMUP_ROUNDS) {
+        total += System.nanoTime() - start;
+      }
+    }
+    // keeps the queries from being optimized away
+    System.out.println("[ReachabilityBenchmark] " + (g == null ? "lists" : "engine") + " checksum: " + checksum);
+    return total / MEASURED_ROUNDS;
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * ReachabilityEngine.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator.gui.util;
+
+import edu.osu.cse.presto.android.gator.gui.flowgraph.CompactFlowgraph;
+import edu.osu.cse.presto.android.gator.gui.flowgraph.nodes.NNode;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * Graph traversals over NNode ids with a visited bitset and an int worklist
+ * that are kept between queries. Only the bits of the last result are cleared
+ * before the next query, so a query costs time proportional to what it visits.
+ * Not thread-safe: GraphUtil keeps one engine per thread.
+ * <p>
+ * After a query, the visited ids are result(0) .. result(resultSize() - 1) in
+ * visiting order.
+ */
+public class ReachabilityEngine {
+  private long[] visited = new long[1];
+  private int[] worklist = new int[64];
+  private NNode[] stack = new NNode[64];
+  private int[] result = new int[64];
+  private int resultSize;
+  // marked but not part of the result, e.g. an excluded start node
+  private int excluded = -1;
+
+  private void reset(int numIds) {
+    for (int i = 0; i < resultSize; i++) {
+      clear(result[i]);
+    }
+    if (excluded >= 0) {
+      clear(excluded);
+      excluded = -1;
+    }
+    resultSize = 0;
+    int words = (numIds + 63) >>> 6;
+    if (visited.length < words) {
+      visited = new long[Math.max(words, visited.length * 2)];
+    }
+  }
+
+  private void clear(int id) {
+    visited[id >>> 6] &= ~(1L << id);
+  }
+
+  private boolean mark(int id) {
+    long bit = 1L << id;
+    long word = visited[id >>> 6];
+    if ((word & bit) != 0) {
+      return false;
+    }
+    visited[id >>> 6] = word | bit;
+    return true;
+  }
+
+  private void addResult(int id) {
+    if (resultSize == result.length) {
+      result = Arrays.copyOf(result, resultSize * 2);
+    }
+    result[resultSize++] = id;
+  }
+
+  private int push(int top, int id) {
+    if (top == worklist.length) {
+      worklist = Arrays.copyOf(worklist, top * 2);
+    }
+    worklist[top] = id;
+    return top + 1;
+  }
+
+  /**
+   * Visits the nodes reachable from start along the given rows of g, i.e.
+   * g.succOffsets/g.succTargets or g.predOffsets/g.predTargets. With
+   * stopAtOpNode, op nodes other than start are visited but not expanded.
+   *
+   * @param includeStart if false, start is not in the result even on a cycle
+   * @return the number of visited nodes
+   */
+  public int traverse(CompactFlowgraph g, int[] offsets, int[] targets, int start, boolean includeStart,
+                      boolean stopAtOpNode) {
+    reset(g.size());
+    mark(start);
+    if (includeStart) {
+      addResult(start);
+    } else {
+      excluded = start;
+    }
+    int top = push(0, start);
+    while (top > 0) {
+      int n = worklist[--top];
+      for (int i = offsets[n], end = offsets[n + 1]; i < end; i++) {
+        int s = targets[i];
+        if (!mark(s)) {
+          continue;
+        }
+        addResult(s);
+        if (!stopAtOpNode || !g.isOpNode(s)) {
+          top = push(top, s);
+        }
+      }
+    }
+    return resultSize;
+  }
+
+  /**
+   * Whether target is among the nodes reachable from start along successor
+   * edges, stopping at op nodes; start reaches itself. Returns as soon as
+   * target is visited.
+   */
+  public boolean reaches(CompactFlowgraph g, int start, int target) {
+    if (start == target) {
+      return true;
+    }
+    reset(g.size());
+    mark(start);
+    excluded = start;
+    int[] offsets = g.succOffsets;
+    int[] targets = g.succTargets;
+    int top = push(0, start);
+    while (top > 0) {
+      int n = worklist[--top];
+      for (int i = offsets[n], end = offsets[n + 1]; i < end; i++) {
+        int s = targets[i];
+        if (!mark(s)) {
+          continue;
+        }
+        addResult(s);
+        if (s == target) {
+          return true;
+        }
+        if (!g.isOpNode(s)) {
+          top = push(top, s);
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Adds start and its descendants (children == true) or ancestors in the
+   * parent/child hierarchy to nodes. Those edges are added while the solver
+   * runs, so they are read from the nodes rather than from a snapshot.
+   */
+  public void traverseHierarchy(NNode start, boolean children, Collection<NNode> nodes) {
+    reset(NNode.maxId() + 1);
+    mark(start.id);
+    addResult(start.id);
+    nodes.add(start);
+    int top = 0;
+    stack[top++] = start;
+    while (top > 0) {
+      NNode n = stack[--top];
+      stack[top] = null;
+      Iterator<NNode> iter = children ? n.getChildren().iterator() : n.getParents();
+      while (iter.hasNext()) {
+        NNode s = iter.next();
+        if (!mark(s.id)) {
+          continue;
+        }
+        addResult(s.id);
+        nodes.add(s);
+        if (top == stack.length) {
+          stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top++] = s;
+      }
+    }
+  }
+
+  public int resultSize() {
+    return resultSize;
+  }
+
+  public int result(int i) {
+    return result[i];
+  }
+
+  public void addResultsTo(CompactFlowgraph g, Collection<NNode> nodes) {
+    for (int i = 0; i < resultSize; i++) {
+      nodes.add(g.node(result[i]));
+    }
+  }
+}
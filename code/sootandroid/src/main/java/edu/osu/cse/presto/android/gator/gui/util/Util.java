@@ -73,7 +73,7 @@ public class Util {
   // <class, <subsig, pos of intent>>
   private final Map<SootClass, Map<String, Pair<Integer, Integer>>> menuItemSetIntentMethods = Maps.newHashMap();
   // <class, <subsig, pos of object>>
-  private final Map<SootClass, Map<String, Integer>> getClassMethods = Maps.newHashMap();
+  protected final Map<SootClass, Map<String, Integer>> getClassMethods = Maps.newHashMap();
   //<class, <subsig, pos of item>>
   private final Map<SootClass, Map<String, Integer>> getIdMethods = Maps.newHashMap();
   //<class, <subsig, pos of inserted element>>
@@ -10,12 +10,10 @@
 package edu.osu.cse.presto.android.gator.transformation.clients;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import edu.osu.cse.presto.android.gator.Logger;
 import edu.osu.cse.presto.android.gator.transformation.Transformation;
 import edu.osu.cse.presto.android.gator.xml.ApktoolResXMLReader;
-import edu.osu.cse.presto.android.gator.xml.NameValueFunction;
 import soot.*;
 import soot.jimple.IntConstant;
 import soot.jimple.InvokeExpr;
@@ -23,7 +21,6 @@ import soot.jimple.Stmt;
 import soot.jimple.toolkits.callgraph.CallGraph;
 import soot.jimple.toolkits.callgraph.Sources;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Consumer;
@@ -68,10 +65,8 @@ public class GoogleAnalyticsStatsClient implements Transformation.Client {
                     }
                     Logger.info(TAG, "newtracker.int.constant:::" + currentStmt);
                     int resId = ((IntConstant) v).value;
-                    HashMap<String, Integer> rXmlMap = Maps.newHashMap();
-                    HashMap<Integer, String> invRXmlMap = Maps.newHashMap();
-                    ApktoolResXMLReader.v().readIds("xml", NameValueFunction.mapInvMap(rXmlMap, invRXmlMap));
-                    String autoString = ApktoolResXMLReader.v().readXmlFirst(invRXmlMap.get(resId), "bool", "ga_autoActivityTracking");
+                    String xmlName = ApktoolResXMLReader.v().getName("xml", resId);
+                    String autoString = ApktoolResXMLReader.v().readXmlFirst(xmlName, "bool", "ga_autoActivityTracking");
                     if (autoString != null && autoString.equalsIgnoreCase("true")) {
                       Logger.info(TAG, "auto.true.xml");
                     }
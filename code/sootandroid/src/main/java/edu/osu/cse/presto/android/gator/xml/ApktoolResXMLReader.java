@@ -9,25 +9,41 @@
 
 package edu.osu.cse.presto.android.gator.xml;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import edu.osu.cse.presto.android.gator.Configs;
 import edu.osu.cse.presto.android.gator.Logger;
-import org.w3c.dom.Document;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import java.io.FileNotFoundException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
+/**
+ * Reads the resource files decoded by apktool. res/values/public.xml is
+ * parsed once, on first use, into a table per resource type; the files in
+ * res/xml are parsed once each. Both are immutable after they are built and
+ * may be read from several threads.
+ */
 public class ApktoolResXMLReader {
   static final String TAG = ApktoolResXMLReader.class.getSimpleName();
   String resDir = Configs.apktoolDir + "/res/values/";
 
   private static ApktoolResXMLReader ourInstance = new ApktoolResXMLReader();
 
+  // type -> ids of public.xml; null until first used
+  private volatile Map<String, IdTable> idTables;
+
+  // file in res/xml -> its elements; see readElements
+  private final Map<String, List<Element>> xmlFiles = new ConcurrentHashMap<>();
+
   public static ApktoolResXMLReader v() {
     return ourInstance;
   }
@@ -35,34 +51,208 @@ public class ApktoolResXMLReader {
   private ApktoolResXMLReader() {
   }
 
-  public void readIds(String expectedType, NameValueFunction nvf) {
-    String file = resDir + "public.xml";
-    Document doc;
-    try {
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      doc = dBuilder.parse(file);
+  /**
+   * The names and ids of one resource type, in the order of public.xml.
+   */
+  static class IdTable {
+    final String[] names;
+    final int[] ids;
+    final Map<String, Integer> nameToId;
+    // ids sorted, and the name of each
+    final int[] sortedIds;
+    final String[] sortedNames;
+
+    IdTable(List<String> nameList, List<Integer> idList) {
+      int n = nameList.size();
+      names = nameList.toArray(new String[n]);
+      ids = new int[n];
+      nameToId = Maps.newHashMapWithExpectedSize(n);
+      Integer[] order = new Integer[n];
+      for (int i = 0; i < n; i++) {
+        ids[i] = idList.get(i);
+        nameToId.put(names[i], ids[i]);
+        order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer a, Integer b) {
+          return Integer.compare(ids[a], ids[b]);
+        }
+      });
+      sortedIds = new int[n];
+      sortedNames = new String[n];
+      for (int i = 0; i < n; i++) {
+        sortedIds[i] = ids[order[i]];
+        sortedNames[i] = names[order[i]];
+      }
+    }
+
+    String nameOf(int id) {
+      int i = Arrays.binarySearch(sortedIds, id);
+      return i < 0 ? null : sortedNames[i];
+    }
+  }
+
+  private Map<String, IdTable> idTables() {
+    Map<String, IdTable> tables = idTables;
+    if (tables == null) {
+      synchronized (this) {
+        tables = idTables;
+        if (tables == null) {
+          tables = readPublicXml(resDir + "public.xml");
+          idTables = tables;
+        }
+      }
+    }
+    return tables;
+  }
+
+  private static Map<String, IdTable> readPublicXml(String file) {
+    Map<String, List<String>> names = Maps.newHashMap();
+    Map<String, List<Integer>> ids = Maps.newHashMap();
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+      while (reader.hasNext()) {
+        if (reader.next() != XMLStreamConstants.START_ELEMENT || !"public".equals(reader.getLocalName())) {
+          continue;
+        }
+        String type = reader.getAttributeValue(null, "type");
+        if (!names.containsKey(type)) {
+          names.put(type, Lists.<String>newArrayList());
+          ids.put(type, Lists.<Integer>newArrayList());
+        }
+        names.get(type).add(reader.getAttributeValue(null, "name"));
+        ids.get(type).add(Integer.decode(reader.getAttributeValue(null, "id")));
+      }
+      reader.close();
     } catch (FileNotFoundException fnfe) {
-      Logger.warn(expectedType + " cannot be read: " + file + " not found.");
+      Logger.warn("Resource ids cannot be read: " + file + " not found.");
       Logger.warn("Please use ApkTool to decode/decompress the APK first.");
-      return;
-    } catch (Exception ex) {
+      return Maps.newHashMap();
+    } catch (IOException | XMLStreamException ex) {
       throw new RuntimeException(ex);
     }
-    Logger.verb(TAG, "--- Reading " + file);
-    NodeList nodes = doc.getElementsByTagName("public");
-    if (nodes == null) {
+    Logger.verb(TAG, "--- Read " + file);
+    Map<String, IdTable> tables = Maps.newHashMap();
+    for (String type : names.keySet()) {
+      tables.put(type, new IdTable(names.get(type), ids.get(type)));
+    }
+    return tables;
+  }
+
+  public void readIds(String expectedType, NameValueFunction nvf) {
+    IdTable table = idTables().get(expectedType);
+    if (table == null) {
       return;
     }
-    for (int i = 0; i < nodes.getLength(); i++) {
-      Node n = nodes.item(i);
-      NamedNodeMap attrs = n.getAttributes();
-      String type = attrs.getNamedItem("type").getTextContent();
-      if (!type.equals(expectedType)) continue;
-      String name = attrs.getNamedItem("name").getTextContent();
-      String id = attrs.getNamedItem("id").getTextContent();
-      nvf.feed(name, Integer.decode(id));
+    for (int i = 0; i < table.names.length; i++) {
+      nvf.feed(table.names[i], table.ids[i]);
+    }
+  }
+
+  /**
+   * @return the id of the resource, or -1 if public.xml has none
+   */
+  public int getId(String type, String name) {
+    IdTable table = idTables().get(type);
+    Integer id = table == null ? null : table.nameToId.get(name);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * @return the name of the resource with the given id, or null
+   */
+  public String getName(String type, int id) {
+    IdTable table = idTables().get(type);
+    return table == null ? null : table.nameOf(id);
+  }
+
+  /**
+   * An element of a file in res/xml, with its name attribute and its text.
+   */
+  static class Element {
+    final String tag;
+    final String name;
+    final String text;
+
+    Element(String tag, String name, String text) {
+      this.tag = tag;
+      this.name = name;
+      this.text = text;
+    }
+  }
+
+  // the elements with a name attribute, in document order
+  private List<Element> readElements(String xmlName, final String expectedType) {
+    if (!xmlName.endsWith(".xml"))
+      xmlName = xmlName + ".xml";
+    final String file = Configs.apktoolDir + "/res/xml/" + xmlName;
+    return xmlFiles.computeIfAbsent(file, new Function<String, List<Element>>() {
+      @Override
+      public List<Element> apply(String f) {
+        try {
+          return parseElements(f);
+        } catch (FileNotFoundException e) {
+          Logger.warn(expectedType + " cannot be read: " + f + " not found.");
+          Logger.warn("Please use ApkTool to decode/decompress the APK first.");
+          if (Configs.exitAfterAnalysis) {
+            System.exit(-1);
+          }
+          // in a batch, only this app fails
+          throw new RuntimeException(f + " not found", e);
+        } catch (IOException | XMLStreamException ex) {
+          throw new RuntimeException(ex);
+        }
+      }
+    });
+  }
+
+  private static List<Element> parseElements(String file) throws IOException, XMLStreamException {
+    List<Element> elements = Lists.newArrayList();
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+      // the open elements with a name attribute: their index in elements,
+      // depth and text so far
+      List<Integer> open = Lists.newArrayList();
+      List<Integer> depths = Lists.newArrayList();
+      List<StringBuilder> texts = Lists.newArrayList();
+      int depth = 0;
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            depth++;
+            String name = reader.getAttributeValue(null, "name");
+            if (name != null) {
+              open.add(elements.size());
+              depths.add(depth);
+              texts.add(new StringBuilder());
+              elements.add(new Element(reader.getLocalName(), name, null));
+            }
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            for (StringBuilder text : texts) {
+              text.append(reader.getText());
+            }
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            int last = open.size() - 1;
+            if (last >= 0 && depths.get(last) == depth) {
+              int index = open.remove(last);
+              depths.remove(last);
+              Element e = elements.get(index);
+              elements.set(index, new Element(e.tag, e.name, texts.remove(last).toString()));
+            }
+            depth--;
+            break;
+          default:
+            break;
+        }
+      }
+      reader.close();
     }
+    return elements;
   }
 
   /**
@@ -71,31 +261,10 @@ public class ApktoolResXMLReader {
    * @author Hailong Zhang
    */
   public String readXmlFirst(String xmlName, String expectedType, String expectedName) {
-    if (!xmlName.endsWith(".xml"))
-      xmlName = xmlName + ".xml";
-    String file = Configs.apktoolDir + "/res/xml/" + xmlName;
-    DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-    Document doc = null;
-    try {
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      doc = dBuilder.parse(file);
-    } catch (FileNotFoundException e) {
-      Logger.warn(expectedType + " cannot be read: " + file + " not found.");
-      Logger.warn("Please use ApkTool to decode/decompress the APK first.");
-      System.exit(-1);
-    } catch (Exception ex) {
-      throw new RuntimeException(ex);
-    }
-    NodeList nodes = doc.getElementsByTagName(expectedType);
-    if (nodes == null) {
-      return null;
-    }
-    for (int i = 0; i < nodes.getLength(); i++) {
-      Node n = nodes.item(i);
-      NamedNodeMap attrs = n.getAttributes();
-      String name = attrs.getNamedItem("name").getTextContent();
-      if (!name.equals(expectedName)) continue;
-      return n.getTextContent();
+    for (Element e : readElements(xmlName, expectedType)) {
+      if (e.tag.equals(expectedType) && e.name.equals(expectedName)) {
+        return e.text;
+      }
     }
     return null;
   }
@@ -105,31 +274,11 @@ public class ApktoolResXMLReader {
    * @author Hailong Zhang
    */
   public Map<String, String> readXml(String xmlName, String expectedType) {
-    if (!xmlName.endsWith(".xml"))
-      xmlName = xmlName + ".xml";
     Map<String, String> ret = Maps.newHashMap();
-    String file = Configs.apktoolDir + "/res/xml/" + xmlName;
-    DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-    Document doc = null;
-    try {
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      doc = dBuilder.parse(file);
-    } catch (FileNotFoundException e) {
-      Logger.warn(expectedType + " cannot be read: " + file + " not found.");
-      Logger.warn("Please use ApkTool to decode/decompress the APK first.");
-      System.exit(-1);
-    } catch (Exception ex) {
-      throw new RuntimeException(ex);
-    }
-    NodeList nodes = doc.getElementsByTagName(expectedType);
-    if (nodes == null) {
-      return null;
-    }
-    for (int i = 0; i < nodes.getLength(); i++) {
-      Node n = nodes.item(i);
-      NamedNodeMap attrs = n.getAttributes();
-      String name = attrs.getNamedItem("name").getTextContent();
-      ret.put(name, n.getTextContent());
+    for (Element e : readElements(xmlName, expectedType)) {
+      if (e.tag.equals(expectedType)) {
+        ret.put(e.name, e.text);
+      }
     }
     return ret;
   }
@@ -10,6 +10,8 @@ package edu.osu.cse.presto.android.gator.xml;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import edu.osu.cse.presto.android.gator.AnalysisCache;
 import edu.osu.cse.presto.android.gator.Configs;
 import edu.osu.cse.presto.android.gator.Logger;
 import org.w3c.dom.*;
@@ -23,6 +25,7 @@ import javax.xml.parsers.DocumentBuilderFactory;
 import java.io.File;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.Function;
 
 /*
  * This is a re-design of the xml parsing component.
@@ -216,7 +219,9 @@ class DefaultXMLParser extends XMLParser.AbstractXMLParser {
 
     // hailong: disable as we don't need layout info
     // Then, layout and menu. Later, we may need to read preference as well.
-//    readLayout();
+    if (Configs.readLayouts) {
+      readLayout();
+    }
 //    readMenu();
 
     long estimatedTime = System.nanoTime() - startTime;
@@ -407,21 +412,81 @@ class DefaultXMLParser extends XMLParser.AbstractXMLParser {
     invRMenuMap = Maps.newHashMap();
     rXmlMap = Maps.newHashMap();
     invRXmlMap = Maps.newHashMap();
+    sysRIdMap = Maps.newHashMap();
+    invSysRIdMap = Maps.newHashMap();
+    sysRDrawableMap = Maps.newHashMap();
+    invSysRDrawableMap = Maps.newHashMap();
+    sysRLayoutMap = Maps.newHashMap();
+    invSysRLayoutMap = Maps.newHashMap();
+    sysRMenuMap = Maps.newHashMap();
+    invSysRMenuMap = Maps.newHashMap();
+
+    Map<String, NameValueFunction> sections = Maps.newLinkedHashMap();
+    sections.put("id", NameValueFunction.mapInvMap(rIdMap, invRIdMap));
+    sections.put("drawable", NameValueFunction.mapInvMap(rDrawableMap, invRDrawableMap));
+    sections.put("layout", NameValueFunction.mapInvMap(rLayoutMap, invRLayoutMap));
+    sections.put("string", NameValueFunction.mapInvMap(rStringMap, invRStringMap));
+    sections.put("menu", NameValueFunction.mapInvMap(rMenuMap, invRMenuMap));
+    sections.put("xml", NameValueFunction.mapInvMap(rXmlMap, invRXmlMap));
+    sections.put("sys.id", NameValueFunction.mapInvMap(sysRIdMap, invSysRIdMap));
+    sections.put("sys.drawable", NameValueFunction.mapInvMap(sysRDrawableMap, invSysRDrawableMap));
+    sections.put("sys.layout", NameValueFunction.mapInvMap(sysRLayoutMap, invSysRLayoutMap));
+    sections.put("sys.menu", NameValueFunction.mapInvMap(sysRMenuMap, invSysRMenuMap));
+    sections.put("sys.string", NameValueFunction.mapInvMap(sysRStringMap, invSysRStringMap));
+
+    // the tables depend on the APK and the platform only, so a previous run
+    // on the same APK may have left them in the cache. Pairs are replayed in
+    // the order they were read, so the inverse maps come out the same.
+    AnalysisCache cache = AnalysisCache.v();
+    Map<String, List<Pair<String, Integer>>> cached = cache.loadResourceIds();
+    if (cached != null && cached.keySet().equals(sections.keySet())) {
+      for (Map.Entry<String, List<Pair<String, Integer>>> entry : cached.entrySet()) {
+        NameValueFunction nvf = sections.get(entry.getKey());
+        for (Pair<String, Integer> pair : entry.getValue()) {
+          nvf.feed(pair.getO1(), pair.getO2());
+        }
+      }
+      return;
+    }
+    if (!cache.isEnabled()) {
+      readRFile(sections);
+      return;
+    }
+    Map<String, List<Pair<String, Integer>>> recorded = Maps.newLinkedHashMap();
+    for (Map.Entry<String, NameValueFunction> entry : sections.entrySet()) {
+      List<Pair<String, Integer>> pairs = Lists.newArrayList();
+      recorded.put(entry.getKey(), pairs);
+      entry.setValue(recording(entry.getValue(), pairs));
+    }
+    readRFile(sections);
+    cache.storeResourceIds(recorded);
+  }
 
+  private static NameValueFunction recording(final NameValueFunction nvf,
+                                             final List<Pair<String, Integer>> pairs) {
+    return new NameValueFunction() {
+      public void feed(String name, int val) {
+        pairs.add(new Pair<>(name, val));
+        nvf.feed(name, val);
+      }
+    };
+  }
+
+  protected void readRFile(Map<String, NameValueFunction> sections) {
     // hailong:
     // in apk mode, all ids are stored in res/values/public.xml
     if (Configs.apkMode) {
-      ApktoolResXMLReader.v().readIds("id", NameValueFunction.mapInvMap(rIdMap, invRIdMap));
-      ApktoolResXMLReader.v().readIds("drawable", NameValueFunction.mapInvMap(rDrawableMap, invRDrawableMap));
-      ApktoolResXMLReader.v().readIds("layout", NameValueFunction.mapInvMap(rLayoutMap, invRLayoutMap));
-      ApktoolResXMLReader.v().readIds("string", NameValueFunction.mapInvMap(rStringMap, invRStringMap));
-      ApktoolResXMLReader.v().readIds("menu", NameValueFunction.mapInvMap(rMenuMap, invRMenuMap));
-      ApktoolResXMLReader.v().readIds("xml", NameValueFunction.mapInvMap(rXmlMap, invRXmlMap));
+      ApktoolResXMLReader.v().readIds("id", sections.get("id"));
+      ApktoolResXMLReader.v().readIds("drawable", sections.get("drawable"));
+      ApktoolResXMLReader.v().readIds("layout", sections.get("layout"));
+      ApktoolResXMLReader.v().readIds("string", sections.get("string"));
+      ApktoolResXMLReader.v().readIds("menu", sections.get("menu"));
+      ApktoolResXMLReader.v().readIds("xml", sections.get("xml"));
     }
 
     // R.id
     final String rIdClass = appPkg + ".R$id";
-    readIntConstFields(rIdClass, NameValueFunction.mapInvMap(rIdMap, invRIdMap));
+    readIntConstFields(rIdClass, sections.get("id"));
 
     //Moded by Haowei
 //    for (String indice : rIdMap.keySet()){
@@ -429,11 +494,51 @@ class DefaultXMLParser extends XMLParser.AbstractXMLParser {
 //    }
     //Mod end
 
-    sysRIdMap = Maps.newHashMap();
-    invSysRIdMap = Maps.newHashMap();
+    // hailong:
+    // R.drawable
+    final String rDrawableClass = appPkg + ".R$drawable";
+    readIntConstFields(rDrawableClass, sections.get("drawable"));
+
+    // R.layout
+    final String rLayoutClass = appPkg + ".R$layout";
+    readIntConstFields(rLayoutClass, sections.get("layout"));
+
+    // R.menu
+    final String rMenuClass = appPkg + ".R$menu";
+    // it may not exist
+    String menuResDir = Configs.project + "/res/menu";
+    if (Configs.apkMode) menuResDir = Configs.apktoolDir + "/res/menu"; // hailong:
+    if (new File(menuResDir).exists()) {
+      readIntConstFields(rMenuClass, sections.get("menu"));
+    }
+
+    // R.string
+    final String rStringClass = appPkg + ".R$string";
+    String valuesDir = Configs.project + "/res/values";
+    if (Configs.apkMode) valuesDir = Configs.apktoolDir + "/res/values/string.xml"; // hailong:
+    if (new File(valuesDir).exists()) {
+      readIntConstFields(rStringClass, sections.get("string"));
+    }
+
+    // the android.R and com.android.internal.R tables depend on the platform
+    // only
+    PlatformSnapshot.v().feed(sections);
+  }
+
+  // the R classes read by readSystemRFile
+  static final String[] SYSTEM_R_CLASSES = {
+          "android.R$id", "com.android.internal.R$id", "android.R$drawable",
+          "android.R$layout", "com.android.internal.R$layout", "android.R$menu",
+          "com.android.internal.R$menu", "android.R$string", "com.android.internal.R$string",
+  };
+
+  /**
+   * Reads the sys.* sections from android.R and com.android.internal.R. The
+   * result depends on the platform only; see PlatformSnapshot.
+   */
+  static void readSystemRFile(Map<String, NameValueFunction> sections) {
     final String sysRIdClass = "android.R$id";
-    NameValueFunction sysRIdNVF = NameValueFunction.mapInvMap(sysRIdMap,
-            invSysRIdMap);
+    NameValueFunction sysRIdNVF = sections.get("sys.id");
     readIntConstFields(sysRIdClass, sysRIdNVF);
 
     final String internalSysRIdClass = "com.android.internal.R$id";
@@ -455,26 +560,11 @@ class DefaultXMLParser extends XMLParser.AbstractXMLParser {
     //Mod end
 
     // hailong:
-    // R.drawable
-    final String rDrawableClass = appPkg + ".R$drawable";
-    readIntConstFields(rDrawableClass, NameValueFunction.mapInvMap(rDrawableMap, invRDrawableMap));
-
-    // hailong:
-    sysRDrawableMap = Maps.newHashMap();
-    invSysRDrawableMap = Maps.newHashMap();
     final String sysRDrawableClass = "android.R$drawable";
-    readIntConstFields(sysRDrawableClass, NameValueFunction.mapInvMap(sysRDrawableMap, invSysRDrawableMap));
+    readIntConstFields(sysRDrawableClass, sections.get("sys.drawable"));
 
-    // R.layout
-    final String rLayoutClass = appPkg + ".R$layout";
-    readIntConstFields(rLayoutClass,
-            NameValueFunction.mapInvMap(rLayoutMap, invRLayoutMap));
-
-    sysRLayoutMap = Maps.newHashMap();
-    invSysRLayoutMap = Maps.newHashMap();
     final String sysRLayoutClass = "android.R$layout";
-    NameValueFunction sysRLayoutNVF = NameValueFunction.mapInvMap(
-            sysRLayoutMap, invSysRLayoutMap);
+    NameValueFunction sysRLayoutNVF = sections.get("sys.layout");
     readIntConstFields(sysRLayoutClass, sysRLayoutNVF);
     final String internalSysRLayoutClass = "com.android.internal.R$layout";
     idCls = Scene.v().getSootClass(internalSysRLayoutClass);
@@ -489,35 +579,14 @@ class DefaultXMLParser extends XMLParser.AbstractXMLParser {
 //    }
     //Mod end
 
-    // R.menu
-    final String rMenuClass = appPkg + ".R$menu";
-    // it may not exist
-    String menuResDir = Configs.project + "/res/menu";
-    if (Configs.apkMode) menuResDir = Configs.apktoolDir + "/res/menu"; // hailong:
-    if (new File(menuResDir).exists()) {
-      readIntConstFields(rMenuClass,
-              NameValueFunction.mapInvMap(rMenuMap, invRMenuMap));
-    }
-    sysRMenuMap = Maps.newHashMap();
-    invSysRMenuMap = Maps.newHashMap();
     if (Configs.numericApiLevel > 10) {
-      NameValueFunction sysRMenuNVF = NameValueFunction.mapInvMap(sysRMenuMap,
-              invSysRMenuMap);
+      NameValueFunction sysRMenuNVF = sections.get("sys.menu");
       readIntConstFields("android.R$menu", sysRMenuNVF);
       ResourceConstantHelper.loadConstFromResFile(sysRMenuNVF, "menu", Configs.internalConstFile);
       readIntConstFields("com.android.internal.R$menu", sysRMenuNVF);
     }
 
-    // R.string
-    final String rStringClass = appPkg + ".R$string";
-    String valuesDir = Configs.project + "/res/values";
-    if (Configs.apkMode) valuesDir = Configs.apktoolDir + "/res/values/string.xml"; // hailong:
-    if (new File(valuesDir).exists()) {
-      readIntConstFields(rStringClass,
-              NameValueFunction.mapInvMap(rStringMap, invRStringMap));
-    }
-    NameValueFunction sysRStringNVF =
-            NameValueFunction.mapInvMap(sysRStringMap, invSysRStringMap);
+    NameValueFunction sysRStringNVF = sections.get("sys.string");
     readIntConstFields("android.R$string", sysRStringNVF);
     ResourceConstantHelper.loadConstFromResFile(sysRStringNVF, "string", Configs.internalConstFile);
     readIntConstFields("com.android.internal.R$string", sysRStringNVF);
@@ -555,242 +624,155 @@ class DefaultXMLParser extends XMLParser.AbstractXMLParser {
 
   protected static int nonRId = -0x7f040000;
 
-  protected HashMap<Integer, AndroidView> id2View;
-  protected HashMap<Integer, AndroidView> sysId2View;
-
-//  protected void readLayout() {
-//    id2View = Maps.newHashMap();
-//    readLayout(Configs.project, invRLayoutMap, id2View);
-//
-//    sysId2View = Maps.newHashMap();
-//    readLayout(Configs.sysProj, invSysRLayoutMap, sysId2View);
-//
-//    resolveIncludes(Configs.project, invRLayoutMap, id2View);
-//    resolveIncludes(Configs.sysProj, invSysRLayoutMap, sysId2View);
-//  }
-
-  // TODO: due to the way we implement resolveIncludes(), now we need
-  // to change findViewById.
-  protected void resolveIncludes(String proj, HashMap<Integer, String> nameMap,
-                                 HashMap<Integer, AndroidView> viewMap) {
-
-    HashMap<String, AndroidView> name2View = Maps.newHashMap();
-    for (Map.Entry<Integer, String> entry : nameMap.entrySet()) {
-      String name = entry.getValue();
-      AndroidView view = viewMap.get(entry.getKey());
-      name2View.put(name, view);
-    }
-    boolean isSys = (viewMap == sysId2View);
-    LinkedList<AndroidView> work = Lists.newLinkedList();
-    work.addAll(viewMap.values());
-    while (!work.isEmpty()) {
-      AndroidView view = work.remove();
-      for (int i = 0; i < view.getNumberOfChildren(); i++) {
-        IAndroidView child = view.getChildInternal(i);
-        if (child instanceof AndroidView) {
-          work.add((AndroidView) child);
-          continue;
-        }
-        IncludeAndroidView iav = (IncludeAndroidView) child;
-        String layoutId = iav.layoutId;
-        AndroidView tgt = name2View.get(layoutId);
-        if (tgt == null) {
-          // not exist, let's get it on-demand
-          String file = getLayoutFilePath(proj, layoutId, isSys);
-          if (file == null) {
-            System.err.println("[WARNING] Unknown layout " + layoutId
-                    + " included by " + view.getOrigin());
-            continue;
-          }
-          tgt = new AndroidView();
-          tgt.setParent(view, i);
-          tgt.setOrigin(file);
-          readLayout(file, tgt, isSys);
-          int newId = nonRId--;
-          viewMap.put(newId, tgt);
-          nameMap.put(newId, layoutId);
-        } else {
-          tgt = (AndroidView) tgt.deepCopy();
-          tgt.setParent(view, i);
-        }
-        Integer includeeId = iav.includeeId;
-        if (includeeId != null) {
-          tgt.setId(includeeId.intValue());
-        }
-        work.add(tgt);
+  protected HashMap<Integer, AndroidView> id2View = Maps.newHashMap();
+  protected HashMap<Integer, AndroidView> sysId2View = Maps.newHashMap();
+
+  // The layout files are parsed in parallel by LayoutLoader; the platform
+  // layouts come from the platform snapshot. The views are then
+  // built here, on one thread, as they need the R maps and the Scene.
+  protected void readLayout() {
+    long startTime = System.nanoTime();
+    Map<String, LayoutLoader.Layout> layouts = parseLayouts(Configs.project, invRLayoutMap, false);
+    Map<String, LayoutLoader.Layout> sysLayouts = Maps.newHashMap(PlatformSnapshot.v().getLayouts());
+    Logger.verb("XMLParser", "Layouts parsed: " + ((System.nanoTime() - startTime) * 1.0e-09) + " sec");
+
+    id2View = Maps.newHashMap();
+    readLayout(Configs.project, invRLayoutMap, layouts, id2View, false);
+    sysId2View = Maps.newHashMap();
+    readLayout(Configs.sysProj, invSysRLayoutMap, sysLayouts, sysId2View, true);
+  }
+
+  protected Map<String, LayoutLoader.Layout> parseLayouts(final String proj, HashMap<Integer, String> nameMap,
+                                                          final boolean isSys) {
+    return LayoutLoader.parse(nameMap.values(), new Function<String, String>() {
+      @Override
+      public String apply(String layoutFileName) {
+        return getLayoutFilePath(proj, layoutFileName, isSys);
       }
-    }
+    });
   }
 
-  protected void readLayout(String proj, HashMap<Integer, String> in,
-                            HashMap<Integer, AndroidView> out) {
+  protected void readLayout(String proj, HashMap<Integer, String> nameMap,
+                            Map<String, LayoutLoader.Layout> layouts,
+                            HashMap<Integer, AndroidView> viewMap, boolean isSys) {
     if (debug) {
       System.out.println("*** read layout of " + proj);
     }
-    boolean isSys = (invSysRLayoutMap == in);
-    assert Configs.project.equals(proj) ^ isSys;
-
-    for (Map.Entry<Integer, String> entry : in.entrySet()) {
-      Integer layoutFileId = entry.getKey();
-      String layoutFileName = entry.getValue();
+    // layouts read on demand for an include add entries to nameMap
+    for (Map.Entry<Integer, String> entry : Lists.newArrayList(nameMap.entrySet())) {
       AndroidView root = new AndroidView();
-      out.put(layoutFileId, root);
-
-      String file = getLayoutFilePath(proj, layoutFileName, isSys);
-      if (file == null) {
-        System.err.println("[WARNING] Cannot find " + layoutFileName
-                + ".xml in " + proj);
-        continue;
+      viewMap.put(entry.getKey(), root);
+      LayoutLoader.Layout layout = layouts.get(entry.getValue());
+      if (layout != null) {
+        Set<String> including = Sets.newHashSet(entry.getValue());
+        readLayout(proj, layout, root, isSys, layouts, nameMap, viewMap, including);
       }
-
-      readLayout(file, root, isSys);
     }
   }
 
-  protected void readLayout(String file, AndroidView root, boolean isSys) {
-    Document doc;
-    try {
-      DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      doc = dBuilder.parse(file);
-    } catch (Exception ex) {
-      throw new RuntimeException(ex);
+  // Builds the views of layout under view. Included layouts are expanded in
+  // place from their shared Layout; including holds the names of the layouts
+  // being expanded, to stop at include cycles.
+  protected void readLayout(String proj, LayoutLoader.Layout layout, AndroidView view, boolean isSys,
+                            Map<String, LayoutLoader.Layout> layouts, HashMap<Integer, String> nameMap,
+                            HashMap<Integer, AndroidView> viewMap, Set<String> including) {
+    String file = layout.origin;
+    view.setOrigin(file);
+
+    // Retrieve view id (android:id)
+    int guiId = -1;
+    if (layout.id != null) {
+      Integer guiIdObj = resolveAndroidId(layout.id, isSys, file);
+      if (guiIdObj != null) {
+        guiId = guiIdObj.intValue();
+      }
     }
 
-    Element rootElement = doc.getDocumentElement();
-    // In older versions, Preference could be put in layout folder and we do
-    // not support Prefernce yet.
-    if (rootElement.getTagName().equals("PreferenceScreen")) {
-      return;
+    if (debug) {
+      System.out.println(layout.guiName + " (" + guiId + ", " + layout.id + ")");
     }
 
-    LinkedList<Pair<Node, AndroidView>> work = Lists.newLinkedList();
-    work.add(new Pair<Node, AndroidView>(rootElement, root));
-    while (!work.isEmpty()) {
-      Pair<Node, AndroidView> p = work.removeFirst();
-      Node node = p.getO1();
-      AndroidView view = p.getO2();
-      view.setOrigin(file);
+    //Retrieve callback (android:onClick)
+    if (guiId != -1 && layout.onClick != null) {
+      Pair<String, Boolean> pair = new Pair<String, Boolean>(layout.onClick, false);
+      this.callbacksXML.put(guiId, pair);
+    }
 
-      NamedNodeMap attrMap = node.getAttributes();
-      if (attrMap == null) {
-        System.out.println(file + "!!!" + node.getClass() + "!!!"
-                + node.toString() + "!!!" + node.getTextContent());
-      }
-      // Retrieve view id (android:id)
-      Node idNode = attrMap.getNamedItem(ID_ATTR);
-      int guiId = -1;
-      String id = null;
-      if (idNode != null) {
-        String txt = idNode.getTextContent();
-        Pair<String, Integer> pair = parseAndroidId(txt, isSys);
-        id = pair.getO1();
-        Integer guiIdObj = pair.getO2();
-        if (guiIdObj == null) {
-          if (debug) {
-            System.err.println("[WARNING] unresolved android:id " + id + " in "
-                    + file);
-          }
-        } else {
-          guiId = guiIdObj.intValue();
-        }
-      }
+    // Retrieve text (android:text)
+    String text = layout.text == null ? null : convertAndroidTextToString(layout.text);
 
-      // Retrieve view type
-      String guiName = node.getNodeName();
-      if ("view".equals(guiName)) {
-        guiName = attrMap.getNamedItem("class").getTextContent();
-      } else if (guiName.equals("MenuItemView")) {
-        // FIXME(tony): this is an "approximation".
-        guiName = "android.view.MenuItem";
-      }
+    view.save(guiId, text, layout.guiName);
 
-      if (debug) {
-        System.out.println(guiName + " (" + guiId + ", " + id + ")");
+    for (LayoutLoader.Layout child : layout.children) {
+      if (child.includedLayout == null) {
+        AndroidView newView = new AndroidView();
+        newView.setParent(view);
+        readLayout(proj, child, newView, isSys, layouts, nameMap, viewMap, including);
+        continue;
       }
-
-      //Retrieve callback (android:onClick)
-      if (guiId != -1) {
-        String callback = readAndroidCallback(attrMap, "android:onClick");
-        if (callback != null) {
-          Pair<String, Boolean> pair = new Pair<String, Boolean>(callback, false);
-          this.callbacksXML.put(guiId, pair);
-        }
+      String layoutId = child.includedLayout;
+      if (including.contains(layoutId)) {
+        System.err.println("[WARNING] Recursive include of layout " + layoutId + " in " + file);
+        continue;
       }
-
-      // Retrieve text (android:text)
-      String text = readAndroidTextOrTitle(attrMap, TEXT_ATTR);
-
-      view.save(guiId, text, guiName);
-
-      NodeList children = node.getChildNodes();
-      for (int i = 0; i < children.getLength(); i++) {
-        Node newNode = children.item(i);
-        String nodeName = newNode.getNodeName();
-        if ("#comment".equals(nodeName)) {
-          continue;
-        }
-        if ("#text".equals(nodeName)) {
-          // possible for XML files created on a different operating system
-          // than the one our analysis is run on
-          continue;
-        }
-        if (nodeName.equals("requestFocus")) {
-          continue;
+      LayoutLoader.Layout tgt = layouts.get(layoutId);
+      boolean onDemand = false;
+      if (tgt == null) {
+        // not exist, let's get it on-demand
+        final String includeeFile = getLayoutFilePath(proj, layoutId, isSys);
+        if (includeeFile != null) {
+          tgt = LayoutLoader.parse(layoutId, new Function<String, String>() {
+            @Override
+            public String apply(String name) {
+              return includeeFile;
+            }
+          });
         }
-        if (!newNode.hasAttributes() && !"TableRow".equals(nodeName)
-                && !"View".equals(nodeName)) {
-          System.err.println("[WARNING] no attribute node "
-                  + newNode.getNodeName());
+        if (tgt != null) {
+          layouts.put(layoutId, tgt);
+          onDemand = true;
         }
-
-        if (newNode.getNodeName().equals("include")) {
-          attrMap = newNode.getAttributes();
-          String layoutTxt = attrMap.getNamedItem("layout").getTextContent();
-          String layoutId = null;
-          if (layoutTxt.startsWith("@layout/")) {
-            layoutId = layoutTxt.substring("@layout/".length());
-          } else if (layoutTxt.startsWith("@android:layout/")) {
-            layoutId = layoutTxt.substring("@android:layout/".length());
-          } else {
-            if (debug) {
-              throw new RuntimeException("[WARNING] Unhandled layout id "
-                      + layoutTxt);
-            }
-            continue;
-          }
-          Integer includeeId = null;
-          id = null;
-          idNode = attrMap.getNamedItem(ID_ATTR);
-          if (idNode != null) {
-            String txt = idNode.getTextContent();
-            Pair<String, Integer> pair = parseAndroidId(txt, isSys);
-            id = pair.getO1();
-            Integer guiIdObj = pair.getO2();
-            if (guiIdObj == null) {
-              if (debug) {
-                System.err.println("[WARNING] unresolved android:id " + id
-                        + " in " + file);
-              }
-            } else {
-              includeeId = guiIdObj;
-            }
-          }
-
-          // view.saveInclude(layoutId, includeeId);
-          IncludeAndroidView iav = new IncludeAndroidView(layoutId, includeeId);
-          iav.setParent(view);
-        } else {
-          AndroidView newView = new AndroidView();
-          newView.setParent(view);
-          work.add(new Pair<Node, AndroidView>(newNode, newView));
+      }
+      if (tgt == null) {
+        System.err.println("[WARNING] Unknown layout " + layoutId
+                + " included by " + file);
+        continue;
+      }
+      AndroidView includee = new AndroidView();
+      includee.setParent(view);
+      if (onDemand) {
+        // the included views also stand for the layout itself
+        int newId = nonRId--;
+        viewMap.put(newId, includee);
+        nameMap.put(newId, layoutId);
+      }
+      including.add(layoutId);
+      readLayout(proj, tgt, includee, isSys, layouts, nameMap, viewMap, including);
+      including.remove(layoutId);
+      if (child.id != null) {
+        Integer includeeId = resolveAndroidId(child.id, isSys, file);
+        if (includeeId != null) {
+          includee.setId(includeeId);
         }
       }
     }
   }
 
+  private Integer resolveAndroidId(String txt, boolean isSys, String file) {
+    Pair<String, Integer> pair = parseAndroidId(txt, isSys);
+    if (pair.getO2() == null && debug) {
+      System.err.println("[WARNING] unresolved android:id " + pair.getO1() + " in "
+              + file);
+    }
+    return pair.getO2();
+  }
+
   protected String getLayoutFilePath(String project, String layoutId,
                                      boolean isSys) {
+    return layoutFilePath(project, layoutId, isSys);
+  }
+
+  static String layoutFilePath(String project, String layoutId, boolean isSys) {
     // special cases
     if ("keyguard_eca".equals(layoutId)) {
       // its real name is defined in values*/alias.xml
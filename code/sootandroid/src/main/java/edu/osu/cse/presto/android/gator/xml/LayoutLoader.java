@@ -0,0 +1,190 @@
+/*
+ * LayoutLoader.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator.xml;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Parses layout files with StAX, on the threads of a parallel stream, into
+ * Layout trees. A Layout holds the raw attribute text only; resolving ids,
+ * strings and view classes needs the R maps and the Scene, so that is left
+ * to DefaultXMLParser, which turns Layouts into AndroidViews on one thread.
+ * Layouts are immutable: an included layout is parsed once and its Layout is
+ * shared by all the places that include it. PlatformSnapshot keeps the
+ * platform layouts per API level.
+ */
+class LayoutLoader {
+  /**
+   * A view, or an &lt;include&gt; if includedLayout is not null.
+   */
+  static final class Layout {
+    // file the view is declared in
+    final String origin;
+    // the tag, or the class of a <view class=...>
+    final String guiName;
+    // android:id, android:onClick and android:text as written
+    final String id;
+    final String onClick;
+    final String text;
+    // name of the included layout, without the @layout/ prefix
+    final String includedLayout;
+    final List<Layout> children;
+
+    Layout(String origin, String guiName, String id, String onClick, String text,
+           String includedLayout, List<Layout> children) {
+      this.origin = origin;
+      this.guiName = guiName;
+      this.id = id;
+      this.onClick = onClick;
+      this.text = text;
+      this.includedLayout = includedLayout;
+      this.children = Collections.unmodifiableList(children);
+    }
+  }
+
+  private static final List<Layout> NO_CHILDREN = Collections.emptyList();
+
+  /**
+   * Parses the layouts of the given names in parallel.
+   *
+   * @param pathOf file of a layout name, or null if there is none
+   * @return layout name -> its Layout; names without a file, and preference
+   * screens, are left out
+   */
+  static Map<String, Layout> parse(Collection<String> names, final Function<String, String> pathOf) {
+    final Map<String, Layout> layouts = new ConcurrentHashMap<>();
+    new ArrayList<>(names).parallelStream().forEach(new Consumer<String>() {
+      @Override
+      public void accept(String name) {
+        Layout layout = parse(name, pathOf);
+        if (layout != null) {
+          layouts.put(name, layout);
+        }
+      }
+    });
+    return layouts;
+  }
+
+  static Layout parse(String name, Function<String, String> pathOf) {
+    String file = pathOf.apply(name);
+    if (file == null) {
+      System.err.println("[WARNING] Cannot find " + name + ".xml");
+      return null;
+    }
+    try {
+      return parse(file);
+    } catch (IOException | XMLStreamException ex) {
+      throw new RuntimeException(file, ex);
+    }
+  }
+
+  // the same views DefaultXMLParser used to build from the DOM
+  static Layout parse(String file) throws IOException, XMLStreamException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+      XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(in);
+      // one entry per open element that becomes a view: its attributes,
+      // and the children seen so far
+      ArrayDeque<String[]> views = new ArrayDeque<>();
+      ArrayDeque<List<Layout>> children = new ArrayDeque<>();
+      Layout root = null;
+      // > 0 inside an element that is ignored with its subtree
+      int skipped = 0;
+      boolean isRoot = true;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          String tag = qualifiedName(reader.getPrefix(), reader.getLocalName());
+          if (skipped > 0) {
+            skipped++;
+            continue;
+          }
+          if (isRoot) {
+            isRoot = false;
+            // In older versions, Preference could be put in layout folder
+            // and we do not support Prefernce yet.
+            if (tag.equals("PreferenceScreen")) {
+              return null;
+            }
+          } else {
+            if (tag.equals("requestFocus")) {
+              skipped++;
+              continue;
+            }
+            if (reader.getAttributeCount() == 0 && !"TableRow".equals(tag) && !"View".equals(tag)) {
+              System.err.println("[WARNING] no attribute node " + tag);
+            }
+            if (tag.equals("include")) {
+              skipped++;
+              String layoutTxt = attribute(reader, "layout");
+              String layoutId;
+              if (layoutTxt.startsWith("@layout/")) {
+                layoutId = layoutTxt.substring("@layout/".length());
+              } else if (layoutTxt.startsWith("@android:layout/")) {
+                layoutId = layoutTxt.substring("@android:layout/".length());
+              } else {
+                continue;
+              }
+              children.peek().add(new Layout(file, null, attribute(reader, DefaultXMLParser.ID_ATTR),
+                      null, null, layoutId, NO_CHILDREN));
+              continue;
+            }
+          }
+          String guiName = tag;
+          if ("view".equals(guiName)) {
+            guiName = attribute(reader, "class");
+          } else if (guiName.equals("MenuItemView")) {
+            // FIXME(tony): this is an "approximation".
+            guiName = "android.view.MenuItem";
+          }
+          views.push(new String[]{guiName, attribute(reader, DefaultXMLParser.ID_ATTR),
+                  attribute(reader, "android:onClick"), attribute(reader, DefaultXMLParser.TEXT_ATTR)});
+          children.push(new ArrayList<Layout>());
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          if (skipped > 0) {
+            skipped--;
+            continue;
+          }
+          String[] view = views.pop();
+          List<Layout> viewChildren = children.pop();
+          Layout layout = new Layout(file, view[0], view[1], view[2], view[3], null,
+                  viewChildren.isEmpty() ? NO_CHILDREN : viewChildren);
+          if (children.isEmpty()) {
+            root = layout;
+          } else {
+            children.peek().add(layout);
+          }
+        }
+      }
+      reader.close();
+      return root;
+    }
+  }
+
+  private static String qualifiedName(String prefix, String localName) {
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+  }
+
+  // the attribute with the given qualified name, as a DOM would look it up
+  private static String attribute(XMLStreamReader reader, String name) {
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      if (name.equals(qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)))) {
+        return reader.getAttributeValue(i);
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,332 @@
+/*
+ * PlatformSnapshot.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+package edu.osu.cse.presto.android.gator.xml;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import edu.osu.cse.presto.android.gator.AnalysisCache;
+import edu.osu.cse.presto.android.gator.Configs;
+import edu.osu.cse.presto.android.gator.Logger;
+import soot.Scene;
+import soot.options.Options;
+import soot.toolkits.scalar.Pair;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * What the XML parser reads from the platform, which depends on the API level
+ * only: the resource tables of android.R and com.android.internal.R (the sys.*
+ * sections of DefaultXMLParser.readRFile), and the parsed platform layouts of
+ * Configs.sysProj. A snapshot is kept in a small binary file and replaces
+ * reading the R classes, the internal constant file and the layout files.
+ * <p>
+ * The snapshot is taken from -platformSnapshot if given; build one per API
+ * level offline with
+ * <pre>
+ *   PlatformSnapshot -sdkDir DIR -apiLevel android-N [-android JAR] -o FILE
+ * </pre>
+ * Otherwise it comes from the analysis cache, and on a miss it is built from
+ * the Scene of the current run and stored there. Platform layouts are only
+ * parsed for runs with -readLayouts, so a cached snapshot may lack them; they
+ * are then added and the snapshot stored again.
+ */
+public class PlatformSnapshot {
+  static final String TAG = PlatformSnapshot.class.getSimpleName();
+
+  private static final int MAGIC = 0x47415450;
+  private static final int VERSION = 1;
+
+  static final String[] SECTIONS = {"sys.id", "sys.drawable", "sys.layout", "sys.menu", "sys.string"};
+
+  private static PlatformSnapshot theInstance;
+
+  private final String apiLevel;
+  // section -> (name, value) pairs in reading order
+  private final Map<String, List<Pair<String, Integer>>> sections;
+  // layout name -> layout; null if the layouts were not parsed
+  private Map<String, LayoutLoader.Layout> layouts;
+
+  private PlatformSnapshot(String apiLevel, Map<String, List<Pair<String, Integer>>> sections,
+                           Map<String, LayoutLoader.Layout> layouts) {
+    this.apiLevel = apiLevel;
+    this.sections = sections;
+    this.layouts = layouts;
+  }
+
+  static synchronized PlatformSnapshot v() {
+    if (theInstance == null) {
+      long startTime = System.nanoTime();
+      boolean fromFile = !Configs.platformSnapshot.isEmpty();
+      theInstance = fromFile ? load(new File(Configs.platformSnapshot)) : fromCache();
+      if (theInstance == null) {
+        theInstance = build(Configs.readLayouts);
+        theInstance.store();
+      } else if (Configs.readLayouts && theInstance.layouts == null) {
+        theInstance.layouts = parseLayouts(theInstance.sections.get("sys.layout"));
+        if (!fromFile) {
+          theInstance.store();
+        }
+      }
+      Logger.verb(TAG, "Ready in " + ((System.nanoTime() - startTime) * 1.0e-09) + " sec");
+    }
+    return theInstance;
+  }
+
+  /**
+   * Feeds the sys.* sections, as DefaultXMLParser.readSystemRFile would.
+   */
+  void feed(Map<String, NameValueFunction> nvfs) {
+    for (String section : SECTIONS) {
+      // readSystemRFile reads the menus above API level 10 only
+      if (section.equals("sys.menu") && Configs.numericApiLevel <= 10) {
+        continue;
+      }
+      NameValueFunction nvf = nvfs.get(section);
+      for (Pair<String, Integer> pair : sections.get(section)) {
+        nvf.feed(pair.getO1(), pair.getO2());
+      }
+    }
+  }
+
+  /**
+   * The platform layouts by name. Do not modify.
+   */
+  Map<String, LayoutLoader.Layout> getLayouts() {
+    return layouts == null ? Collections.<String, LayoutLoader.Layout>emptyMap() : layouts;
+  }
+
+  // --- building
+
+  static PlatformSnapshot build(boolean withLayouts) {
+    Map<String, List<Pair<String, Integer>>> sections = Maps.newLinkedHashMap();
+    Map<String, NameValueFunction> nvfs = Maps.newHashMap();
+    for (String section : SECTIONS) {
+      final List<Pair<String, Integer>> pairs = Lists.newArrayList();
+      sections.put(section, pairs);
+      nvfs.put(section, new NameValueFunction() {
+        public void feed(String name, int val) {
+          pairs.add(new Pair<>(name, val));
+        }
+      });
+    }
+    // always take the menus, so that the snapshot fits every API level
+    int numericApiLevel = Configs.numericApiLevel;
+    Configs.numericApiLevel = Integer.MAX_VALUE;
+    try {
+      DefaultXMLParser.readSystemRFile(nvfs);
+    } finally {
+      Configs.numericApiLevel = numericApiLevel;
+    }
+    Map<String, LayoutLoader.Layout> layouts = null;
+    if (withLayouts) {
+      layouts = parseLayouts(sections.get("sys.layout"));
+    }
+    return new PlatformSnapshot(Configs.apiLevel, sections, layouts);
+  }
+
+  private static Map<String, LayoutLoader.Layout> parseLayouts(List<Pair<String, Integer>> sysLayouts) {
+    Set<String> names = Sets.newLinkedHashSet();
+    for (Pair<String, Integer> pair : sysLayouts) {
+      names.add(pair.getO1());
+    }
+    return LayoutLoader.parse(names, new Function<String, String>() {
+      @Override
+      public String apply(String name) {
+        return DefaultXMLParser.layoutFilePath(Configs.sysProj, name, true);
+      }
+    });
+  }
+
+  /**
+   * Builds the snapshot of one API level without analyzing an app. Only the
+   * R classes are loaded into Soot.
+   */
+  public static void main(String[] args) throws IOException {
+    String output = null;
+    for (int i = 0; i < args.length; i++) {
+      String s = args[i];
+      if ("-sdkDir".equals(s)) {
+        Configs.sdkDir = args[++i];
+      } else if ("-apiLevel".equals(s)) {
+        Configs.apiLevel = args[++i];
+      } else if ("-android".equals(s)) {
+        Configs.android = args[++i];
+      } else if ("-o".equals(s)) {
+        output = args[++i];
+      } else {
+        throw new RuntimeException("Unknown option: " + s);
+      }
+    }
+    if (Configs.sdkDir == null || Configs.apiLevel == null || output == null) {
+      throw new RuntimeException("Usage: PlatformSnapshot -sdkDir DIR -apiLevel android-N [-android JAR] -o FILE");
+    }
+    String platformDir = Configs.sdkDir + "/platforms/" + Configs.apiLevel;
+    if (Configs.android == null) {
+      Configs.android = platformDir + "/android.jar";
+    }
+    Configs.sysProj = platformDir + "/data";
+
+    Options.v().set_allow_phantom_refs(true);
+    Options.v().set_soot_classpath(Configs.android);
+    for (String cls : DefaultXMLParser.SYSTEM_R_CLASSES) {
+      Scene.v().loadClassAndSupport(cls);
+    }
+    PlatformSnapshot snapshot = build(new File(Configs.sysProj).isDirectory());
+    Files.write(new File(output).toPath(), snapshot.toBytes());
+    Logger.info(TAG, "Saved " + snapshot + " to " + output);
+  }
+
+  // --- storage
+
+  private static PlatformSnapshot fromCache() {
+    byte[] bytes = AnalysisCache.v().loadPlatform("snapshot");
+    if (bytes == null) {
+      return null;
+    }
+    try {
+      return fromBytes(bytes);
+    } catch (IOException e) {
+      Logger.warn(TAG, "Cannot read the cached snapshot: " + e.getMessage());
+      return null;
+    }
+  }
+
+  private void store() {
+    AnalysisCache.v().storePlatform("snapshot", toBytes());
+  }
+
+  private static PlatformSnapshot load(File file) {
+    PlatformSnapshot snapshot;
+    try {
+      snapshot = fromBytes(Files.readAllBytes(file.toPath()));
+    } catch (IOException e) {
+      Logger.warn(TAG, "Cannot read " + file + ": " + e.getMessage());
+      return null;
+    }
+    if (!snapshot.apiLevel.equals(Configs.apiLevel)) {
+      Logger.warn(TAG, file + " is for " + snapshot.apiLevel + ", not " + Configs.apiLevel);
+      return null;
+    }
+    Logger.info(TAG, "Loaded " + snapshot + " from " + file);
+    return snapshot;
+  }
+
+  byte[] toBytes() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(bytes))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(apiLevel);
+      for (String section : SECTIONS) {
+        List<Pair<String, Integer>> pairs = sections.get(section);
+        out.writeInt(pairs.size());
+        for (Pair<String, Integer> pair : pairs) {
+          out.writeUTF(pair.getO1());
+          out.writeInt(pair.getO2());
+        }
+      }
+      out.writeBoolean(layouts != null);
+      if (layouts != null) {
+        out.writeInt(layouts.size());
+        for (Map.Entry<String, LayoutLoader.Layout> entry : layouts.entrySet()) {
+          out.writeUTF(entry.getKey());
+          out.writeUTF(entry.getValue().origin);
+          writeLayout(out, entry.getValue());
+        }
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  static PlatformSnapshot fromBytes(byte[] bytes) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      throw new IOException("not a platform snapshot of version " + VERSION);
+    }
+    String apiLevel = in.readUTF();
+    Map<String, List<Pair<String, Integer>>> sections = Maps.newLinkedHashMap();
+    for (String section : SECTIONS) {
+      int size = in.readInt();
+      List<Pair<String, Integer>> pairs = Lists.newArrayListWithCapacity(size);
+      for (int i = 0; i < size; i++) {
+        String name = in.readUTF();
+        pairs.add(new Pair<>(name, in.readInt()));
+      }
+      sections.put(section, pairs);
+    }
+    Map<String, LayoutLoader.Layout> layouts = null;
+    if (in.readBoolean()) {
+      int size = in.readInt();
+      layouts = Maps.newHashMapWithExpectedSize(size);
+      for (int i = 0; i < size; i++) {
+        String name = in.readUTF();
+        String origin = in.readUTF();
+        layouts.put(name, readLayout(in, origin));
+      }
+    }
+    return new PlatformSnapshot(apiLevel, sections, layouts);
+  }
+
+  // the origin is written once per layout file
+  private static void writeLayout(DataOutputStream out, LayoutLoader.Layout layout) throws IOException {
+    writeString(out, layout.guiName);
+    writeString(out, layout.id);
+    writeString(out, layout.onClick);
+    writeString(out, layout.text);
+    writeString(out, layout.includedLayout);
+    out.writeInt(layout.children.size());
+    for (LayoutLoader.Layout child : layout.children) {
+      writeLayout(out, child);
+    }
+  }
+
+  private static LayoutLoader.Layout readLayout(DataInputStream in, String origin) throws IOException {
+    String guiName = readString(in);
+    String id = readString(in);
+    String onClick = readString(in);
+    String text = readString(in);
+    String includedLayout = readString(in);
+    int numChildren = in.readInt();
+    List<LayoutLoader.Layout> children = Collections.emptyList();
+    if (numChildren > 0) {
+      children = Lists.newArrayListWithCapacity(numChildren);
+      for (int i = 0; i < numChildren; i++) {
+        children.add(readLayout(in, origin));
+      }
+    }
+    return new LayoutLoader.Layout(origin, guiName, id, onClick, text, includedLayout, children);
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      out.writeUTF(s);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  @Override
+  public String toString() {
+    int numValues = 0;
+    for (List<Pair<String, Integer>> pairs : sections.values()) {
+      numValues += pairs.size();
+    }
+    return "PlatformSnapshot[" + apiLevel + ", values=" + numValues
+            + ", layouts=" + (layouts == null ? "-" : String.valueOf(layouts.size())) + "]";
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * TestGAUtilCallKinds.java - part of the GATOR project
+ *
+ * Copyright (c) 2018 The Ohio State University
+ *
+ * This file is distributed under the terms described in LICENSE
+ * in the root directory.
+ */
+
+package edu.osu.cse.presto.android.gator.gui.util;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import edu.osu.cse.presto.android.gator.Configs;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import soot.*;
+import soot.jimple.Jimple;
+import soot.jimple.NullConstant;
+import soot.jimple.Stmt;
+import soot.options.Options;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that GAUtil.callKinds, which GAFlowgraph.createOpNode uses to skip
+ * matchers, never filters out a matcher that would accept the call, so the
+ * op nodes are the same as when every matcher is tried. The calls are made
+ * up from the specification in wtg.xml on phantom classes, so no SDK is
+ * needed.
+ */
+public class TestGAUtilCallKinds {
+  // role in wtg.xml -> the call kind GAUtil reads it as
+  private static final Map<String, Integer> ROLES = Maps.newLinkedHashMap();
+
+  static {
+    ROLES.put("getClass", GAUtil.GET_CLASS_CALL);
+    ROLES.put("googleAnalyticsSetScreenName", GAUtil.SET_SCREEN_NAME_CALL);
+    ROLES.put("googleAnalyticsTrackerSend", GAUtil.TRACKER_SEND_CALL);
+    ROLES.put("googleAnalyticsNewTracker", GAUtil.NEW_TRACKER_CALL);
+    ROLES.put("googleAnalyticsAutoActivityTracking", GAUtil.AUTO_ACTIVITY_TRACKING_CALL);
+    ROLES.put("googleAnalyticsScreenViewBuilderBuild", GAUtil.SCREEN_VIEW_BUILDER_BUILD_CALL);
+    ROLES.put("googleAnalyticsEventBuilderBuild", GAUtil.EVENT_BUILDER_BUILD_CALL);
+    ROLES.put("googleAnalyticsExceptionBuilderBuild", GAUtil.EXCEPTION_BUILDER_BUILD_CALL);
+    ROLES.put("googleAnalyticsSocialBuilderBuild", GAUtil.SOCIAL_BUILDER_BUILD_CALL);
+    ROLES.put("googleAnalyticsTimingBuilderBuild", GAUtil.TIMING_BUILDER_BUILD_CALL);
+    ROLES.put("googleAnalyticsGetInstance", GAUtil.GET_INSTANCE_CALL);
+  }
+
+  private static final Pattern SUBSIG = Pattern.compile("(\\S+) ([^ (]+)\\((.*)\\)");
+
+  private static GAUtil gaUtil;
+  // class -> subsig -> the kinds the specification lists it for
+  private static final Map<String, Map<String, Integer>> spec = Maps.newLinkedHashMap();
+  // a made-up application subclass of each class in the specification
+  private static final Map<String, SootClass> subclasses = Maps.newHashMap();
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    G.reset();
+    Options.v().set_allow_phantom_refs(true);
+    Configs.wtgSpecFile = "wtg.xml";
+    readSpec(Configs.wtgSpecFile);
+    for (String className : spec.keySet()) {
+      SootClass sub = new SootClass("test.Sub" + subclasses.size());
+      sub.setSuperclass(Scene.v().getSootClass(className));
+      Scene.v().addClass(sub);
+      sub.setApplicationClass();
+      subclasses.put(className, sub);
+    }
+    gaUtil = GAUtil.v();
+  }
+
+  private static void readSpec(String file) throws Exception {
+    Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file);
+    NodeList roles = doc.getElementsByTagName("role");
+    for (int i = 0; i < roles.getLength(); i++) {
+      Element role = (Element) roles.item(i);
+      Integer kind = ROLES.get(role.getAttribute("type"));
+      if (kind == null) {
+        continue;
+      }
+      NodeList classes = role.getElementsByTagName("class");
+      for (int j = 0; j < classes.getLength(); j++) {
+        Element klass = (Element) classes.item(j);
+        Map<String, Integer> subsigs = spec.get(klass.getAttribute("type"));
+        if (subsigs == null) {
+          subsigs = Maps.newLinkedHashMap();
+          spec.put(klass.getAttribute("type"), subsigs);
+        }
+        NodeList invocations = klass.getElementsByTagName("invocation");
+        for (int k = 0; k < invocations.getLength(); k++) {
+          String subsig = ((Element) invocations.item(k)).getAttribute("subsig");
+          Integer kinds = subsigs.get(subsig);
+          subsigs.put(subsig, kinds == null ? kind : kinds | kind);
+        }
+      }
+    }
+  }
+
+  // a call of the method with the given subsignature on an instance of c
+  private static Stmt call(SootClass c, String subsig) {
+    Matcher m = SUBSIG.matcher(subsig);
+    assertTrue(subsig, m.matches());
+    List<Type> parameterTypes = Lists.newArrayList();
+    List<Value> args = Lists.newArrayList();
+    if (!m.group(3).isEmpty()) {
+      for (String t : m.group(3).split(",")) {
+        parameterTypes.add(type(t));
+        args.add(NullConstant.v());
+      }
+    }
+    SootMethodRef ref = Scene.v().makeMethodRef(c, m.group(2), parameterTypes,
+        type(m.group(1)), false);
+    Local receiver = Jimple.v().newLocal("r0", c.getType());
+    return Jimple.v().newInvokeStmt(Jimple.v().newVirtualInvokeExpr(receiver, ref, args));
+  }
+
+  private static Type type(String name) {
+    int dimensions = 0;
+    while (name.endsWith("[]")) {
+      name = name.substring(0, name.length() - 2);
+      dimensions++;
+    }
+    Type t;
+    switch (name) {
+      case "void":
+        t = VoidType.v();
+        break;
+      case "boolean":
+        t = BooleanType.v();
+        break;
+      case "byte":
+        t = ByteType.v();
+        break;
+      case "char":
+        t = CharType.v();
+        break;
+      case "short":
+        t = ShortType.v();
+        break;
+      case "int":
+        t = IntType.v();
+        break;
+      case "long":
+        t = LongType.v();
+        break;
+      case "float":
+        t = FloatType.v();
+        break;
+      case "double":
+        t = DoubleType.v();
+        break;
+      default:
+        t = RefType.v(name);
+        break;
+    }
+    return dimensions == 0 ? t : ArrayType.v(t, dimensions);
+  }
+
+  private static boolean matches(int kind, Stmt s) {
+    switch (kind) {
+      case GAUtil.GET_CLASS_CALL:
+        return gaUtil.isGetClassCall(s);
+      case GAUtil.SET_SCREEN_NAME_CALL:
+        return gaUtil.isGoogleAnalyticsSetScreenNameCall(s);
+      case GAUtil.TRACKER_SEND_CALL:
+        return gaUtil.isGoogleAnalyticsTrackerSendCall(s);
+      case GAUtil.NEW_TRACKER_CALL:
+        return gaUtil.isGoogleAnalyticsNewTrackerCall(s);
+      case GAUtil.AUTO_ACTIVITY_TRACKING_CALL:
+        return gaUtil.isGoogleAnalyticsAutoActivityTrackingCall(s);
+      case GAUtil.SCREEN_VIEW_BUILDER_BUILD_CALL:
+        return gaUtil.isGoogleAnalyticsScreenViewBuilderBuildCall(s);
+      case GAUtil.EVENT_BUILDER_BUILD_CALL:
+        return gaUtil.isGoogleAnalyticsEventBuilderBuildCall(s);
+      case GAUtil.EXCEPTION_BUILDER_BUILD_CALL:
+        return gaUtil.isGoogleAnalyticsExceptionBuilderBuildCall(s);
+      case GAUtil.SOCIAL_BUILDER_BUILD_CALL:
+        return gaUtil.isGoogleAnalyticsSocialBuilderBuildCall(s);
+      case GAUtil.TIMING_BUILDER_BUILD_CALL:
+        return gaUtil.isGoogleAnalyticsTimingBuilderBuildCall(s);
+      case GAUtil.GET_INSTANCE_CALL:
+        return gaUtil.isGoogleAnalyticsGetInstanceCall(s);
+      default:
+        throw new IllegalArgumentException("kind " + kind);
+    }
+  }
+
+  // the kinds whose matcher accepts s
+  private static int matchedKinds(Stmt s) {
+    int kinds = 0;
+    for (int kind : ROLES.values()) {
+      if (matches(kind, s)) {
+        kinds |= kind;
+      }
+    }
+    return kinds;
+  }
+
+  @Test
+  public void testSpecifiedCalls() {
+    assertEquals(ROLES.size(), Sets.newHashSet(ROLES.values()).size());
+    int covered = 0;
+    for (Map.Entry<String, Map<String, Integer>> entry : spec.entrySet()) {
+      SootClass c = Scene.v().getSootClass(entry.getKey());
+      for (Map.Entry<String, Integer> method : entry.getValue().entrySet()) {
+        for (SootClass receiver : Lists.newArrayList(c, subclasses.get(entry.getKey()))) {
+          Stmt s = call(receiver, method.getKey());
+          int matched = matchedKinds(s);
+          int kinds = gaUtil.callKinds(s);
+          String what = receiver + ": " + method.getKey();
+          // the matchers the specification lists the call for accept it ...
+          assertEquals(what, method.getValue().intValue(), matched & method.getValue());
+          // ... and none of the accepting ones is filtered out
+          assertEquals(what, matched, kinds & matched);
+          covered |= matched;
+        }
+      }
+    }
+    int all = 0;
+    for (int kind : ROLES.values()) {
+      all |= kind;
+    }
+    assertEquals(all, covered);
+  }
+
+  @Test
+  public void testSubsignaturesOnOtherClasses() {
+    // every subsignature of the specification on a class unrelated to the
+    // declaring classes; java.lang.Object declares getClass() for all
+    Set<String> subsigs = Sets.newLinkedHashSet();
+    for (Map<String, Integer> methods : spec.values()) {
+      subsigs.addAll(methods.keySet());
+    }
+    SootClass other = new SootClass("test.Unrelated");
+    other.setSuperclass(Scene.v().getSootClass("java.lang.Object"));
+    Scene.v().addClass(other);
+    for (String subsig : subsigs) {
+      Stmt s = call(other, subsig);
+      int matched = matchedKinds(s);
+      assertEquals(subsig, matched, gaUtil.callKinds(s) & matched);
+    }
+  }
+
+  @Test
+  public void testUnspecifiedCall() {
+    Stmt s = call(Scene.v().getSootClass("java.lang.Object"), "int hashCode()");
+    assertEquals(0, gaUtil.callKinds(s));
+    assertFalse(matchedKinds(s) != 0);
+  }
+}